@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
+import android.widget.ImageView;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+public class TestDetailPrefetcher extends AndroidTestCase {
+
+    private static final String TEST_LOCATION = "99706";
+    private static final long TEST_DATE = 1419033600000L;  // December 20th, 2014
+
+    private long mLocationId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        ContentValues location = new ContentValues();
+        location.put(LocationEntry.COLUMN_LOCATION_SETTING, TEST_LOCATION);
+        location.put(LocationEntry.COLUMN_CITY_NAME, "North Pole");
+        location.put(LocationEntry.COLUMN_COORD_LAT, 64.7488);
+        location.put(LocationEntry.COLUMN_COORD_LONG, -147.353);
+        mLocationId = ContentUris.parseId(
+                mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, location));
+
+        ContentValues[] days = new ContentValues[5];
+        for (int i = 0; i < days.length; i++) {
+            ContentValues day = new ContentValues();
+            day.put(WeatherEntry.COLUMN_LOC_KEY, mLocationId);
+            day.put(WeatherEntry.COLUMN_DATE,
+                    WeatherContract.normalizeDate(TEST_DATE + i * DateUtils.DAY_IN_MILLIS));
+            day.put(WeatherEntry.COLUMN_DEGREES, 1.1);
+            day.put(WeatherEntry.COLUMN_HUMIDITY, 1.2);
+            day.put(WeatherEntry.COLUMN_PRESSURE, 1.3);
+            day.put(WeatherEntry.COLUMN_MAX_TEMP, 75 + i);
+            day.put(WeatherEntry.COLUMN_MIN_TEMP, 65);
+            day.put(WeatherEntry.COLUMN_SHORT_DESC, "Asteroids");
+            day.put(WeatherEntry.COLUMN_WIND_SPEED, 5.5);
+            day.put(WeatherEntry.COLUMN_WEATHER_ID, 321);
+            days[i] = day;
+        }
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, days);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI,
+                WeatherEntry.COLUMN_LOC_KEY + " = ?", new String[] { Long.toString(mLocationId) });
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI,
+                LocationEntry._ID + " = ?", new String[] { Long.toString(mLocationId) });
+        super.tearDown();
+    }
+
+    private static Uri dayUri(int day) {
+        return WeatherEntry.buildWeatherLocationWithDate(TEST_LOCATION,
+                TEST_DATE + day * DateUtils.DAY_IN_MILLIS);
+    }
+
+    // Prefetches around centerDay until day is cached.  The inserts of setUp can drop rows
+    // loaded before their change notification arrives, so this asks again while it waits.
+    private static void prefetchAndWait(final DetailPrefetcher prefetcher, final int centerDay,
+                                        final int day) {
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                Cursor cursor = prefetcher.getCachedRow(dayUri(day));
+                if (null == cursor) {
+                    // No size, so only the rows are loaded
+                    prefetcher.prefetchAround(dayUri(centerDay), 0, 0,
+                            ImageView.ScaleType.CENTER_CROP);
+                    return false;
+                }
+                cursor.close();
+                return true;
+            }
+        }.run();
+    }
+
+    public void testNeighborsAreCached() {
+        DetailPrefetcher prefetcher = DetailPrefetcher.getInstance(mContext);
+        prefetchAndWait(prefetcher, 2, 3);
+
+        Cursor cached = prefetcher.getCachedRow(dayUri(3));
+        Cursor queried = mContext.getContentResolver().query(dayUri(3),
+                DetailFragment.DETAIL_COLUMNS, null, null, null);
+        assertTrue(cached.moveToFirst());
+        assertTrue(queried.moveToFirst());
+        for (int i = 0; i < DetailFragment.DETAIL_COLUMNS.length; i++) {
+            assertEquals("Column " + i, queried.getString(i), cached.getString(i));
+        }
+        cached.close();
+        queried.close();
+
+        for (int day = 0; day < 5; day++) {
+            Cursor cursor = prefetcher.getCachedRow(dayUri(day));
+            assertNotNull("Day " + day, cursor);
+            cursor.close();
+        }
+    }
+
+    public void testWeatherChangeDropsRows() {
+        final DetailPrefetcher prefetcher = DetailPrefetcher.getInstance(mContext);
+        prefetchAndWait(prefetcher, 2, 1);
+
+        ContentValues update = new ContentValues();
+        update.put(WeatherEntry.COLUMN_MAX_TEMP, 90);
+        mContext.getContentResolver().update(WeatherEntry.CONTENT_URI, update,
+                WeatherEntry.COLUMN_LOC_KEY + " = ?", new String[] { Long.toString(mLocationId) });
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                return null == prefetcher.getCachedRow(dayUri(1));
+            }
+        }.run();
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
+
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+public class TestDisplayFormatter extends AndroidTestCase {
+
+    private String mUnitsKey;
+    private String mSavedUnits;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mUnitsKey = mContext.getString(R.string.pref_units_key);
+        mSavedUnits = PreferenceManager.getDefaultSharedPreferences(mContext)
+                .getString(mUnitsKey, mContext.getString(R.string.pref_units_metric));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        setUnits(mSavedUnits);
+        super.tearDown();
+    }
+
+    private void setUnits(String units) {
+        final boolean metric = mContext.getString(R.string.pref_units_metric).equals(units);
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        prefs.edit().putString(mUnitsKey, units).commit();
+        // Listeners of a change made off the main thread are called on the main thread
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                return SettingsSnapshot.get(mContext).metric == metric;
+            }
+        }.run();
+    }
+
+    public void testMatchesUtility() {
+        DisplayFormatter formatter = DisplayFormatter.getInstance(mContext);
+        long tomorrow = System.currentTimeMillis() + DateUtils.DAY_IN_MILLIS;
+
+        // Twice each, the second call comes from the cache
+        for (int i = 0; i < 2; i++) {
+            assertEquals(Utility.formatTemperature(mContext, 21.5),
+                    formatter.formatTemperature(21.5));
+            assertEquals(Utility.getFormattedWind(mContext, 5.5f, 180f),
+                    formatter.getFormattedWind(5.5f, 180f));
+            assertEquals(Utility.getFriendlyDayString(mContext, tomorrow, true),
+                    formatter.getFriendlyDayString(tomorrow, true));
+            assertEquals(Utility.getFullFriendlyDayString(mContext, tomorrow),
+                    formatter.getFullFriendlyDayString(tomorrow));
+            assertEquals(mContext.getString(R.string.a11y_high_temp, "21\u00B0"),
+                    formatter.getString(R.string.a11y_high_temp, "21\u00B0"));
+        }
+    }
+
+    public void testUnitsChangeInvalidates() {
+        DisplayFormatter formatter = DisplayFormatter.getInstance(mContext);
+
+        setUnits(mContext.getString(R.string.pref_units_metric));
+        String metric = formatter.formatTemperature(20.0);
+
+        setUnits(mContext.getString(R.string.pref_units_imperial));
+        String imperial = formatter.formatTemperature(20.0);
+        assertFalse("Error: The cached metric string was returned after switching units",
+                metric.equals(imperial));
+        assertEquals(Utility.formatTemperature(mContext, 20.0), imperial);
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
+
+public class TestForecastDiff extends AndroidTestCase {
+
+    private static final long TODAY = 1419033600000L;
+
+    // Builds a model of consecutive days starting firstDay days from TODAY.  Row ids follow
+    // the date, as the provider keeps them stable across syncs.
+    private static ForecastModel createModel(int firstDay, int days) {
+        ForecastModel model = new ForecastModel(days, "37.8", "-122.4", "Today, June 24");
+        for (int i = 0; i < days; i++) {
+            model.ids[i] = firstDay + i + 1;
+            model.dates[i] = TODAY + (firstDay + i) * DateUtils.DAY_IN_MILLIS;
+            model.weatherIds[i] = 800;
+            model.highs[i] = 20;
+            model.lows[i] = 10;
+            model.dayLabels[i] = "Day " + (firstDay + i);
+            model.highLabels[i] = "20\u00B0";
+            model.lowLabels[i] = "10\u00B0";
+        }
+        return model;
+    }
+
+    private static void assertOp(ForecastDiff diff, int op, int type, int position, int count) {
+        assertEquals("Error: Wrong type for op " + op, type, diff.getOpType(op));
+        assertEquals("Error: Wrong position for op " + op, position, diff.getOpPosition(op));
+        assertEquals("Error: Wrong item count for op " + op, count, diff.getOpItemCount(op));
+    }
+
+    public void testUnchangedForecast() {
+        ForecastDiff diff = ForecastDiff.calculate(createModel(0, 14),
+                createModel(0, 14));
+        assertFalse(diff.isFullRefresh());
+        assertEquals("Error: An identical forecast should not notify anything",
+                0, diff.getOpCount());
+    }
+
+    public void testDayRolledOver() {
+        // Yesterday's row dropped off the front and a new day was appended
+        ForecastDiff diff = ForecastDiff.calculate(createModel(0, 14),
+                createModel(1, 14));
+        assertEquals(2, diff.getOpCount());
+        assertOp(diff, 0, ForecastDiff.OP_REMOVE, 0, 1);
+        assertOp(diff, 1, ForecastDiff.OP_INSERT, 13, 1);
+    }
+
+    public void testChangedDays() {
+        ForecastModel oldModel = createModel(0, 14);
+        ForecastModel newModel = createModel(0, 14);
+        newModel.highLabels[3] = "25\u00B0";
+        newModel.weatherIds[4] = 500;
+        newModel.lowLabels[9] = "5\u00B0";
+        ForecastDiff diff = ForecastDiff.calculate(oldModel, newModel);
+        assertEquals(2, diff.getOpCount());
+        assertOp(diff, 0, ForecastDiff.OP_CHANGE, 3, 2);
+        assertOp(diff, 1, ForecastDiff.OP_CHANGE, 9, 1);
+
+        // Switching units changes every label
+        newModel = createModel(0, 14);
+        for (int i = 0; i < newModel.count; i++) {
+            newModel.highLabels[i] = "68\u00B0";
+        }
+        diff = ForecastDiff.calculate(oldModel, newModel);
+        assertEquals(1, diff.getOpCount());
+        assertOp(diff, 0, ForecastDiff.OP_CHANGE, 0, 14);
+    }
+
+    public void testPositionForDate() {
+        ForecastModel model = createModel(0, 14);
+        assertEquals(0, model.getPositionForDate(TODAY));
+        assertEquals(13, model.getPositionForDate(TODAY + 13 * DateUtils.DAY_IN_MILLIS));
+        assertEquals(-1, model.getPositionForDate(TODAY + 14 * DateUtils.DAY_IN_MILLIS));
+        assertEquals(-1, ForecastModel.EMPTY.getPositionForDate(TODAY));
+    }
+
+    public void testLongerAndShorterForecasts() {
+        ForecastDiff diff = ForecastDiff.calculate(createModel(2, 5),
+                createModel(0, 10));
+        assertEquals(2, diff.getOpCount());
+        assertOp(diff, 0, ForecastDiff.OP_INSERT, 0, 2);
+        assertOp(diff, 1, ForecastDiff.OP_INSERT, 7, 3);
+
+        diff = ForecastDiff.calculate(createModel(0, 10), createModel(2, 5));
+        assertEquals(2, diff.getOpCount());
+        assertOp(diff, 0, ForecastDiff.OP_REMOVE, 0, 2);
+        assertOp(diff, 1, ForecastDiff.OP_REMOVE, 5, 3);
+    }
+
+    public void testUnsortedForecastRefreshesEverything() {
+        ForecastModel newModel = createModel(0, 3);
+        long date = newModel.dates[0];
+        newModel.dates[0] = newModel.dates[2];
+        newModel.dates[2] = date;
+        ForecastDiff diff = ForecastDiff.calculate(createModel(0, 3), newModel);
+        assertTrue(diff.isFullRefresh());
+    }
+}
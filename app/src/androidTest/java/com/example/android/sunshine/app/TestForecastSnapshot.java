@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
+
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+import java.util.Locale;
+
+public class TestForecastSnapshot extends AndroidTestCase {
+
+    private String mSavedLocation;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mSavedLocation = SettingsSnapshot.get(mContext).location;
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        setLocation(mSavedLocation);
+        super.tearDown();
+    }
+
+    private void setLocation(final String location) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        prefs.edit().putString(mContext.getString(R.string.pref_location_key), location).commit();
+        // Listeners of a change made off the main thread are called on the main thread
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                return location.equals(SettingsSnapshot.get(mContext).location);
+            }
+        }.run();
+    }
+
+    private static ForecastModel createModel(int days) {
+        long today = System.currentTimeMillis();
+        ForecastModel model = new ForecastModel(days, "37.8", null, "Today, June 24");
+        for (int i = 0; i < days; i++) {
+            model.ids[i] = i + 1;
+            model.dates[i] = today + i * DateUtils.DAY_IN_MILLIS;
+            model.weatherIds[i] = 500 + i;
+            model.highs[i] = 20.5 + i;
+            model.lows[i] = 10.5 - i;
+            model.dayLabels[i] = "Day " + i;
+            model.descriptions[i] = "Rain " + i;
+            model.descriptionA11y[i] = "Forecast: Rain " + i;
+            model.highLabels[i] = String.format(Locale.US, "%d\u00B0", 20 + i);
+            model.highA11y[i] = "High " + model.highLabels[i];
+            model.lowLabels[i] = String.format(Locale.US, "%d\u00B0", 10 - i);
+            model.lowA11y[i] = "Low " + model.lowLabels[i];
+        }
+        return model;
+    }
+
+    public void testRoundTrip() {
+        ForecastModel model = createModel(14);
+        ForecastSnapshot.write(mContext, model);
+        ForecastModel read = ForecastSnapshot.read(mContext);
+
+        assertNotNull("Error: The snapshot just written could not be read", read);
+        assertEquals(model.count, read.count);
+        assertEquals(model.coordLat, read.coordLat);
+        assertNull(read.coordLong);
+        assertEquals(model.firstDayLongLabel, read.firstDayLongLabel);
+        for (int i = 0; i < model.count; i++) {
+            assertTrue("Error: Row " + i + " changed", model.isSameContent(i, read, i));
+            assertEquals(model.dates[i], read.dates[i]);
+            assertEquals(model.highs[i], read.highs[i]);
+            assertEquals(model.lows[i], read.lows[i]);
+            assertEquals(model.descriptionA11y[i], read.descriptionA11y[i]);
+            assertEquals(model.lowA11y[i], read.lowA11y[i]);
+            assertEquals(Utility.getIconResourceForWeatherCondition(model.weatherIds[i]),
+                    read.iconResIds[i]);
+        }
+    }
+
+    public void testOtherLocationIgnored() {
+        ForecastSnapshot.write(mContext, createModel(14));
+        setLocation(mSavedLocation + "-test");
+        assertNull("Error: A snapshot of another location was returned",
+                ForecastSnapshot.read(mContext));
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.support.v7.widget.RecyclerView;
+import android.test.AndroidTestCase;
+import android.view.View;
+import android.view.ViewGroup;
+
+public class TestForecastViewPool extends AndroidTestCase {
+
+    // Only creates holders, which get their view type from createViewHolder
+    private static class HolderAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            return new RecyclerView.ViewHolder(new View(parent.getContext())) { };
+        }
+
+        @Override
+        public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) { }
+
+        @Override
+        public int getItemCount() {
+            return 0;
+        }
+    }
+
+    private HolderAdapter mAdapter;
+    private RecyclerView mRecyclerView;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mAdapter = new HolderAdapter();
+        mRecyclerView = new RecyclerView(mContext);
+    }
+
+    private RecyclerView.ViewHolder holder(int viewType) {
+        return mAdapter.createViewHolder(mRecyclerView, viewType);
+    }
+
+    public void testCountsPerViewType() {
+        ForecastViewPool pool = new ForecastViewPool();
+        pool.putRecycledView(holder(ForecastAdapter.VIEW_TYPE_TODAY));
+        pool.putRecycledView(holder(ForecastAdapter.VIEW_TYPE_FUTURE_DAY));
+        pool.putRecycledView(holder(ForecastAdapter.VIEW_TYPE_FUTURE_DAY));
+        assertEquals(1, pool.getRecycledViewCount(ForecastAdapter.VIEW_TYPE_TODAY));
+        assertEquals(2, pool.getRecycledViewCount(ForecastAdapter.VIEW_TYPE_FUTURE_DAY));
+
+        assertNotNull(pool.getRecycledView(ForecastAdapter.VIEW_TYPE_FUTURE_DAY));
+        assertEquals(1, pool.getRecycledViewCount(ForecastAdapter.VIEW_TYPE_FUTURE_DAY));
+        assertNotNull(pool.getRecycledView(ForecastAdapter.VIEW_TYPE_TODAY));
+        assertNull(pool.getRecycledView(ForecastAdapter.VIEW_TYPE_TODAY));
+        assertEquals(0, pool.getRecycledViewCount(ForecastAdapter.VIEW_TYPE_TODAY));
+
+        pool.clear();
+        assertEquals(0, pool.getRecycledViewCount(ForecastAdapter.VIEW_TYPE_FUTURE_DAY));
+    }
+
+    public void testFullTypeDropsHolders() {
+        ForecastViewPool pool = new ForecastViewPool();
+        for (int i = 0; i < ForecastViewPool.DEFAULT_MAX_SCRAP + 2; i++) {
+            pool.putRecycledView(holder(ForecastAdapter.VIEW_TYPE_FUTURE_DAY));
+        }
+        assertEquals(ForecastViewPool.DEFAULT_MAX_SCRAP,
+                pool.getRecycledViewCount(ForecastAdapter.VIEW_TYPE_FUTURE_DAY));
+
+        pool.setMaxRecycledViews(ForecastAdapter.VIEW_TYPE_FUTURE_DAY, 2);
+        assertEquals(2, pool.getRecycledViewCount(ForecastAdapter.VIEW_TYPE_FUTURE_DAY));
+        pool.setMaxRecycledViews(ForecastAdapter.VIEW_TYPE_FUTURE_DAY, 8);
+        pool.putRecycledView(holder(ForecastAdapter.VIEW_TYPE_FUTURE_DAY));
+        assertEquals(3, pool.getRecycledViewCount(ForecastAdapter.VIEW_TYPE_FUTURE_DAY));
+    }
+}
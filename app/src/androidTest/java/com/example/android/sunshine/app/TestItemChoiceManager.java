@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.support.v7.widget.RecyclerView;
+import android.test.AndroidTestCase;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AbsListView;
+
+public class TestItemChoiceManager extends AndroidTestCase {
+
+    // Adapter over a list of ids, without views
+    static class IdAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+        long[] mIds;
+
+        IdAdapter(long[] ids) {
+            mIds = ids;
+            setHasStableIds(true);
+        }
+
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            return new RecyclerView.ViewHolder(new View(parent.getContext())) {
+            };
+        }
+
+        @Override
+        public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return mIds[position];
+        }
+
+        @Override
+        public int getItemCount() {
+            return mIds.length;
+        }
+    }
+
+    private static long[] range(long first, int count) {
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = first + i;
+        }
+        return ids;
+    }
+
+    public void testSelectionFollowsIdAcrossLongMove() {
+        IdAdapter adapter = new IdAdapter(range(1000, 100));
+        ItemChoiceManager icm = new ItemChoiceManager(adapter);
+        icm.setChoiceMode(AbsListView.CHOICE_MODE_SINGLE);
+        icm.setItemChecked(5, true);
+        assertEquals(5, icm.getSelectedItemPosition());
+
+        // 60 new items in front, further than any nearby search would look
+        long[] ids = new long[160];
+        System.arraycopy(range(0, 60), 0, ids, 0, 60);
+        System.arraycopy(adapter.mIds, 0, ids, 60, 100);
+        adapter.mIds = ids;
+        adapter.notifyItemRangeInserted(0, 60);
+
+        assertEquals(65, icm.getSelectedItemPosition());
+        assertTrue(icm.isItemChecked(65));
+        assertFalse(icm.isItemChecked(5));
+    }
+
+    public void testSelectionDroppedWhenItemRemoved() {
+        IdAdapter adapter = new IdAdapter(range(1000, 10));
+        ItemChoiceManager icm = new ItemChoiceManager(adapter);
+        icm.setChoiceMode(AbsListView.CHOICE_MODE_SINGLE);
+        icm.setItemChecked(0, true);
+
+        adapter.mIds = range(1001, 9);
+        adapter.notifyItemRemoved(0);
+
+        assertEquals(RecyclerView.NO_POSITION, icm.getSelectedItemPosition());
+        assertEquals(0, icm.getCheckedItemCount());
+    }
+
+    public void testSingleChoiceKeepsOne() {
+        IdAdapter adapter = new IdAdapter(range(1000, 10));
+        ItemChoiceManager icm = new ItemChoiceManager(adapter);
+        icm.setChoiceMode(AbsListView.CHOICE_MODE_SINGLE);
+        icm.setItemChecked(2, true);
+        icm.setItemChecked(7, true);
+
+        assertEquals(1, icm.getCheckedItemCount());
+        assertEquals(7, icm.getSelectedItemPosition());
+    }
+
+    public void testMultipleChoice() {
+        IdAdapter adapter = new IdAdapter(range(1000, 10));
+        ItemChoiceManager icm = new ItemChoiceManager(adapter);
+        icm.setChoiceMode(AbsListView.CHOICE_MODE_MULTIPLE);
+        icm.setItemChecked(2, true);
+        icm.setItemChecked(4, true);
+        icm.setItemChecked(6, true);
+        icm.setItemChecked(4, false);
+
+        long[] checked = icm.getCheckedItemIds();
+        assertEquals(2, checked.length);
+        assertEquals(1002, checked[0]);
+        assertEquals(1006, checked[1]);
+
+        // Reversing the list moves both
+        long[] reversed = new long[10];
+        for (int i = 0; i < 10; i++) {
+            reversed[i] = 1009 - i;
+        }
+        adapter.mIds = reversed;
+        adapter.notifyDataSetChanged();
+        assertTrue(icm.isItemChecked(7));
+        assertTrue(icm.isItemChecked(3));
+        assertEquals(2, icm.getCheckedItemCount());
+    }
+
+    public void testMultipleModalStartsAndFinishes() {
+        final int[] calls = new int[3];
+        IdAdapter adapter = new IdAdapter(range(1000, 10));
+        ItemChoiceManager icm = new ItemChoiceManager(adapter);
+        icm.setChoiceMode(AbsListView.CHOICE_MODE_MULTIPLE_MODAL);
+        icm.setMultiChoiceModeListener(new ItemChoiceManager.MultiChoiceModeListener() {
+            @Override
+            public void onMultiChoiceStarted() {
+                calls[0]++;
+            }
+
+            @Override
+            public void onItemCheckedStateChanged(int position, long id, boolean checked) {
+                calls[1]++;
+            }
+
+            @Override
+            public void onMultiChoiceFinished() {
+                calls[2]++;
+            }
+        });
+
+        assertFalse(icm.isInModalChoice());
+        icm.setItemChecked(1, true);
+        assertTrue(icm.isInModalChoice());
+        icm.setItemChecked(3, true);
+        icm.setItemChecked(1, false);
+        icm.setItemChecked(3, false);
+
+        assertFalse("Error: Unchecking the last item should end the selection",
+                icm.isInModalChoice());
+        assertEquals(1, calls[0]);
+        assertEquals(4, calls[1]);
+        assertEquals(1, calls[2]);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+public class TestSettingsSnapshot extends AndroidTestCase {
+
+    private SharedPreferences mPrefs;
+    private String mLocationKey;
+    private String mSavedLocation;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mLocationKey = mContext.getString(R.string.pref_location_key);
+        mSavedLocation = SettingsSnapshot.get(mContext).location;
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mPrefs.edit().putString(mLocationKey, mSavedLocation).commit();
+        super.tearDown();
+    }
+
+    public void testMatchesPreferences() {
+        SettingsSnapshot settings = SettingsSnapshot.get(mContext);
+        assertEquals(mPrefs.getString(mLocationKey,
+                mContext.getString(R.string.pref_location_default)), settings.location);
+        String metricUnits = mContext.getString(R.string.pref_units_metric);
+        assertEquals(metricUnits.equals(mPrefs.getString(
+                mContext.getString(R.string.pref_units_key), metricUnits)), settings.metric);
+        assertEquals(settings.localGraphics,
+                mContext.getString(R.string.pref_art_pack_sunshine)
+                        .equals(settings.artPackUrlFormat));
+    }
+
+    public void testSettingChangeBumpsVersion() {
+        final SettingsSnapshot before = SettingsSnapshot.get(mContext);
+        final String location = before.location + "-test";
+        mPrefs.edit().putString(mLocationKey, location).commit();
+
+        // Listeners of a change made off the main thread are called on the main thread
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                return location.equals(SettingsSnapshot.get(mContext).location);
+            }
+        }.run();
+        assertTrue("Error: The version did not increase after a setting changed",
+                SettingsSnapshot.get(mContext).version > before.version);
+        // Snapshots never change once handed out
+        assertEquals(mSavedLocation, before.location);
+    }
+
+    public void testRefreshDoesNotWaitForListener() throws InterruptedException {
+        final SettingsSnapshot before = SettingsSnapshot.get(mContext);
+        final String location = before.location + "-test";
+        mPrefs.edit().putString(mLocationKey, location).commit();
+        SettingsSnapshot.refresh(mContext);
+        assertEquals(location, SettingsSnapshot.get(mContext).location);
+        final int version = SettingsSnapshot.get(mContext).version;
+        assertTrue(version > before.version);
+
+        // Give the snapshot's own listener the time to land on the main thread, it should find
+        // nothing new
+        Thread.sleep(500);
+        assertEquals("Error: One change was counted twice",
+                version, SettingsSnapshot.get(mContext).version);
+    }
+
+    public void testSyncStateKeepsVersion() throws InterruptedException {
+        int version = SettingsSnapshot.get(mContext).version;
+        mPrefs.edit().putLong(mContext.getString(R.string.pref_last_notification),
+                System.currentTimeMillis()).commit();
+        // Give a (wrong) listener call the time to land on the main thread
+        Thread.sleep(500);
+        assertEquals(version, SettingsSnapshot.get(mContext).version);
+    }
+}
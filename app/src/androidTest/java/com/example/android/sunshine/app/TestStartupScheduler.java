@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.metrics.StartupTracer;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/*
+    The scheduler's idle stage runs on the thread that schedules it, so these tests drive it
+    from a HandlerThread standing in for the main thread.
+ */
+public class TestStartupScheduler extends AndroidTestCase {
+
+    // More than the tasks any test queues
+    private static final int ROUND_TRIPS = 10;
+
+    private HandlerThread mThread;
+    private Handler mHandler;
+    private StartupTracer mTracer;
+    private StartupScheduler mScheduler;
+    // Task names in the order they ran
+    private final List<String> mRan = new CopyOnWriteArrayList<String>();
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mThread = new HandlerThread("TestStartupScheduler");
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+        mTracer = new StartupTracer();
+        mTracer.start();
+        mScheduler = new StartupScheduler(mTracer);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mThread.quit();
+        super.tearDown();
+    }
+
+    private Runnable task(final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                mRan.add(name);
+            }
+        };
+    }
+
+    // Runs action on mThread, then passes it a few more messages.  The queue only calls its
+    // idle handlers once each time it runs out of messages, so every round trip gives the
+    // scheduler's idle stage a chance to run one more task.
+    private void runOnThread(Runnable action) throws InterruptedException {
+        mHandler.post(action);
+        for (int i = 0; i < ROUND_TRIPS; i++) {
+            final CountDownLatch done = new CountDownLatch(1);
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    done.countDown();
+                }
+            });
+            assertTrue("Error: Timed out waiting for the scheduler's thread",
+                    done.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    public void testIdleTasksWaitForFirstFrameAndRunInOrder() throws InterruptedException {
+        runOnThread(new Runnable() {
+            @Override
+            public void run() {
+                mScheduler.runWhenIdle("a", task("a"));
+                mScheduler.runWhenIdle("b", new Runnable() {
+                    @Override
+                    public void run() {
+                        mRan.add("b");
+                        // Queued behind the tasks already waiting
+                        mScheduler.runWhenIdle("d", task("d"));
+                    }
+                });
+                mScheduler.runWhenIdle("c", task("c"));
+            }
+        });
+        assertEquals("Error: Idle tasks ran before the first frame", 0, mRan.size());
+        assertTrue(mTracer.getMilestoneMicros(StartupTracer.FIRST_FRAME) < 0);
+
+        runOnThread(new Runnable() {
+            @Override
+            public void run() {
+                mScheduler.onFirstFrame();
+            }
+        });
+        assertEquals(Arrays.asList("a", "b", "c", "d"), mRan);
+        assertTrue(mTracer.getMilestoneMicros(StartupTracer.FIRST_FRAME) >= 0);
+        for (String name : mRan) {
+            assertTrue("Error: " + name + " wasn't timed", mTracer.getStepMicros(name) >= 0);
+        }
+
+        // After the first frame, a new task only waits for idle time
+        runOnThread(new Runnable() {
+            @Override
+            public void run() {
+                mScheduler.runWhenIdle("e", task("e"));
+            }
+        });
+        assertEquals(Arrays.asList("a", "b", "c", "d", "e"), mRan);
+    }
+
+    public void testCancelDropsPendingTasks() throws InterruptedException {
+        runOnThread(new Runnable() {
+            @Override
+            public void run() {
+                mScheduler.runWhenIdle("a", new Runnable() {
+                    @Override
+                    public void run() {
+                        mRan.add("a");
+                        mScheduler.cancel();
+                    }
+                });
+                mScheduler.runWhenIdle("b", task("b"));
+                mScheduler.onFirstFrame();
+            }
+        });
+        assertEquals(Arrays.asList("a"), mRan);
+
+        runOnThread(new Runnable() {
+            @Override
+            public void run() {
+                mScheduler.runWhenIdle("c", task("c"));
+            }
+        });
+        assertEquals("Error: A cancelled scheduler ran a task", Arrays.asList("a"), mRan);
+        assertTrue(mTracer.getStepMicros("b") < 0);
+    }
+
+    public void testBackgroundTasksAreTimed() throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        final String[] thread = new String[1];
+        mScheduler.runInBackground("background", new Runnable() {
+            @Override
+            public void run() {
+                thread[0] = Thread.currentThread().getName();
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertFalse(Thread.currentThread().getName().equals(thread[0]));
+        // The step is recorded just after the task returns
+        for (int i = 0; i < 50 && mTracer.getStepMicros("background") < 0; i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(mTracer.getStepMicros("background") >= 0);
+    }
+}
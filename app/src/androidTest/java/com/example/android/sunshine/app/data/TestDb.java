@@ -19,6 +19,7 @@ import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.test.AndroidTestCase;
+import android.util.Log;
 
 import java.util.HashSet;
 
@@ -105,6 +106,17 @@ public class TestDb extends AndroidTestCase {
         db.close();
     }
 
+    /*
+        The weather table should be clustered on (location_id, date) wherever SQLite supports
+        WITHOUT ROWID tables, and a plain rowid table everywhere else.
+     */
+    public void testWeatherTableLayout() {
+        SQLiteDatabase db = new WeatherDbHelper(this.mContext).getWritableDatabase();
+        assertEquals("Error: The weather table doesn't use the expected layout",
+                WeatherDbHelper.supportsClusteredLayout(db), WeatherDbHelper.isClustered(db));
+        db.close();
+    }
+
     /*
         Students:  Here is where you will build code to test that we can insert and query the
         location database.  We've done a lot of work for you.  You'll want to look in TestUtilities
@@ -141,11 +153,14 @@ public class TestDb extends AndroidTestCase {
         WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
         SQLiteDatabase db = dbHelper.getWritableDatabase();
 
-        // Second Step (Weather): Create weather values
-        ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+        // Second Step (Weather): Create weather values.  The weather table holds the compact
+        // encoding described in WeatherDbHelper, which is what we insert and read back here.
+        ContentValues weatherValues =
+                WeatherDbHelper.encodeWeather(TestUtilities.createWeatherValues(locationRowId));
 
         // Third Step (Weather): Insert ContentValues into database and get a row ID back
-        long weatherRowId = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, weatherValues);
+        long weatherRowId = WeatherDbHelper.insertWeather(db, weatherValues,
+                WeatherDbHelper.isClustered(db));
         assertTrue(weatherRowId != -1);
 
         // Fourth Step: Query the database and receive a Cursor back
@@ -234,4 +249,81 @@ public class TestDb extends AndroidTestCase {
         db.close();
         return locationRowId;
     }
+
+    /*
+        This test builds a version 2 database by hand, fills it with a couple of weeks of weather
+        for a number of locations and then lets WeatherDbHelper upgrade it.  Besides checking the
+        data survives, it logs the size of the database before and after, so the effect of the
+        compact encoding can be read off the test output.
+     */
+    public void testUpgradeFromVersion2() {
+        final int locations = 50;
+        final int days = 14;
+
+        SQLiteDatabase db = mContext.openOrCreateDatabase(WeatherDbHelper.DATABASE_NAME, 0, null);
+        db.execSQL("CREATE TABLE location (_id INTEGER PRIMARY KEY, location_setting TEXT UNIQUE NOT NULL, " +
+                "city_name TEXT NOT NULL, coord_lat REAL NOT NULL, coord_long REAL NOT NULL);");
+        db.execSQL("CREATE TABLE weather (_id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "location_id INTEGER NOT NULL, date INTEGER NOT NULL, short_desc TEXT NOT NULL, " +
+                "weather_id INTEGER NOT NULL, min REAL NOT NULL, max REAL NOT NULL, " +
+                "humidity REAL NOT NULL, pressure REAL NOT NULL, wind REAL NOT NULL, " +
+                "degrees REAL NOT NULL, FOREIGN KEY (location_id) REFERENCES location (_id), " +
+                "UNIQUE (date, location_id) ON CONFLICT REPLACE);");
+        db.setVersion(2);
+
+        long millisecondsInADay = 1000*60*60*24;
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < locations; i++) {
+                ContentValues location = TestUtilities.createNorthPoleLocationValues();
+                location.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, "loc" + i);
+                long locationRowId = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, location);
+                for (int day = 0; day < days; day++) {
+                    ContentValues weather = TestUtilities.createWeatherValues(locationRowId);
+                    weather.put(WeatherContract.WeatherEntry.COLUMN_DATE,
+                            TestUtilities.TEST_DATE + day * millisecondsInADay);
+                    weather.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, 21.37 + day);
+                    db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, weather);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        long oldSize = getDatabaseSize(db);
+        db.close();
+
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        db = dbHelper.getWritableDatabase();
+        long newSize = getDatabaseSize(db);
+
+        Cursor cursor = db.rawQuery("SELECT weather.max / 100.0, weather_condition.short_desc " +
+                "FROM weather LEFT JOIN weather_condition ON weather.weather_id = weather_condition._id " +
+                "ORDER BY weather.date DESC LIMIT 1", null);
+        assertTrue("Error: No weather left after the upgrade", cursor.moveToFirst());
+        assertEquals(21.37 + days - 1, cursor.getDouble(0), 0.001);
+        assertEquals("Asteroids", cursor.getString(1));
+        cursor.close();
+
+        cursor = db.rawQuery("SELECT COUNT(*) FROM weather", null);
+        cursor.moveToFirst();
+        assertEquals(locations * days, cursor.getInt(0));
+        cursor.close();
+
+        Log.d(LOG_TAG, "Upgrade of " + (locations * days) + " weather rows: version 2 took "
+                + oldSize + " bytes, version 3 takes " + newSize + " bytes ("
+                + (oldSize - newSize) * 100 / oldSize + "% smaller)");
+        assertTrue("Error: The compact schema should take less space", newSize < oldSize);
+        dbHelper.close();
+    }
+
+    private static long getDatabaseSize(SQLiteDatabase db) {
+        // Rebuild the file first, so that free pages left behind by the upgrade don't count.
+        db.execSQL("VACUUM");
+        Cursor cursor = db.rawQuery("PRAGMA page_count", null);
+        cursor.moveToFirst();
+        long pages = cursor.getLong(0);
+        cursor.close();
+        return pages * db.getPageSize();
+    }
 }
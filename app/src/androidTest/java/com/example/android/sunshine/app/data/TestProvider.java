@@ -22,11 +22,14 @@ import android.content.pm.PackageManager;
 import android.content.pm.ProviderInfo;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
 import android.net.Uri;
 import android.os.Build;
 import android.test.AndroidTestCase;
 import android.util.Log;
 
+import com.example.android.sunshine.app.data.WeatherContract.DataVersionEntry;
+import com.example.android.sunshine.app.data.WeatherContract.DiagnosticsEntry;
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
@@ -160,6 +163,19 @@ public class TestProvider extends AndroidTestCase {
         // vnd.android.cursor.dir/com.example.android.sunshine.app/location
         assertEquals("Error: the LocationEntry CONTENT_URI should return LocationEntry.CONTENT_TYPE",
                 LocationEntry.CONTENT_TYPE, type);
+
+        // content://com.example.android.sunshine.app/diagnostics/
+        type = mContext.getContentResolver().getType(DiagnosticsEntry.CONTENT_URI);
+        // vnd.android.cursor.dir/com.example.android.sunshine.app/diagnostics
+        assertEquals("Error: the DiagnosticsEntry CONTENT_URI should return DiagnosticsEntry.CONTENT_TYPE",
+                DiagnosticsEntry.CONTENT_TYPE, type);
+
+        // content://com.example.android.sunshine.app/data_version/94074
+        type = mContext.getContentResolver().getType(
+                DataVersionEntry.buildDataVersionUri(testLocation));
+        // vnd.android.cursor.item/com.example.android.sunshine.app/data_version
+        assertEquals("Error: the DataVersionEntry uri should return DataVersionEntry.CONTENT_ITEM_TYPE",
+                DataVersionEntry.CONTENT_ITEM_TYPE, type);
     }
 
 
@@ -176,11 +192,16 @@ public class TestProvider extends AndroidTestCase {
         ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
         long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
 
-        // Fantastic.  Now that we have a location, add some weather!
+        // Fantastic.  Now that we have a location, add some weather!  The database holds the
+        // compact encoding, the provider should hand back the values we started with.
         ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
 
-        long weatherRowId = db.insert(WeatherEntry.TABLE_NAME, null, weatherValues);
+        long weatherRowId = WeatherDbHelper.insertWeather(db,
+                WeatherDbHelper.encodeWeather(weatherValues), WeatherDbHelper.isClustered(db));
         assertTrue("Unable to Insert WeatherEntry into the Database", weatherRowId != -1);
+        WeatherDbHelper.putCondition(db,
+                weatherValues.getAsInteger(WeatherEntry.COLUMN_WEATHER_ID),
+                weatherValues.getAsString(WeatherEntry.COLUMN_SHORT_DESC));
 
         db.close();
 
@@ -512,4 +533,330 @@ public class TestProvider extends AndroidTestCase {
         }
         cursor.close();
     }
+
+    /*
+        This test makes sure that one row the database rejects doesn't take the rest of a bulk
+        insert down with it, and that the count returned is the number of rows stored.
+     */
+    public void testBulkInsertSkipsInvalidRow() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        ContentValues[] bulkInsertContentValues = createBulkInsertWeatherValues(locationRowId);
+        // min_temp is NOT NULL
+        final int invalid = 4;
+        bulkInsertContentValues[invalid].remove(WeatherEntry.COLUMN_MIN_TEMP);
+        int insertCount = mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                bulkInsertContentValues);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT - 1, insertCount);
+
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                null, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        assertEquals("Error: The rows stored don't match the count bulkInsert returned",
+                insertCount, cursor.getCount());
+        cursor.moveToFirst();
+        for (int i = 0; i < BULK_INSERT_RECORDS_TO_INSERT; i++) {
+            if (i == invalid) {
+                continue;
+            }
+            TestUtilities.validateCurrentRecord("testBulkInsertSkipsInvalidRow.  Error validating row "
+                    + i, cursor, bulkInsertContentValues[i]);
+            cursor.moveToNext();
+        }
+        cursor.close();
+    }
+
+    /*
+        This test checks that provider traffic shows up in the diagnostics cursor, one row per
+        route and operation, failed calls included, and that deleting the diagnostics URI
+        resets the counters.
+     */
+    public void testDiagnostics() {
+        mContext.getContentResolver().delete(DiagnosticsEntry.CONTENT_URI, null, null);
+
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createBulkInsertWeatherValues(locationRowId));
+
+        for (int i = 0; i < 3; i++) {
+            Cursor cursor = mContext.getContentResolver().query(
+                    WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION),
+                    null, null, null, null);
+            assertEquals(BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+            cursor.close();
+        }
+        try {
+            mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                    null, "no_such_column = 1", null, null);
+            fail("Error: A query on a column that doesn't exist should throw");
+        } catch (SQLiteException e) {
+            // Expected
+        }
+
+        Cursor stats = mContext.getContentResolver().query(
+                DiagnosticsEntry.CONTENT_URI, null, null, null, null);
+        assertEquals("Error: Expected one diagnostics row each for the location insert, the"
+                + " weather bulkInsert, the weather by location query and the failed weather"
+                + " query", 4, stats.getCount());
+
+        boolean foundQuery = false;
+        boolean foundFailure = false;
+        while (stats.moveToNext()) {
+            String route = stats.getString(stats.getColumnIndex(DiagnosticsEntry.COLUMN_ROUTE));
+            String operation =
+                    stats.getString(stats.getColumnIndex(DiagnosticsEntry.COLUMN_OPERATION));
+            long calls = stats.getLong(stats.getColumnIndex(DiagnosticsEntry.COLUMN_CALLS));
+            long failedCalls =
+                    stats.getLong(stats.getColumnIndex(DiagnosticsEntry.COLUMN_FAILED_CALLS));
+            long rows = stats.getLong(stats.getColumnIndex(DiagnosticsEntry.COLUMN_ROWS));
+            long p50 = stats.getLong(stats.getColumnIndex(DiagnosticsEntry.COLUMN_P50_MICROS));
+            long p99 = stats.getLong(stats.getColumnIndex(DiagnosticsEntry.COLUMN_P99_MICROS));
+            long max = stats.getLong(stats.getColumnIndex(DiagnosticsEntry.COLUMN_MAX_MICROS));
+            assertTrue("Error: percentiles should be ordered for " + route + " " + operation,
+                    p50 <= p99 && p99 <= max);
+            if ("weather/*".equals(route) && "query".equals(operation)) {
+                foundQuery = true;
+                assertEquals(3, calls);
+                assertEquals(3 * BULK_INSERT_RECORDS_TO_INSERT, rows);
+                assertEquals(0, failedCalls);
+            } else if ("weather".equals(route) && "query".equals(operation)) {
+                foundFailure = true;
+                assertEquals(1, calls);
+                assertEquals(1, failedCalls);
+                assertEquals(0, rows);
+            }
+        }
+        stats.close();
+        assertTrue("Error: No diagnostics row for the weather by location query", foundQuery);
+        assertTrue("Error: No diagnostics row for the failed weather query", foundFailure);
+
+        mContext.getContentResolver().delete(DiagnosticsEntry.CONTENT_URI, null, null);
+        stats = mContext.getContentResolver().query(
+                DiagnosticsEntry.CONTENT_URI, null, null, null, null);
+        assertEquals("Error: Deleting the diagnostics URI should reset the counters",
+                0, stats.getCount());
+        stats.close();
+    }
+
+    /*
+        This test checks that the date range and limit query parameters on the weather/* route
+        are pushed down into the query, returning exactly the rows asked for in date order.
+     */
+    public void testRangeAndLimitQueries() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+        ContentValues[] bulkInsertContentValues = createBulkInsertWeatherValues(locationRowId);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, bulkInsertContentValues);
+
+        long millisecondsInADay = 1000*60*60*24;
+
+        // The first three days, with no sort order given
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationWithStartDate(
+                        TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE, 3),
+                null, null, null, null);
+        assertEquals("Error: Limited query returned the wrong number of rows", 3, cursor.getCount());
+        cursor.moveToFirst();
+        for (int i = 0; i < 3; i++, cursor.moveToNext()) {
+            TestUtilities.validateCurrentRecord("testRangeAndLimitQueries.  Error validating limited row " + i,
+                    cursor, bulkInsertContentValues[i]);
+        }
+        cursor.close();
+
+        // Days 2 to 5, both inclusive
+        cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationWithDateRange(TestUtilities.TEST_LOCATION,
+                        TestUtilities.TEST_DATE + 2 * millisecondsInADay,
+                        TestUtilities.TEST_DATE + 5 * millisecondsInADay),
+                null, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        assertEquals("Error: Range query returned the wrong number of rows", 4, cursor.getCount());
+        cursor.moveToFirst();
+        for (int i = 2; i <= 5; i++, cursor.moveToNext()) {
+            TestUtilities.validateCurrentRecord("testRangeAndLimitQueries.  Error validating range row " + i,
+                    cursor, bulkInsertContentValues[i]);
+        }
+        cursor.close();
+
+        // The location route ignores the limit rather than sorting on a date it doesn't have
+        cursor = mContext.getContentResolver().query(
+                LocationEntry.CONTENT_URI.buildUpon()
+                        .appendQueryParameter(WeatherEntry.PARAM_LIMIT, "1").build(),
+                null, null, null, null);
+        assertEquals(1, cursor.getCount());
+        cursor.close();
+
+        try {
+            cursor = mContext.getContentResolver().query(
+                    WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION).buildUpon()
+                            .appendQueryParameter(WeatherEntry.PARAM_LIMIT, "three").build(),
+                    null, null, null, null);
+            cursor.close();
+            fail("Error: A malformed limit should be rejected");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    /*
+        The database stores temperatures and the like scaled to integers and the description in
+        a table of its own.  This test makes sure that selections and sort orders on the weather
+        route still see the columns as WeatherContract describes them.
+     */
+    public void testWeatherSelections() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+        ContentValues[] bulkInsertContentValues = createBulkInsertWeatherValues(locationRowId);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, bulkInsertContentValues);
+
+        // _id is only the weather row's, not the condition's
+        long[] ids = readWeatherIds();
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI, null,
+                WeatherEntry._ID + " = ?", new String[]{Long.toString(ids[3])},
+                WeatherEntry._ID + " DESC");
+        assertEquals(1, cursor.getCount());
+        cursor.moveToFirst();
+        TestUtilities.validateCurrentRecord("testWeatherSelections.  Error validating _id selection",
+                cursor, bulkInsertContentValues[3]);
+        cursor.close();
+
+        // Maximums run from 75 to 84, compared as given rather than as stored
+        cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI, null,
+                WeatherEntry.COLUMN_MAX_TEMP + " >= ? AND " + WeatherEntry.COLUMN_WIND_SPEED + " > ?",
+                new String[]{"80", "6.4"}, WeatherEntry.COLUMN_MAX_TEMP + " ASC");
+        assertEquals("Error: Selection on decoded columns returned the wrong rows",
+                BULK_INSERT_RECORDS_TO_INSERT - 5, cursor.getCount());
+        cursor.moveToFirst();
+        for (int i = 5; i < BULK_INSERT_RECORDS_TO_INSERT; i++, cursor.moveToNext()) {
+            TestUtilities.validateCurrentRecord("testWeatherSelections.  Error validating row " + i,
+                    cursor, bulkInsertContentValues[i]);
+        }
+        cursor.close();
+
+        cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                new String[]{WeatherEntry._ID},
+                WeatherEntry.COLUMN_SHORT_DESC + " = ?", new String[]{"Asteroids"}, null);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        cursor.close();
+
+        // The location route joins the same columns
+        cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION),
+                new String[]{WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+                        WeatherEntry.COLUMN_MIN_TEMP, LocationEntry.COLUMN_CITY_NAME},
+                null, null, WeatherEntry.COLUMN_MIN_TEMP + " ASC");
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        cursor.moveToFirst();
+        assertEquals(65.0 - (BULK_INSERT_RECORDS_TO_INSERT - 1), cursor.getDouble(1), 0.001);
+        cursor.close();
+    }
+
+    /*
+        This test makes sure that inserting weather for a location and date that's already in the
+        database updates that row in place, keeping its _id, rather than replacing it.
+     */
+    public void testUpsertKeepsRowIds() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createBulkInsertWeatherValues(locationRowId));
+        long[] firstIds = readWeatherIds();
+
+        // A later sync brings new figures for the same days
+        ContentValues[] refreshed = createBulkInsertWeatherValues(locationRowId);
+        for (ContentValues values : refreshed) {
+            values.put(WeatherEntry.COLUMN_MAX_TEMP, 99);
+        }
+        int insertCount = mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, refreshed);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, insertCount);
+
+        long[] secondIds = readWeatherIds();
+        assertEquals("Error: Refreshing the forecast changed the number of rows",
+                firstIds.length, secondIds.length);
+        for (int i = 0; i < firstIds.length; i++) {
+            assertEquals("Error: Row " + i + " got a new _id when it was refreshed",
+                    firstIds[i], secondIds[i]);
+        }
+
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                null, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        cursor.moveToFirst();
+        for (int i = 0; i < BULK_INSERT_RECORDS_TO_INSERT; i++, cursor.moveToNext()) {
+            TestUtilities.validateCurrentRecord("testUpsertKeepsRowIds.  Error validating row " + i,
+                    cursor, refreshed[i]);
+        }
+        cursor.close();
+
+        // A single insert for an existing day should hand back the existing row's uri too
+        Uri rowUri = mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI, refreshed[0]);
+        assertEquals(firstIds[0], ContentUris.parseId(rowUri));
+    }
+
+    /*
+        This test checks that a location's data version moves when its forecast changes, and
+        stays put when a sync writes the same forecast again.
+     */
+    public void testDataVersion() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        long version = readDataVersion(TestUtilities.TEST_LOCATION);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createBulkInsertWeatherValues(locationRowId));
+        long inserted = readDataVersion(TestUtilities.TEST_LOCATION);
+        assertTrue("Error: Inserting the forecast should move the data version", inserted > version);
+
+        int insertCount = mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createBulkInsertWeatherValues(locationRowId));
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, insertCount);
+        assertEquals("Error: Writing the same forecast again should keep the data version",
+                inserted, readDataVersion(TestUtilities.TEST_LOCATION));
+
+        ContentValues[] refreshed = createBulkInsertWeatherValues(locationRowId);
+        refreshed[2].put(WeatherEntry.COLUMN_MIN_TEMP, -40);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, refreshed);
+        long changed = readDataVersion(TestUtilities.TEST_LOCATION);
+        assertTrue("Error: Changing one day should move the data version", changed > inserted);
+
+        // The rows must read back as last written
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                null, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        cursor.moveToFirst();
+        for (int i = 0; i < BULK_INSERT_RECORDS_TO_INSERT; i++, cursor.moveToNext()) {
+            TestUtilities.validateCurrentRecord("testDataVersion.  Error validating row " + i,
+                    cursor, refreshed[i]);
+        }
+        cursor.close();
+
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        assertTrue("Error: Deleting the forecast should move the data version",
+                readDataVersion(TestUtilities.TEST_LOCATION) > changed);
+    }
+
+    private long readDataVersion(String locationSetting) {
+        Cursor cursor = mContext.getContentResolver().query(
+                DataVersionEntry.buildDataVersionUri(locationSetting), null, null, null, null);
+        assertTrue("Error: No data version for " + locationSetting, cursor.moveToFirst());
+        long version = cursor.getLong(cursor.getColumnIndex(DataVersionEntry.COLUMN_VERSION));
+        cursor.close();
+        return version;
+    }
+
+    private long[] readWeatherIds() {
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                new String[]{WeatherEntry._ID}, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        long[] ids = new long[cursor.getCount()];
+        for (int i = 0; cursor.moveToNext(); i++) {
+            ids[i] = cursor.getLong(0);
+        }
+        cursor.close();
+        return ids;
+    }
 }
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+public class TestQueryPlanCache extends AndroidTestCase {
+
+    private static final String SELECTION = WeatherEntry.COLUMN_DATE + " >= ? ";
+    private static final String SORT_ORDER = WeatherEntry.COLUMN_DATE + " ASC";
+
+    public void testPlansAreKeyedByContent() {
+        QueryPlanCache cache = new QueryPlanCache();
+        String[] projection = {WeatherEntry.COLUMN_DATE, WeatherEntry.COLUMN_MAX_TEMP};
+        cache.put(WeatherProvider.WEATHER_WITH_LOCATION, projection, SELECTION, SORT_ORDER,
+                false, "SELECT 1");
+
+        // A different array with the same columns should find the plan
+        String[] sameColumns = {WeatherEntry.COLUMN_DATE, WeatherEntry.COLUMN_MAX_TEMP};
+        assertEquals("SELECT 1", cache.get(WeatherProvider.WEATHER_WITH_LOCATION, sameColumns,
+                SELECTION, SORT_ORDER, false));
+
+        // The cache keeps its own copy of the projection
+        projection[1] = WeatherEntry.COLUMN_MIN_TEMP;
+        assertEquals("SELECT 1", cache.get(WeatherProvider.WEATHER_WITH_LOCATION, sameColumns,
+                SELECTION, SORT_ORDER, false));
+
+        assertNull("Error: A limited query must not reuse the unlimited plan",
+                cache.get(WeatherProvider.WEATHER_WITH_LOCATION, sameColumns,
+                        SELECTION, SORT_ORDER, true));
+        assertNull("Error: Another route must not reuse the plan",
+                cache.get(WeatherProvider.WEATHER_WITH_LOCATION_AND_DATE, sameColumns,
+                        SELECTION, SORT_ORDER, false));
+        assertNull("Error: Another sort order must not reuse the plan",
+                cache.get(WeatherProvider.WEATHER_WITH_LOCATION, sameColumns,
+                        SELECTION, null, false));
+        assertNull("Error: A null projection must not reuse the plan",
+                cache.get(WeatherProvider.WEATHER_WITH_LOCATION, null,
+                        SELECTION, SORT_ORDER, false));
+    }
+}
@@ -42,4 +42,27 @@ public class TestWeatherContract extends AndroidTestCase {
                 locationUri.toString(),
                 "content://com.example.android.sunshine.app/weather/%2FNorth%20Pole");
     }
+
+    public void testBuildWeatherLocationWithDateRangeAndLimit() {
+        long endDate = TEST_WEATHER_DATE + 1000*60*60*24*3;
+        Uri rangeUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDateRange(
+                TEST_WEATHER_LOCATION, TEST_WEATHER_DATE, endDate);
+        assertEquals("Error: Weather location not properly read back from the range Uri",
+                TEST_WEATHER_LOCATION, WeatherContract.WeatherEntry.getLocationSettingFromUri(rangeUri));
+        assertEquals("Error: Start date not properly read back from the range Uri",
+                WeatherContract.normalizeDate(TEST_WEATHER_DATE),
+                WeatherContract.WeatherEntry.getStartDateFromUri(rangeUri));
+        assertEquals("Error: End date not properly read back from the range Uri",
+                WeatherContract.normalizeDate(endDate),
+                WeatherContract.WeatherEntry.getEndDateFromUri(rangeUri));
+        assertEquals("Error: An unlimited Uri should report a limit of 0",
+                0, WeatherContract.WeatherEntry.getLimitFromUri(rangeUri));
+
+        Uri limitUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                TEST_WEATHER_LOCATION, TEST_WEATHER_DATE, 1);
+        assertEquals("Error: Limit not properly read back from the Uri",
+                1, WeatherContract.WeatherEntry.getLimitFromUri(limitUri));
+        assertEquals("Error: A Uri without an end date should report an end date of 0",
+                0, WeatherContract.WeatherEntry.getEndDateFromUri(limitUri));
+    }
 }
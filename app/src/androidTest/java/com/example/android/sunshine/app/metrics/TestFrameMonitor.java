@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.metrics;
+
+import android.test.AndroidTestCase;
+
+public class TestFrameMonitor extends AndroidTestCase {
+
+    private static final long FRAME_NANOS = 16000000L;
+    private static final long MS = 1000000L;
+
+    private FrameMonitor mMonitor;
+    private long mFrameTime;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mMonitor = new FrameMonitor(FRAME_NANOS);
+        mMonitor.beginFrames();
+        mFrameTime = 1000 * MS;
+        mMonitor.doFrame(mFrameTime);
+    }
+
+    // Ends the frame in progress after durationNanos
+    private void frame(long durationNanos) {
+        mFrameTime += durationNanos;
+        mMonitor.doFrame(mFrameTime);
+    }
+
+    private void work(int kind, long durationNanos) {
+        mMonitor.endWork(kind, System.nanoTime() - durationNanos);
+    }
+
+    public void testShortFramesAreNotLong() {
+        work(FrameMonitor.WORK_BIND, 10 * MS);
+        frame(FRAME_NANOS);
+        frame(FRAME_NANOS + 2 * MS);
+
+        assertEquals(2, mMonitor.getFrames().getCount());
+        for (int cause = 0; cause <= FrameMonitor.CAUSE_OTHER; cause++) {
+            assertEquals(0, mMonitor.getLongFrames(cause));
+        }
+    }
+
+    public void testLongFrameBlamesLongestWork() {
+        work(FrameMonitor.WORK_SCROLL, 2 * MS);
+        work(FrameMonitor.WORK_BIND, 20 * MS);
+        frame(3 * FRAME_NANOS);
+        work(FrameMonitor.WORK_SCROLL, 25 * MS);
+        frame(2 * FRAME_NANOS);
+
+        assertEquals(1, mMonitor.getLongFrames(FrameMonitor.WORK_BIND));
+        assertEquals(1, mMonitor.getLongFrames(FrameMonitor.WORK_SCROLL));
+        assertTrue(mMonitor.dump(), mMonitor.dump().contains("bind=1 (2 dropped)"));
+    }
+
+    public void testLongFrameWithDecodesAndLittleWork() {
+        work(FrameMonitor.WORK_BIND, MS);
+        mMonitor.onImageDecoded();
+        frame(2 * FRAME_NANOS);
+        work(FrameMonitor.WORK_BIND, MS);
+        frame(2 * FRAME_NANOS);
+
+        assertEquals(1, mMonitor.getLongFrames(FrameMonitor.CAUSE_DECODE));
+        assertEquals(1, mMonitor.getLongFrames(FrameMonitor.CAUSE_OTHER));
+        assertEquals(0, mMonitor.getLongFrames(FrameMonitor.WORK_BIND));
+    }
+
+    public void testReset() {
+        work(FrameMonitor.WORK_BIND, 30 * MS);
+        frame(2 * FRAME_NANOS);
+        assertEquals(1, mMonitor.getLongFrames(FrameMonitor.WORK_BIND));
+
+        mMonitor.reset();
+        assertEquals(0, mMonitor.getFrames().getCount());
+        assertEquals(0, mMonitor.getLongFrames(FrameMonitor.WORK_BIND));
+    }
+}
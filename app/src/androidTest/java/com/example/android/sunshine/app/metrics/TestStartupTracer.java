@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.metrics;
+
+import android.test.AndroidTestCase;
+
+public class TestStartupTracer extends AndroidTestCase {
+
+    private StartupTracer mTracer;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mTracer = new StartupTracer();
+    }
+
+    public void testNothingRecordedBeforeStart() {
+        mTracer.milestone(StartupTracer.FIRST_FRAME);
+        mTracer.endStep("inflate", StartupTracer.beginStep());
+        assertEquals(-1, mTracer.getMilestoneMicros(StartupTracer.FIRST_FRAME));
+        assertEquals(-1, mTracer.getStepMicros("inflate"));
+        assertEquals("", mTracer.dump());
+    }
+
+    public void testOnlyFirstStartCounts() {
+        assertTrue(mTracer.start());
+        assertFalse("Error: A warm start was taken for a cold one", mTracer.start());
+    }
+
+    public void testMilestoneRecordedOnce() throws InterruptedException {
+        mTracer.start();
+        mTracer.milestone(StartupTracer.FIRST_FORECAST);
+        long first = mTracer.getMilestoneMicros(StartupTracer.FIRST_FORECAST);
+        assertTrue(first >= 0);
+
+        Thread.sleep(5);
+        mTracer.milestone(StartupTracer.FIRST_FORECAST);
+        assertEquals("Error: Reaching a milestone again moved it",
+                first, mTracer.getMilestoneMicros(StartupTracer.FIRST_FORECAST));
+        String dump = mTracer.dump();
+        assertEquals(dump, dump.indexOf(StartupTracer.FIRST_FORECAST),
+                dump.lastIndexOf(StartupTracer.FIRST_FORECAST));
+    }
+
+    public void testStepsAndMilestonesKeptApart() throws InterruptedException {
+        mTracer.start();
+        long begin = StartupTracer.beginStep();
+        Thread.sleep(5);
+        mTracer.endStep("inflate", begin);
+        mTracer.milestone(StartupTracer.FIRST_FRAME);
+
+        assertTrue(mTracer.getStepMicros("inflate") >= 5000);
+        assertEquals(-1, mTracer.getMilestoneMicros("inflate"));
+        assertEquals(-1, mTracer.getStepMicros(StartupTracer.FIRST_FRAME));
+        String dump = mTracer.dump();
+        assertTrue(dump, dump.indexOf("inflate") < dump.indexOf(StartupTracer.FIRST_FRAME));
+    }
+}
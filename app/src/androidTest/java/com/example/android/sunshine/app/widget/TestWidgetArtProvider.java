@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.widget;
+
+import android.content.ComponentName;
+import android.content.pm.PackageManager;
+import android.content.pm.ProviderInfo;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.R;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/*
+    WidgetArtProvider is exported, so any app can ask it for a file.  These tests check that it
+    only hands out the rendered art, and only for reading.
+ */
+public class TestWidgetArtProvider extends AndroidTestCase {
+
+    private static final byte[] CONTENT = {(byte) 0x89, 'P', 'N', 'G'};
+
+    private File mDirectory;
+    private String mName;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDirectory = new File(mContext.getCacheDir(), WidgetArtCache.DIRECTORY);
+        assertTrue(mDirectory.isDirectory() || mDirectory.mkdirs());
+        mName = WidgetArtCache.getFileName("http://example.com/art/clear.png", 40);
+        FileOutputStream out = new FileOutputStream(new File(mDirectory, mName));
+        try {
+            out.write(CONTENT);
+        } finally {
+            out.close();
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        new File(mDirectory, mName).delete();
+        super.tearDown();
+    }
+
+    public void testProviderRegistry() throws PackageManager.NameNotFoundException {
+        ProviderInfo providerInfo = mContext.getPackageManager().getProviderInfo(
+                new ComponentName(mContext, WidgetArtProvider.class), 0);
+        assertEquals(mContext.getString(R.string.widget_art_authority), providerInfo.authority);
+        assertTrue(providerInfo.exported);
+    }
+
+    public void testFileNames() {
+        String name = WidgetArtCache.getFileName("http://example.com/art/clear.png", 40);
+        assertEquals("Error: The name should only depend on the url and size", mName, name);
+        assertTrue(name, name.matches("[0-9a-f]{40}_40\\.png"));
+        assertFalse(name.equals(WidgetArtCache.getFileName("http://example.com/art/rain.png", 40)));
+        assertFalse(name.equals(WidgetArtCache.getFileName("http://example.com/art/clear.png", 60)));
+        // "Aa" and "BB" have the same String.hashCode
+        assertFalse(WidgetArtCache.getFileName("Aa", 40).equals(WidgetArtCache.getFileName("BB", 40)));
+    }
+
+    public void testReadsArt() throws IOException {
+        ParcelFileDescriptor pfd = mContext.getContentResolver().openFileDescriptor(
+                WidgetArtProvider.buildArtUri(mContext, mName), "r");
+        assertNotNull(pfd);
+        FileInputStream in = new FileInputStream(pfd.getFileDescriptor());
+        try {
+            byte[] read = new byte[CONTENT.length + 1];
+            int length = in.read(read);
+            assertEquals(CONTENT.length, length);
+            assertTrue(Arrays.equals(CONTENT, Arrays.copyOf(read, length)));
+        } finally {
+            in.close();
+            pfd.close();
+        }
+    }
+
+    public void testReadOnly() throws FileNotFoundException {
+        Uri uri = WidgetArtProvider.buildArtUri(mContext, mName);
+        for (String mode : new String[]{"w", "rw", "wt", "wa", "rwt"}) {
+            try {
+                ParcelFileDescriptor pfd = mContext.getContentResolver().openFileDescriptor(uri, mode);
+                if (null != pfd) {
+                    try {
+                        pfd.close();
+                    } catch (IOException ignored) {
+                    }
+                }
+                fail("Error: Widget art opened for \"" + mode + "\"");
+            } catch (SecurityException e) {
+                // Expected
+            }
+        }
+        assertTrue(new File(mDirectory, mName).length() == CONTENT.length);
+    }
+
+    public void testOnlyOpensArtFiles() {
+        String authority = mContext.getString(R.string.widget_art_authority);
+        Uri[] uris = {
+                // Outside the directory
+                new Uri.Builder().scheme("content").authority(authority)
+                        .appendPath("../../databases/weather.db").build(),
+                new Uri.Builder().scheme("content").authority(authority)
+                        .appendEncodedPath("..%2F..%2Fdatabases%2Fweather.png").build(),
+                new Uri.Builder().scheme("content").authority(authority)
+                        .appendPath("..").appendPath(mName).build(),
+                // Not a rendered PNG
+                new Uri.Builder().scheme("content").authority(authority)
+                        .appendPath(mName + ".tmp").build(),
+                new Uri.Builder().scheme("content").authority(authority)
+                        .appendPath(".hidden.png").build(),
+                // Not there
+                WidgetArtProvider.buildArtUri(mContext, "missing_40.png"),
+                new Uri.Builder().scheme("content").authority(authority).build(),
+        };
+        for (Uri uri : uris) {
+            try {
+                ParcelFileDescriptor pfd = mContext.getContentResolver().openFileDescriptor(uri, "r");
+                if (null != pfd) {
+                    try {
+                        pfd.close();
+                    } catch (IOException ignored) {
+                    }
+                }
+                fail("Error: Widget art provider opened " + uri);
+            } catch (FileNotFoundException e) {
+                // Expected
+            }
+        }
+    }
+}
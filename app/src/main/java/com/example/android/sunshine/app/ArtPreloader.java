@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.util.Log;
+import android.widget.ImageView;
+
+import com.bumptech.glide.DrawableRequestBuilder;
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.load.resource.drawable.GlideDrawable;
+import com.bumptech.glide.request.FutureTarget;
+import com.bumptech.glide.request.target.Target;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.shared.WeatherConditions;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Downloads the art pack images of the current forecast into Glide's disk cache ahead of time,
+ * right after a sync and when the art pack changes.  There are only a handful of distinct
+ * images, so the list, the detail pane and the notification then decode them from disk instead
+ * of fetching each one over the network as its row binds.
+ *
+ * Each image is also decoded at the size of the future day rows' icons into the memory cache,
+ * so the first screen of the list after a sync binds without decoding.  The today row's icon
+ * is only sized by laying it out, so it is left to ForecastPreloader, along with the detail
+ * pane's art.
+ *
+ * Requests that want these have to use DiskCacheStrategy.ALL, see ForecastAdapter.loadArt.
+ */
+public class ArtPreloader {
+
+    private static final String LOG_TAG = ArtPreloader.class.getSimpleName();
+
+    private static final String[] ART_COLUMNS = {
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID
+    };
+    private static final int COL_WEATHER_CONDITION_ID = 0;
+
+    // One download at a time, it is only a few small images.
+    private static final Executor sExecutor = Executors.newSingleThreadExecutor();
+
+    private ArtPreloader() {
+    }
+
+    /**
+     * Starts downloading, in the background, the art for every day of the forecast of the
+     * preferred location.  Does nothing when the built in art is in use.
+     *
+     * @param artPackUrlFormat the art pack to download from.  Passed in, rather than read from
+     *                         the settings, so a caller that just changed it doesn't race the
+     *                         SettingsSnapshot update.
+     */
+    public static void preloadForecastArt(Context context, final String artPackUrlFormat) {
+        final Context appContext = context.getApplicationContext();
+        if (appContext.getString(R.string.pref_art_pack_sunshine).equals(artPackUrlFormat)) {
+            return;
+        }
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                downloadForecastArt(appContext, artPackUrlFormat);
+            }
+        });
+    }
+
+    private static void downloadForecastArt(Context context, String artPackUrlFormat) {
+        Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                SettingsSnapshot.get(context).location, System.currentTimeMillis());
+        Cursor cursor = context.getContentResolver().query(weatherUri, ART_COLUMNS, null,
+                null, null);
+        if (null == cursor) return;
+
+        // The art url of each condition, with the icon its row shows if the art fails
+        HashMap<String, Integer> artUrls = new HashMap<String, Integer>();
+        try {
+            while (cursor.moveToNext()) {
+                int weatherId = cursor.getInt(COL_WEATHER_CONDITION_ID);
+                String artUrl = WeatherConditions.getArtUrl(artPackUrlFormat, weatherId);
+                if (null != artUrl) {
+                    artUrls.put(artUrl, Utility.getIconResourceForWeatherCondition(weatherId));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        RequestManager glide = Glide.with(context);
+        // The future day rows' icons are list_icon squares with the default FIT_CENTER
+        int iconSize = context.getResources().getDimensionPixelSize(R.dimen.list_icon);
+        for (Map.Entry<String, Integer> art : artUrls.entrySet()) {
+            String artUrl = art.getKey();
+            try {
+                // Already cached images come straight back from the disk cache
+                glide.load(artUrl)
+                        .downloadOnly(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL)
+                        .get();
+
+                // The same request a row makes, see ForecastAdapter.loadArt.  Clearing it once
+                // it's done hands the image over to the memory cache.
+                DrawableRequestBuilder<String> request =
+                        ForecastAdapter.loadArt(glide, artUrl, art.getValue());
+                PreloadTarget.matchScaleType(request, ImageView.ScaleType.FIT_CENTER);
+                FutureTarget<GlideDrawable> icon = request.into(iconSize, iconSize);
+                try {
+                    icon.get();
+                } finally {
+                    Glide.clear(icon);
+                }
+            } catch (InterruptedException | ExecutionException e) {
+                Log.w(LOG_TAG, "Error preloading " + artUrl, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.util.LongSparseArray;
+import android.text.format.DateUtils;
+import android.widget.ImageView;
+
+import com.bumptech.glide.DrawableRequestBuilder;
+import com.bumptech.glide.Glide;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.shared.WeatherConditions;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps the detail rows of the days around the one in the detail pane, and has their art
+ * loaded into Glide's memory cache, so that moving to the next or previous day in the two
+ * pane layout binds from memory instead of waiting for a query and an image load.
+ *
+ * Rows are kept as DetailFragment reads them from its cursor, before any formatting, so they
+ * don't depend on the units or the locale.  They are all dropped when the weather changes.
+ */
+class DetailPrefetcher {
+
+    // Days prefetched on each side of the one shown
+    private static final int NEIGHBOR_DAYS = 2;
+    // More than a whole forecast, past that the cache starts over
+    private static final int MAX_ROWS = 32;
+
+    private static DetailPrefetcher sInstance;
+
+    // Queries are a few rows through the range route, one at a time is plenty.
+    private static final Executor sExecutor = Executors.newSingleThreadExecutor();
+
+    private final Context mContext;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    // DETAIL_COLUMNS values of mLocation's days, by normalized date
+    private String mLocation;
+    private final LongSparseArray<Object[]> mRows = new LongSparseArray<Object[]>();
+    // Bumped whenever the rows are dropped, so a query started before doesn't put old ones back
+    private int mGeneration;
+
+    // Reused round robin, one per neighbor.  Only touched on the main thread.
+    private final PreloadTarget[] mTargets = new PreloadTarget[2 * NEIGHBOR_DAYS];
+    private int mNextTarget;
+
+    private final ContentObserver mWeatherObserver = new ContentObserver(mMainHandler) {
+        @Override
+        public void onChange(boolean selfChange) {
+            synchronized (DetailPrefetcher.this) {
+                mRows.clear();
+                mGeneration++;
+            }
+        }
+    };
+
+    static synchronized DetailPrefetcher getInstance(Context context) {
+        if (null == sInstance) {
+            sInstance = new DetailPrefetcher(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private DetailPrefetcher(Context context) {
+        mContext = context;
+        for (int i = 0; i < mTargets.length; i++) {
+            mTargets[i] = new PreloadTarget();
+        }
+        context.getContentResolver().registerContentObserver(WeatherEntry.CONTENT_URI, true,
+                mWeatherObserver);
+    }
+
+    /**
+     * @return the day of this location and date uri as a one row cursor with the
+     * DetailFragment.DETAIL_COLUMNS projection, or null if it isn't cached.
+     */
+    synchronized Cursor getCachedRow(Uri uri) {
+        if (!WeatherEntry.getLocationSettingFromUri(uri).equals(mLocation)) return null;
+        Object[] row = mRows.get(WeatherEntry.getDateFromUri(uri));
+        if (null == row) return null;
+        MatrixCursor cursor = new MatrixCursor(DetailFragment.DETAIL_COLUMNS, 1);
+        cursor.addRow(row);
+        return cursor;
+    }
+
+    /**
+     * Loads the days on either side of the uri's in the background, then their art at the
+     * detail icon's size.  Call it on the main thread once the icon is laid out.
+     */
+    void prefetchAround(Uri uri, final int iconWidth, final int iconHeight,
+                        final ImageView.ScaleType iconScaleType) {
+        final String location = WeatherEntry.getLocationSettingFromUri(uri);
+        final long date = WeatherEntry.getDateFromUri(uri);
+        final int generation;
+        synchronized (this) {
+            if (!location.equals(mLocation)) {
+                mLocation = location;
+                mRows.clear();
+                mGeneration++;
+            }
+            generation = mGeneration;
+        }
+
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final int[] weatherIds = loadNeighbors(location, date, generation);
+                if (null == weatherIds) return;
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        preloadArt(weatherIds, iconWidth, iconHeight, iconScaleType);
+                    }
+                });
+            }
+        });
+    }
+
+    // Returns the condition ids of the neighbors, or null if nothing was loaded.
+    private int[] loadNeighbors(String location, long date, int generation) {
+        long span = NEIGHBOR_DAYS * DateUtils.DAY_IN_MILLIS;
+        Uri rangeUri = WeatherEntry.buildWeatherLocationWithDateRange(location, date - span,
+                date + span);
+        Cursor cursor = mContext.getContentResolver().query(rangeUri,
+                DetailFragment.DETAIL_COLUMNS, null, null, null);
+        if (null == cursor) return null;
+
+        int[] weatherIds = new int[cursor.getCount()];
+        int neighbors = 0;
+        try {
+            synchronized (this) {
+                if (generation != mGeneration) return null;
+                if (mRows.size() + cursor.getCount() > MAX_ROWS) mRows.clear();
+                while (cursor.moveToNext()) {
+                    long rowDate = cursor.getLong(DetailFragment.COL_WEATHER_DATE);
+                    mRows.put(rowDate, readRow(cursor));
+                    // The day itself is on screen already
+                    if (rowDate != date) {
+                        weatherIds[neighbors++] =
+                                cursor.getInt(DetailFragment.COL_WEATHER_CONDITION_ID);
+                    }
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        int[] neighborIds = new int[neighbors];
+        System.arraycopy(weatherIds, 0, neighborIds, 0, neighbors);
+        return neighborIds;
+    }
+
+    private static Object[] readRow(Cursor cursor) {
+        return new Object[] {
+                cursor.getLong(DetailFragment.COL_WEATHER_ID),
+                cursor.getLong(DetailFragment.COL_WEATHER_DATE),
+                cursor.getString(DetailFragment.COL_WEATHER_DESC),
+                cursor.getDouble(DetailFragment.COL_WEATHER_MAX_TEMP),
+                cursor.getDouble(DetailFragment.COL_WEATHER_MIN_TEMP),
+                cursor.getDouble(DetailFragment.COL_WEATHER_HUMIDITY),
+                cursor.getDouble(DetailFragment.COL_WEATHER_PRESSURE),
+                cursor.getDouble(DetailFragment.COL_WEATHER_WIND_SPEED),
+                cursor.getDouble(DetailFragment.COL_WEATHER_DEGREES),
+                cursor.getInt(DetailFragment.COL_WEATHER_CONDITION_ID),
+                cursor.getString(DetailFragment.COL_LOCATION_SETTING)
+        };
+    }
+
+    private void preloadArt(int[] weatherIds, int iconWidth, int iconHeight,
+                            ImageView.ScaleType iconScaleType) {
+        SettingsSnapshot settings = SettingsSnapshot.get(mContext);
+        if (settings.localGraphics || iconWidth <= 0 || iconHeight <= 0) return;
+
+        for (int weatherId : weatherIds) {
+            String artUrl = WeatherConditions.getArtUrl(settings.artPackUrlFormat, weatherId);
+            if (null == artUrl) continue;
+            // Built like DetailFragment's own request, or the cache won't match it
+            DrawableRequestBuilder<String> request = ForecastAdapter.loadArt(
+                    Glide.with(mContext), artUrl,
+                    Utility.getArtResourceForWeatherCondition(weatherId));
+            PreloadTarget.matchScaleType(request, iconScaleType);
+
+            PreloadTarget target = mTargets[mNextTarget];
+            mNextTarget = (mNextTarget + 1) % mTargets.length;
+            Glide.clear(target);
+            target.mWidth = iconWidth;
+            target.mHeight = iconHeight;
+            request.into(target);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.support.v4.util.LongSparseArray;
+import android.util.SparseArray;
+
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * Remembers the display strings built by the formatting helpers in {@link Utility}.  The
+ * forecast list, the detail pane, both widgets and the notification format the same handful
+ * of dates and temperatures over and over, and each miss in Utility allocates a Time, a
+ * SimpleDateFormat or a formatter.
+ *
+ * A cached string depends on the value, the unit system, the locale and, for the relative day
+ * labels, on which day today is.  All entries are dropped when any of the last three change:
+ * at local midnight, when the settings version changes, or when the default locale does.
+ * Safe to use from any thread.
+ */
+public class DisplayFormatter {
+
+    // Per kind of string.  Even a long forecast only has a few dozen distinct values a day.
+    private static final int MAX_ENTRIES = 128;
+
+    private static DisplayFormatter sInstance;
+
+    private final Context mContext;
+
+    private final LongSparseArray<String> mTemperatures = new LongSparseArray<String>();
+    private final LongSparseArray<String> mWinds = new LongSparseArray<String>();
+    private final LongSparseArray<String> mFriendlyDays = new LongSparseArray<String>();
+    private final LongSparseArray<String> mLongFriendlyDays = new LongSparseArray<String>();
+    private final LongSparseArray<String> mFullFriendlyDays = new LongSparseArray<String>();
+    private final LongSparseArray<String> mDayNames = new LongSparseArray<String>();
+    private final LongSparseArray<String> mMonthDays = new LongSparseArray<String>();
+    // Single argument resource formats, such as the a11y descriptions, by format id
+    private final SparseArray<HashMap<String, String>> mFormats =
+            new SparseArray<HashMap<String, String>>();
+
+    private Locale mLocale;
+    private long mNextMidnight;
+    // SettingsSnapshot.version the strings were built with
+    private int mSettingsVersion;
+
+    public static synchronized DisplayFormatter getInstance(Context context) {
+        if (null == sInstance) {
+            sInstance = new DisplayFormatter(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private DisplayFormatter(Context context) {
+        mContext = context;
+    }
+
+    /**
+     * @see Utility#formatTemperature(Context, double)
+     */
+    public synchronized String formatTemperature(double temperature) {
+        validate();
+        long key = Double.doubleToLongBits(temperature);
+        String value = mTemperatures.get(key);
+        if (null == value) {
+            value = Utility.formatTemperature(mContext, temperature);
+            put(mTemperatures, key, value);
+        }
+        return value;
+    }
+
+    /**
+     * @see Utility#getFormattedWind(Context, float, float)
+     */
+    public synchronized String getFormattedWind(float windSpeed, float degrees) {
+        validate();
+        long key = ((long) Float.floatToIntBits(windSpeed) << 32)
+                | (Float.floatToIntBits(degrees) & 0xffffffffL);
+        String value = mWinds.get(key);
+        if (null == value) {
+            value = Utility.getFormattedWind(mContext, windSpeed, degrees);
+            put(mWinds, key, value);
+        }
+        return value;
+    }
+
+    /**
+     * @see Utility#getFriendlyDayString(Context, long, boolean)
+     */
+    public synchronized String getFriendlyDayString(long dateInMillis, boolean displayLongToday) {
+        validate();
+        LongSparseArray<String> cache = displayLongToday ? mLongFriendlyDays : mFriendlyDays;
+        String value = cache.get(dateInMillis);
+        if (null == value) {
+            value = Utility.getFriendlyDayString(mContext, dateInMillis, displayLongToday);
+            put(cache, dateInMillis, value);
+        }
+        return value;
+    }
+
+    /**
+     * @see Utility#getFullFriendlyDayString(Context, long)
+     */
+    public synchronized String getFullFriendlyDayString(long dateInMillis) {
+        validate();
+        String value = mFullFriendlyDays.get(dateInMillis);
+        if (null == value) {
+            value = Utility.getFullFriendlyDayString(mContext, dateInMillis);
+            put(mFullFriendlyDays, dateInMillis, value);
+        }
+        return value;
+    }
+
+    /**
+     * @see Utility#getDayName(Context, long)
+     */
+    public synchronized String getDayName(long dateInMillis) {
+        validate();
+        String value = mDayNames.get(dateInMillis);
+        if (null == value) {
+            value = Utility.getDayName(mContext, dateInMillis);
+            put(mDayNames, dateInMillis, value);
+        }
+        return value;
+    }
+
+    /**
+     * @see Utility#getFormattedMonthDay(Context, long)
+     */
+    public synchronized String getFormattedMonthDay(long dateInMillis) {
+        validate();
+        String value = mMonthDays.get(dateInMillis);
+        if (null == value) {
+            value = Utility.getFormattedMonthDay(mContext, dateInMillis);
+            put(mMonthDays, dateInMillis, value);
+        }
+        return value;
+    }
+
+    /**
+     * Same as Context.getString(formatId, arg), for formats such as R.string.a11y_high_temp
+     * that take one string.
+     */
+    public synchronized String getString(int formatId, String arg) {
+        validate();
+        HashMap<String, String> cache = mFormats.get(formatId);
+        if (null == cache) {
+            cache = new HashMap<String, String>();
+            mFormats.put(formatId, cache);
+        }
+        String value = cache.get(arg);
+        if (null == value) {
+            value = mContext.getString(formatId, arg);
+            if (cache.size() >= MAX_ENTRIES) cache.clear();
+            cache.put(arg, value);
+        }
+        return value;
+    }
+
+    // Drops everything if the day, the settings or the locale changed since the strings were
+    // built.
+    private void validate() {
+        Locale locale = Locale.getDefault();
+        int settingsVersion = SettingsSnapshot.get(mContext).version;
+        long now = System.currentTimeMillis();
+        if (now >= mNextMidnight || settingsVersion != mSettingsVersion
+                || !locale.equals(mLocale)) {
+            clear();
+            mLocale = locale;
+            mSettingsVersion = settingsVersion;
+            Calendar midnight = Calendar.getInstance();
+            midnight.setTimeInMillis(now);
+            midnight.set(Calendar.HOUR_OF_DAY, 0);
+            midnight.set(Calendar.MINUTE, 0);
+            midnight.set(Calendar.SECOND, 0);
+            midnight.set(Calendar.MILLISECOND, 0);
+            midnight.add(Calendar.DAY_OF_MONTH, 1);
+            mNextMidnight = midnight.getTimeInMillis();
+        }
+    }
+
+    private void clear() {
+        mTemperatures.clear();
+        mWinds.clear();
+        mFriendlyDays.clear();
+        mLongFriendlyDays.clear();
+        mFullFriendlyDays.clear();
+        mDayNames.clear();
+        mMonthDays.clear();
+        mFormats.clear();
+    }
+
+    private static void put(LongSparseArray<String> cache, long key, String value) {
+        if (cache.size() >= MAX_ENTRIES) cache.clear();
+        cache.put(key, value);
+    }
+}
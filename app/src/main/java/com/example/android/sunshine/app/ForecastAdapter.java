@@ -16,44 +16,85 @@
 package com.example.android.sunshine.app;
 
 import android.content.Context;
-import android.database.Cursor;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.v4.view.ViewCompat;
 import android.support.v7.widget.RecyclerView;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AbsListView;
 import android.widget.Checkable;
 import android.widget.ImageView;
 import android.widget.TextView;
 
+import com.bumptech.glide.DrawableRequestBuilder;
 import com.bumptech.glide.Glide;
-import com.example.android.sunshine.app.data.WeatherContract;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.load.resource.drawable.GlideDrawable;
+import com.bumptech.glide.request.RequestListener;
+import com.bumptech.glide.request.target.Target;
+import com.example.android.sunshine.app.metrics.FrameMonitor;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 /**
  * {@link ForecastAdapter} exposes a list of weather forecasts
- * from a {@link android.database.Cursor} to a {@link android.support.v7.widget.RecyclerView}.
+ * from a {@link ForecastModel} to a {@link android.support.v7.widget.RecyclerView}.
  */
 public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder> {
 
-    private static final int VIEW_TYPE_TODAY = 0;
-    private static final int VIEW_TYPE_FUTURE_DAY = 1;
+    static final int VIEW_TYPE_TODAY = 0;
+    static final int VIEW_TYPE_FUTURE_DAY = 1;
+    static final int VIEW_TYPE_COUNT = 2;
 
     // Flag to determine if we want to use a separate view for "today".
     private boolean mUseTodayLayout = true;
 
-    private Cursor mCursor;
+    // Diffs are small, one thread shared by all adapters is plenty.
+    private static final Executor sDiffExecutor = Executors.newSingleThreadExecutor();
+
+    // What the RecyclerView is currently showing.  This only moves to a new model once
+    // the diff against it has been dispatched, so that positions always agree with the views.
+    private ForecastModel mModel = ForecastModel.EMPTY;
+    // Bumped on every swap, so a diff that finishes after a newer swap is dropped.
+    private int mSwapGeneration;
+    final private Handler mMainHandler = new Handler(Looper.getMainLooper());
     final private Context mContext;
+    final private RequestManager mGlide;
     final private ForecastAdapterOnClickHandler mClickHandler;
     final private View mEmptyView;
     final private ItemChoiceManager mICM;
+    final private FrameMonitor mFrameMonitor;
+
+    // Tells the FrameMonitor about art that wasn't in the memory cache
+    final private RequestListener<String, GlideDrawable> mArtListener =
+            new RequestListener<String, GlideDrawable>() {
+        @Override
+        public boolean onException(Exception e, String model, Target<GlideDrawable> target,
+                                   boolean isFirstResource) {
+            return false;
+        }
+
+        @Override
+        public boolean onResourceReady(GlideDrawable resource, String model,
+                                       Target<GlideDrawable> target, boolean isFromMemoryCache,
+                                       boolean isFirstResource) {
+            if (!isFromMemoryCache) mFrameMonitor.onImageDecoded();
+            return false;
+        }
+    };
 
     /**
      * Cache of the children views for a forecast list item.
      */
-    public class ForecastAdapterViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+    public class ForecastAdapterViewHolder extends RecyclerView.ViewHolder
+            implements View.OnClickListener, View.OnLongClickListener {
         public final ImageView mIconView;
         public final TextView mDateView;
         public final TextView mDescriptionView;
@@ -68,16 +109,26 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
             mHighTempView = (TextView) view.findViewById(R.id.list_item_high_textview);
             mLowTempView = (TextView) view.findViewById(R.id.list_item_low_textview);
             view.setOnClickListener(this);
+            if (mICM.getChoiceMode() == AbsListView.CHOICE_MODE_MULTIPLE_MODAL) {
+                view.setOnLongClickListener(this);
+            }
         }
 
         @Override
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
-            mCursor.moveToPosition(adapterPosition);
-            int dateColumnIndex = mCursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-            mClickHandler.onClick(mCursor.getLong(dateColumnIndex), this);
+            if (adapterPosition == RecyclerView.NO_POSITION) return;
+            // While items are being picked a click only picks
+            if (!mICM.isInModalChoice()) {
+                mClickHandler.onClick(mModel.dates[adapterPosition], this);
+            }
             mICM.onClick(this);
         }
+
+        @Override
+        public boolean onLongClick(View v) {
+            return mICM.onLongClick(this);
+        }
     }
 
     public static interface ForecastAdapterOnClickHandler {
@@ -86,8 +137,14 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     public ForecastAdapter(Context context, ForecastAdapterOnClickHandler dh, View emptyView, int choiceMode) {
         mContext = context;
+        mGlide = Glide.with(context);
+        mFrameMonitor = FrameMonitor.getInstance(context);
         mClickHandler = dh;
         mEmptyView = emptyView;
+        // The provider keeps a row's _id stable across syncs, so RecyclerView can keep the
+        // views it has bound and the ItemChoiceManager can follow the selection by id.
+        // Set first, it can't change once the ItemChoiceManager observes this adapter.
+        setHasStableIds(true);
         mICM = new ItemChoiceManager(this);
         mICM.setChoiceMode(choiceMode);
     }
@@ -103,6 +160,7 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
     @Override
     public ForecastAdapterViewHolder onCreateViewHolder(ViewGroup viewGroup, int viewType) {
         if ( viewGroup instanceof RecyclerView ) {
+            long begin = FrameMonitor.beginWork();
             int layoutId = -1;
             switch (viewType) {
                 case VIEW_TYPE_TODAY: {
@@ -116,7 +174,9 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
             }
             View view = LayoutInflater.from(viewGroup.getContext()).inflate(layoutId, viewGroup, false);
             view.setFocusable(true);
-            return new ForecastAdapterViewHolder(view);
+            ForecastAdapterViewHolder viewHolder = new ForecastAdapterViewHolder(view);
+            mFrameMonitor.endWork(FrameMonitor.WORK_BIND, begin);
+            return viewHolder;
         } else {
             throw new RuntimeException("Not bound to RecyclerView");
         }
@@ -124,28 +184,25 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
-        mCursor.moveToPosition(position);
-        int weatherId = mCursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
-        int defaultImage;
-        boolean useLongToday;
+        // Everything shown here was read and formatted by the ForecastLoader
+        long begin = FrameMonitor.beginWork();
+        ForecastModel model = mModel;
+        int defaultImage = getDefaultImageResId(position);
+        String dayLabel;
 
         switch (getItemViewType(position)) {
             case VIEW_TYPE_TODAY:
-                defaultImage = Utility.getArtResourceForWeatherCondition(weatherId);
-                useLongToday = true;
+                dayLabel = model.firstDayLongLabel;
                 break;
             default:
-                defaultImage = Utility.getIconResourceForWeatherCondition(weatherId);
-                useLongToday = false;
+                dayLabel = model.dayLabels[position];
         }
 
-        if ( Utility.usingLocalGraphics(mContext) ) {
+        String artUrl = model.artUrls[position];
+        if ( null == artUrl ) {
             forecastAdapterViewHolder.mIconView.setImageResource(defaultImage);
         } else {
-            Glide.with(mContext)
-                    .load(Utility.getArtUrlForWeatherCondition(mContext, weatherId))
-                    .error(defaultImage)
-                    .crossFade()
+            loadArt(mGlide, artUrl, defaultImage).listener(mArtListener)
                     .into(forecastAdapterViewHolder.mIconView);
         }
 
@@ -153,36 +210,46 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         // the animator can use this to re-find the original view
         ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + position);
 
-        // Read date from cursor
-        long dateInMillis = mCursor.getLong(ForecastFragment.COL_WEATHER_DATE);
-
         // Find TextView and set formatted date on it
-        forecastAdapterViewHolder.mDateView.setText(Utility.getFriendlyDayString(mContext, dateInMillis, useLongToday));
-
-        // Read weather forecast from cursor
-        String description = Utility.getStringForWeatherCondition(mContext, weatherId);
+        forecastAdapterViewHolder.mDateView.setText(dayLabel);
 
         // Find TextView and set weather forecast on it
-        forecastAdapterViewHolder.mDescriptionView.setText(description);
-        forecastAdapterViewHolder.mDescriptionView.setContentDescription(mContext.getString(R.string.a11y_forecast, description));
+        forecastAdapterViewHolder.mDescriptionView.setText(model.descriptions[position]);
+        forecastAdapterViewHolder.mDescriptionView.setContentDescription(model.descriptionA11y[position]);
 
         // For accessibility, we don't want a content description for the icon field
         // because the information is repeated in the description view and the icon
         // is not individually selectable
 
-        // Read high temperature from cursor
-        double high = mCursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
-        String highString = Utility.formatTemperature(mContext, high);
-        forecastAdapterViewHolder.mHighTempView.setText(highString);
-        forecastAdapterViewHolder.mHighTempView.setContentDescription(mContext.getString(R.string.a11y_high_temp, highString));
+        forecastAdapterViewHolder.mHighTempView.setText(model.highLabels[position]);
+        forecastAdapterViewHolder.mHighTempView.setContentDescription(model.highA11y[position]);
 
-        // Read low temperature from cursor
-        double low = mCursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
-        String lowString = Utility.formatTemperature(mContext, low);
-        forecastAdapterViewHolder.mLowTempView.setText(lowString);
-        forecastAdapterViewHolder.mLowTempView.setContentDescription(mContext.getString(R.string.a11y_low_temp, lowString));
+        forecastAdapterViewHolder.mLowTempView.setText(model.lowLabels[position]);
+        forecastAdapterViewHolder.mLowTempView.setContentDescription(model.lowA11y[position]);
 
         mICM.onBindViewHolder(forecastAdapterViewHolder, position);
+        mFrameMonitor.endWork(FrameMonitor.WORK_BIND, begin);
+    }
+
+    /**
+     * The request for a row's art.  The ForecastPreloader builds its requests here too, or
+     * Glide wouldn't match them to the rows.  DiskCacheStrategy.ALL also keeps the original
+     * image, which is what ArtPreloader downloads.
+     */
+    static DrawableRequestBuilder<String> loadArt(RequestManager glide, String artUrl,
+                                                  int errorResId) {
+        return glide.load(artUrl)
+                .diskCacheStrategy(DiskCacheStrategy.ALL)
+                .error(errorResId)
+                .crossFade();
+    }
+
+    /**
+     * @return the built in image of the row, the art for today and the icon for other days.
+     */
+    int getDefaultImageResId(int position) {
+        return getItemViewType(position) == VIEW_TYPE_TODAY
+                ? mModel.artResIds[position] : mModel.iconResIds[position];
     }
 
     public void onRestoreInstanceState(Bundle savedInstanceState) {
@@ -201,25 +268,92 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         return mICM.getSelectedItemPosition();
     }
 
+    /**
+     * For choiceMode multipleChoiceModal, to show an action mode while days are picked.
+     */
+    public void setMultiChoiceModeListener(ItemChoiceManager.MultiChoiceModeListener listener) {
+        mICM.setMultiChoiceModeListener(listener);
+    }
+
     @Override
     public int getItemViewType(int position) {
         return (position == 0 && mUseTodayLayout) ? VIEW_TYPE_TODAY : VIEW_TYPE_FUTURE_DAY;
     }
 
+    @Override
+    public long getItemId(int position) {
+        if (position < 0 || position >= mModel.count) return RecyclerView.NO_ID;
+        return mModel.ids[position];
+    }
+
     @Override
     public int getItemCount() {
-        if ( null == mCursor ) return 0;
-        return mCursor.getCount();
+        return mModel.count;
     }
 
-    public void swapCursor(Cursor newCursor) {
-        mCursor = newCursor;
-        notifyDataSetChanged();
+    /*
+        Rather than rebinding every row on every sync, the new forecast is compared day by day
+        with what is on screen, on a background thread, and only the days that were added,
+        dropped or changed are notified.
+     */
+    void swapModel(ForecastModel newModel) {
+        if (null == newModel) newModel = ForecastModel.EMPTY;
+        final ForecastModel oldModel = mModel;
+        final ForecastModel model = newModel;
+        final int generation = ++mSwapGeneration;
+
+        if (oldModel.count == 0 || model.count == 0) {
+            // Nothing to match, and the first load shouldn't wait for a thread hop.
+            applyModel(model, null);
+            return;
+        }
+
+        sDiffExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final ForecastDiff diff = ForecastDiff.calculate(oldModel, model);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation == mSwapGeneration) {
+                            applyModel(model, diff);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private void applyModel(ForecastModel newModel, ForecastDiff diff) {
+        ForecastModel oldModel = mModel;
+        mModel = newModel;
+        if (null == diff) {
+            notifyDataSetChanged();
+        } else {
+            diff.dispatchTo(this);
+            // The first row has its own layout, make sure a day moving into it rebinds.
+            if (mUseTodayLayout && !diff.isFullRefresh()
+                    && (oldModel.dates[0] != newModel.dates[0]
+                    || !newModel.firstDayLongLabel.equals(oldModel.firstDayLongLabel))) {
+                notifyItemChanged(0);
+            }
+        }
         mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
     }
 
-    public Cursor getCursor() {
-        return mCursor;
+    /**
+     * @return the forecast currently shown, never null.
+     */
+    ForecastModel getModel() {
+        return mModel;
+    }
+
+    /**
+     * @return the position of the day with this normalized date, or RecyclerView.NO_POSITION.
+     */
+    public int getPositionForDate(long date) {
+        int position = mModel.getPositionForDate(date);
+        return position < 0 ? RecyclerView.NO_POSITION : position;
     }
 
     public void selectView(RecyclerView.ViewHolder viewHolder) {
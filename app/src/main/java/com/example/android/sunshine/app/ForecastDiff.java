@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.support.v7.widget.RecyclerView;
+
+import java.util.Arrays;
+
+/**
+ * The insert, remove and change notifications that turn one {@link ForecastModel} into
+ * another.  Both lists are sorted by date and a date appears at most once per location, so
+ * days are matched by walking the two lists side by side, in linear time.  Calculating it
+ * touches no views and may run on any thread; {@link #dispatchTo} must run on the main thread.
+ */
+class ForecastDiff {
+
+    static final int OP_INSERT = 0;
+    static final int OP_REMOVE = 1;
+    static final int OP_CHANGE = 2;
+
+    // Each op takes three slots: type, position and item count
+    private int[] mOps = new int[3 * 4];
+    private int mOpCount;
+    private boolean mFullRefresh;
+
+    private ForecastDiff() {
+    }
+
+    static ForecastDiff calculate(ForecastModel oldModel, ForecastModel newModel) {
+        ForecastDiff diff = new ForecastDiff();
+        if (!oldModel.isSortedByDate() || !newModel.isSortedByDate()) {
+            // Nothing to match days by, rebind everything.
+            diff.mFullRefresh = true;
+            return diff;
+        }
+
+        // Positions are tracked in the adapter as it is while the ops are being applied:
+        // everything before position has already been turned into the new list.
+        int position = 0;
+        int i = 0;
+        int j = 0;
+        while (i < oldModel.count && j < newModel.count) {
+            long oldDate = oldModel.dates[i];
+            long newDate = newModel.dates[j];
+            if (oldDate < newDate) {
+                diff.add(OP_REMOVE, position);
+                i++;
+            } else if (newDate < oldDate) {
+                diff.add(OP_INSERT, position);
+                position++;
+                j++;
+            } else {
+                if (!oldModel.isSameContent(i, newModel, j)) {
+                    diff.add(OP_CHANGE, position);
+                }
+                position++;
+                i++;
+                j++;
+            }
+        }
+        for (; i < oldModel.count; i++) {
+            diff.add(OP_REMOVE, position);
+        }
+        for (; j < newModel.count; j++) {
+            diff.add(OP_INSERT, position);
+            position++;
+        }
+        return diff;
+    }
+
+    private void add(int type, int position) {
+        if (mOpCount > 0) {
+            // Coalesce with the previous op where the result is the same range notification.
+            int last = 3 * (mOpCount - 1);
+            int lastType = mOps[last];
+            int lastPosition = mOps[last + 1];
+            int lastCount = mOps[last + 2];
+            if (lastType == type) {
+                if ((type == OP_REMOVE && position == lastPosition)
+                        || (type != OP_REMOVE && position == lastPosition + lastCount)) {
+                    mOps[last + 2] = lastCount + 1;
+                    return;
+                }
+            }
+        }
+        if (mOps.length < 3 * (mOpCount + 1)) {
+            mOps = Arrays.copyOf(mOps, mOps.length * 2);
+        }
+        int next = 3 * mOpCount;
+        mOps[next] = type;
+        mOps[next + 1] = position;
+        mOps[next + 2] = 1;
+        mOpCount++;
+    }
+
+    boolean isFullRefresh() {
+        return mFullRefresh;
+    }
+
+    int getOpCount() {
+        return mOpCount;
+    }
+
+    int getOpType(int op) {
+        return mOps[3 * op];
+    }
+
+    int getOpPosition(int op) {
+        return mOps[3 * op + 1];
+    }
+
+    int getOpItemCount(int op) {
+        return mOps[3 * op + 2];
+    }
+
+    void dispatchTo(RecyclerView.Adapter adapter) {
+        if (mFullRefresh) {
+            adapter.notifyDataSetChanged();
+            return;
+        }
+        for (int op = 0; op < mOpCount; op++) {
+            int position = getOpPosition(op);
+            int itemCount = getOpItemCount(op);
+            switch (getOpType(op)) {
+                case OP_INSERT:
+                    adapter.notifyItemRangeInserted(position, itemCount);
+                    break;
+                case OP_REMOVE:
+                    adapter.notifyItemRangeRemoved(position, itemCount);
+                    break;
+                case OP_CHANGE:
+                    adapter.notifyItemRangeChanged(position, itemCount);
+                    break;
+            }
+        }
+    }
+}
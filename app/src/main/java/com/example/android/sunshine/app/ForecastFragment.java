@@ -17,10 +17,10 @@ package com.example.android.sunshine.app;
 
 import android.annotation.TargetApi;
 import android.app.Activity;
+import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.res.TypedArray;
-import android.database.Cursor;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
@@ -28,9 +28,9 @@ import android.preference.PreferenceManager;
 import android.support.design.widget.AppBarLayout;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.LoaderManager;
-import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
 import android.support.v4.view.ViewCompat;
+import android.support.v7.app.AlertDialog;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.util.AttributeSet;
@@ -45,16 +45,25 @@ import android.view.ViewTreeObserver;
 import android.widget.AbsListView;
 import android.widget.TextView;
 
+import com.bumptech.glide.Glide;
 import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.metrics.FrameMonitor;
+import com.example.android.sunshine.app.metrics.StartupTracer;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 
 /**
  * Encapsulates fetching the forecast and displaying it as a {@link android.support.v7.widget.RecyclerView} layout.
  */
-public class ForecastFragment extends Fragment implements LoaderManager.LoaderCallbacks<Cursor>, SharedPreferences.OnSharedPreferenceChangeListener {
+public class ForecastFragment extends Fragment implements LoaderManager.LoaderCallbacks<ForecastModel>, SharedPreferences.OnSharedPreferenceChangeListener {
     public static final String LOG_TAG = ForecastFragment.class.getSimpleName();
     private ForecastAdapter mForecastAdapter;
     private RecyclerView mRecyclerView;
+    private FrameMonitor mFrameMonitor;
+    private ForecastViewPool mViewPool;
+    // Height of a day row, measured on the first row prewarmed, and of the taller today row
+    // when the today layout is used
+    private int mRowHeight;
+    private int mTodayRowHeight;
     private boolean mUseTodayLayout, mAutoSelectView;
     private int mChoiceMode;
     private boolean mHoldForTransition;
@@ -63,9 +72,14 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     private static final String SELECTED_KEY = "selected_position";
 
     private static final int FORECAST_LOADER = 0;
+    // Rows past the edge of the list whose art is loaded ahead of the scroll
+    private static final int ART_PRELOAD_ROWS = 4;
+    // Rows a first fling needs besides those on screen: the one scrolling in, and the ones
+    // RecyclerView caches as they scroll out, before any reach the pool.
+    private static final int PREWARM_EXTRA_ROWS = 3;
     // For the forecast view we're showing only a small subset of the stored data.
     // Specify the columns we need.
-    private static final String[] FORECAST_COLUMNS = {
+    static final String[] FORECAST_COLUMNS = {
             // In this case the id needs to be fully qualified with a table name, since
             // the content provider joins the location & weather tables in the background
             // (both have an _id column)
@@ -134,6 +148,7 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     @Override
     public void onCreateOptionsMenu(Menu menu, MenuInflater inflater) {
         inflater.inflate(R.menu.forecastfragment, menu);
+        menu.findItem(R.id.action_frame_stats).setVisible(BuildConfig.DEBUG);
     }
 
     @Override
@@ -150,6 +165,10 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
             openPreferredLocationInMap();
             return true;
         }
+        if (id == R.id.action_frame_stats) {
+            showFrameStats();
+            return true;
+        }
 
         return super.onOptionsItemSelected(item);
     }
@@ -199,6 +218,20 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
 
         // specify an adapter (see also next example)
         mRecyclerView.setAdapter(mForecastAdapter);
+        if (null != mViewPool) {
+            mRecyclerView.setRecycledViewPool(mViewPool);
+        }
+        mRecyclerView.addOnScrollListener(new ForecastPreloader(mForecastAdapter,
+                Glide.with(this), ART_PRELOAD_ROWS));
+
+        // Frames are timed while the list moves, see FrameMonitor
+        mFrameMonitor = FrameMonitor.getInstance(getActivity());
+        mRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+                mFrameMonitor.setScrolling(newState != RecyclerView.SCROLL_STATE_IDLE);
+            }
+        });
 
         final View parallaxView = rootView.findViewById(R.id.parallax_bar);
         if (null != parallaxView) {
@@ -208,12 +241,14 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
                     @Override
                     public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
                         super.onScrolled(recyclerView, dx, dy);
+                        long begin = FrameMonitor.beginWork();
                         int max = parallaxView.getHeight();
                         if (dy > 0) {
                             parallaxView.setTranslationY(Math.max(-max, parallaxView.getTranslationY() - dy / 2));
                         } else {
                             parallaxView.setTranslationY(Math.min(0, parallaxView.getTranslationY() - dy / 2));
                         }
+                        mFrameMonitor.endWork(FrameMonitor.WORK_SCROLL, begin);
                     }
                 });
             }
@@ -227,11 +262,13 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
                     @TargetApi(Build.VERSION_CODES.LOLLIPOP)
                     @Override
                     public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                        long begin = FrameMonitor.beginWork();
                         if (0 == mRecyclerView.computeVerticalScrollOffset()) {
                             appbarView.setElevation(0);
                         } else {
                             appbarView.setElevation(appbarView.getTargetElevation());
                         }
+                        mFrameMonitor.endWork(FrameMonitor.WORK_SCROLL, begin);
                     }
                 });
             }
@@ -259,6 +296,10 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         if ( mHoldForTransition ) {
             getActivity().supportPostponeEnterTransition();
         }
+        if (null == getLoaderManager().getLoader(FORECAST_LOADER)) {
+            // Nothing loaded yet, show the last forecast until the loader delivers
+            showSnapshot();
+        }
         getLoaderManager().initLoader(FORECAST_LOADER, null, this);
         super.onActivityCreated(savedInstanceState);
     }
@@ -273,11 +314,10 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         // intent can is detailed in the "Common Intents" page of Android's developer site:
         // http://developer.android.com/guide/components/intents-common.html#Maps
         if (null != mForecastAdapter) {
-            Cursor c = mForecastAdapter.getCursor();
-            if (null != c) {
-                c.moveToPosition(0);
-                String posLat = c.getString(COL_COORD_LAT);
-                String posLong = c.getString(COL_COORD_LONG);
+            ForecastModel model = mForecastAdapter.getModel();
+            if (model.count > 0) {
+                String posLat = model.coordLat;
+                String posLong = model.coordLong;
                 Uri geoLocation = Uri.parse("geo:" + posLat + "," + posLong);
 
                 Intent intent = new Intent(Intent.ACTION_VIEW);
@@ -293,6 +333,23 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         }
     }
 
+    private void showFrameStats() {
+        final FrameMonitor monitor = FrameMonitor.getInstance(getActivity());
+        String stats = monitor.dump();
+        Log.i(LOG_TAG, "Frames:\n" + stats);
+        new AlertDialog.Builder(getActivity())
+                .setTitle(R.string.action_frame_stats)
+                .setMessage(stats)
+                .setPositiveButton(android.R.string.ok, null)
+                .setNeutralButton(R.string.frame_stats_reset, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        monitor.reset();
+                    }
+                })
+                .show();
+    }
+
     @Override
     public void onSaveInstanceState(Bundle outState) {
         // When tablets rotate, the currently selected list item needs to be saved.
@@ -302,7 +359,7 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
 
 
     @Override
-    public Loader<Cursor> onCreateLoader(int i, Bundle bundle) {
+    public Loader<ForecastModel> onCreateLoader(int i, Bundle bundle) {
         // This is called when a new Loader needs to be created.  This
         // fragment only uses one loader, so we don't care about checking the id.
 
@@ -316,19 +373,18 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
                 locationSetting, System.currentTimeMillis());
 
-        return new CursorLoader(getActivity(),
+        // The rows are read and formatted on the loader's thread, see ForecastModel.
+        return new ForecastLoader(getActivity(),
                 weatherForLocationUri,
                 FORECAST_COLUMNS,
-                null,
-                null,
                 sortOrder);
     }
 
     @Override
-    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-        mForecastAdapter.swapCursor(data);
+    public void onLoadFinished(Loader<ForecastModel> loader, ForecastModel data) {
+        mForecastAdapter.swapModel(data);
         updateEmptyView();
-        if ( data.getCount() == 0 ) {
+        if ( data.count == 0 ) {
             getActivity().supportStartPostponedEnterTransition();
         } else {
             mRecyclerView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
@@ -338,19 +394,19 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
                     // we see Children.
                     if (mRecyclerView.getChildCount() > 0) {
                         mRecyclerView.getViewTreeObserver().removeOnPreDrawListener(this);
+                        StartupTracer tracer = StartupTracer.getInstance();
+                        // Already reached if a snapshot was shown
+                        tracer.milestone(StartupTracer.FIRST_FORECAST);
+                        if (tracer.getMilestoneMicros(StartupTracer.FIRST_LOADED_FORECAST) < 0) {
+                            tracer.milestone(StartupTracer.FIRST_LOADED_FORECAST);
+                            if (BuildConfig.DEBUG) {
+                                Log.i(LOG_TAG, "Startup:\n" + tracer.dump());
+                            }
+                        }
                         int position = mForecastAdapter.getSelectedItemPosition();
                         if (position == RecyclerView.NO_POSITION &&
                                 -1 != mInitialSelectedDate) {
-                            Cursor data = mForecastAdapter.getCursor();
-                            int count = data.getCount();
-                            int dateColumn = data.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-                            for ( int i = 0; i < count; i++ ) {
-                                data.moveToPosition(i);
-                                if ( data.getLong(dateColumn) == mInitialSelectedDate ) {
-                                    position = i;
-                                    break;
-                                }
-                            }
+                            position = mForecastAdapter.getPositionForDate(mInitialSelectedDate);
                         }
                         if (position == RecyclerView.NO_POSITION) position = 0;
                         // If we don't need to restart the loader, and there's a desired position to restore
@@ -374,17 +430,46 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
 
 
 
+    /*
+        Reads the snapshot on the main thread, it is a few kilobytes and showing it in the
+        first frame is the whole point.  The loader's result is diffed against it like any
+        other update.
+     */
+    private void showSnapshot() {
+        StartupTracer tracer = StartupTracer.getInstance();
+        long begin = StartupTracer.beginStep();
+        ForecastModel snapshot = ForecastSnapshot.read(getActivity());
+        tracer.endStep("forecast_snapshot_read", begin);
+        if (null == snapshot || snapshot.count == 0) return;
+
+        mForecastAdapter.swapModel(snapshot);
+        mRecyclerView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                if (mRecyclerView.getChildCount() > 0) {
+                    mRecyclerView.getViewTreeObserver().removeOnPreDrawListener(this);
+                    StartupTracer.getInstance().milestone(StartupTracer.FIRST_FORECAST);
+                }
+                return true;
+            }
+        });
+    }
+
     @Override
     public void onDestroy() {
         super.onDestroy();
         if (null != mRecyclerView) {
             mRecyclerView.clearOnScrollListeners();
         }
+        if (null != mFrameMonitor) {
+            // Gone before the list went idle
+            mFrameMonitor.setScrolling(false);
+        }
     }
 
     @Override
-    public void onLoaderReset(Loader<Cursor> loader) {
-        mForecastAdapter.swapCursor(null);
+    public void onLoaderReset(Loader<ForecastModel> loader) {
+        mForecastAdapter.swapModel(null);
     }
 
     public void setUseTodayLayout(boolean useTodayLayout) {
@@ -394,6 +479,98 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         }
     }
 
+    /**
+     * Shares the activity's pool with the list, for rows inflated ahead by
+     * {@link #prewarmViewHolder()}.
+     */
+    void setRecycledViewPool(ForecastViewPool viewPool) {
+        mViewPool = viewPool;
+        if (mRecyclerView != null) {
+            mRecyclerView.setRecycledViewPool(viewPool);
+        }
+    }
+
+    /**
+     * Inflates one row into the view pool if the list is expected to need more than it has,
+     * for the rows on screen plus a first fling in either direction.  Before anything is
+     * loaded that is the first screen, so the forecast binds without inflating.  Meant to be
+     * called in idle time until it returns false.
+     *
+     * @return true if a row was inflated.
+     */
+    boolean prewarmViewHolder() {
+        if (null == mViewPool || null == mRecyclerView || 0 == mRecyclerView.getHeight()) {
+            return false;
+        }
+        int childCount = mRecyclerView.getChildCount();
+        int first;
+        int last;
+        if (childCount > 0) {
+            LinearLayoutManager layoutManager =
+                    (LinearLayoutManager) mRecyclerView.getLayoutManager();
+            first = layoutManager.findFirstVisibleItemPosition();
+            last = layoutManager.findLastVisibleItemPosition();
+            if (first == RecyclerView.NO_POSITION) return false;
+        } else {
+            // Nothing shown yet, the forecast will start at its first day
+            if (0 == mRowHeight) {
+                mRowHeight = measurePrewarmed(ForecastAdapter.VIEW_TYPE_FUTURE_DAY);
+                return mRowHeight > 0;
+            }
+            int height = mRecyclerView.getHeight();
+            int todayRows = 0;
+            if (mUseTodayLayout) {
+                // The first day takes the today row, which fits fewer days under it
+                if (0 == mTodayRowHeight) {
+                    mTodayRowHeight = measurePrewarmed(ForecastAdapter.VIEW_TYPE_TODAY);
+                    return mTodayRowHeight > 0;
+                }
+                height -= mTodayRowHeight;
+                todayRows = 1;
+            }
+            first = 0;
+            last = height <= 0 ? 0 : todayRows + height / mRowHeight;
+        }
+
+        int end = last + PREWARM_EXTRA_ROWS;
+        int itemCount = mForecastAdapter.getItemCount();
+        if (itemCount > 0) end = Math.min(end, itemCount - 1);
+        int[] needed = new int[ForecastAdapter.VIEW_TYPE_COUNT];
+        for (int position = Math.max(0, first - PREWARM_EXTRA_ROWS); position <= end; position++) {
+            needed[mForecastAdapter.getItemViewType(position)]++;
+        }
+        for (int i = 0; i < childCount; i++) {
+            needed[mRecyclerView.getChildViewHolder(mRecyclerView.getChildAt(i))
+                    .getItemViewType()]--;
+        }
+        for (int viewType = 0; viewType < needed.length; viewType++) {
+            if (needed[viewType] > mViewPool.getRecycledViewCount(viewType)) {
+                prewarm(viewType);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Prewarms a row and measures it at the list's width
+    private int measurePrewarmed(int viewType) {
+        View row = prewarm(viewType).itemView;
+        row.measure(View.MeasureSpec.makeMeasureSpec(mRecyclerView.getWidth(),
+                        View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
+        return row.getMeasuredHeight();
+    }
+
+    private RecyclerView.ViewHolder prewarm(int viewType) {
+        RecyclerView.ViewHolder holder = mForecastAdapter.createViewHolder(mRecyclerView, viewType);
+        int count = mViewPool.getRecycledViewCount(viewType);
+        if (count >= mViewPool.getMaxRecycledViews(viewType)) {
+            mViewPool.setMaxRecycledViews(viewType, count + 1);
+        }
+        mViewPool.putRecycledView(holder);
+        return holder;
+    }
+
     public void setInitialSelectedDate(long initialSelectedDate) {
         mInitialSelectedDate = initialSelectedDate;
     }
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import com.example.android.sunshine.shared.WeatherConditions;
+
+import java.util.Arrays;
+
+/**
+ * The forecast list as the {@link ForecastAdapter} shows it, one array per column, with every
+ * string the list item needs already formatted.  It is built once per load by the
+ * {@link ForecastLoader}, off the main thread, and not modified afterwards, so binding a row
+ * is only array reads and it can be handed to another thread, which is what lets
+ * {@link ForecastDiff} run off the main thread.
+ */
+class ForecastModel {
+
+    static final ForecastModel EMPTY = new ForecastModel(0, null, null, null);
+
+    final int count;
+    final long[] ids;
+    // Sorted ascending, see getPositionForDate
+    final long[] dates;
+    final int[] weatherIds;
+    final double[] highs;
+    final double[] lows;
+
+    // Display fields, formatted for the current locale, units and day
+    final String[] dayLabels;
+    final String[] descriptions;
+    final String[] descriptionA11y;
+    final String[] highLabels;
+    final String[] highA11y;
+    final String[] lowLabels;
+    final String[] lowA11y;
+    final int[] iconResIds;
+    final int[] artResIds;
+    // Null when the local graphics are used
+    final String[] artUrls;
+    // The first row's label for the "today" layout, "Today, June 24"
+    final String firstDayLongLabel;
+
+    // The location is the same for every row
+    final String coordLat;
+    final String coordLong;
+
+    ForecastModel(int count, String coordLat, String coordLong, String firstDayLongLabel) {
+        this.count = count;
+        this.coordLat = coordLat;
+        this.coordLong = coordLong;
+        this.firstDayLongLabel = firstDayLongLabel;
+        ids = new long[count];
+        dates = new long[count];
+        weatherIds = new int[count];
+        highs = new double[count];
+        lows = new double[count];
+        dayLabels = new String[count];
+        descriptions = new String[count];
+        descriptionA11y = new String[count];
+        highLabels = new String[count];
+        highA11y = new String[count];
+        lowLabels = new String[count];
+        lowA11y = new String[count];
+        iconResIds = new int[count];
+        artResIds = new int[count];
+        artUrls = new String[count];
+    }
+
+    /**
+     * Reads every row of a cursor with the {@link ForecastFragment#FORECAST_COLUMNS} projection
+     * and formats its display fields.  Does disk and resource work, call it off the main thread.
+     */
+    static ForecastModel fromCursor(Context context, Cursor cursor) {
+        if (null == cursor || !cursor.moveToFirst()) return EMPTY;
+        int count = cursor.getCount();
+        SettingsSnapshot settings = SettingsSnapshot.get(context);
+        DisplayFormatter formatter = DisplayFormatter.getInstance(context);
+        ForecastModel model = new ForecastModel(count,
+                cursor.getString(ForecastFragment.COL_COORD_LAT),
+                cursor.getString(ForecastFragment.COL_COORD_LONG),
+                formatter.getFriendlyDayString(
+                        cursor.getLong(ForecastFragment.COL_WEATHER_DATE), true));
+
+        for (int i = 0; i < count && cursor.moveToPosition(i); i++) {
+            int weatherId = cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+            long date = cursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+            double high = cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
+            double low = cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
+
+            model.ids[i] = cursor.getLong(ForecastFragment.COL_WEATHER_ID);
+            model.dates[i] = date;
+            model.weatherIds[i] = weatherId;
+            model.highs[i] = high;
+            model.lows[i] = low;
+
+            model.dayLabels[i] = formatter.getFriendlyDayString(date, false);
+            String description = Utility.getStringForWeatherCondition(context, weatherId);
+            model.descriptions[i] = description;
+            model.descriptionA11y[i] = formatter.getString(R.string.a11y_forecast, description);
+            String highString = formatter.formatTemperature(high);
+            model.highLabels[i] = highString;
+            model.highA11y[i] = formatter.getString(R.string.a11y_high_temp, highString);
+            String lowString = formatter.formatTemperature(low);
+            model.lowLabels[i] = lowString;
+            model.lowA11y[i] = formatter.getString(R.string.a11y_low_temp, lowString);
+            model.iconResIds[i] = Utility.getIconResourceForWeatherCondition(weatherId);
+            model.artResIds[i] = Utility.getArtResourceForWeatherCondition(weatherId);
+            model.artUrls[i] = settings.localGraphics
+                    ? null : WeatherConditions.getArtUrl(settings.artPackUrlFormat, weatherId);
+        }
+        return model;
+    }
+
+    /**
+     * @return the position of the row for this normalized date, or -1 if there is none.
+     */
+    int getPositionForDate(long date) {
+        int position = Arrays.binarySearch(dates, 0, count, date);
+        return position < 0 ? -1 : position;
+    }
+
+    /**
+     * @return true if the rows at these positions would bind to the same views.
+     */
+    boolean isSameContent(int position, ForecastModel other, int otherPosition) {
+        return ids[position] == other.ids[otherPosition]
+                && weatherIds[position] == other.weatherIds[otherPosition]
+                && equals(dayLabels[position], other.dayLabels[otherPosition])
+                && equals(highLabels[position], other.highLabels[otherPosition])
+                && equals(lowLabels[position], other.lowLabels[otherPosition])
+                && equals(artUrls[position], other.artUrls[otherPosition]);
+    }
+
+    boolean isSortedByDate() {
+        for (int i = 1; i < count; i++) {
+            if (dates[i - 1] >= dates[i]) return false;
+        }
+        return true;
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.widget.ImageView;
+
+import com.bumptech.glide.DrawableRequestBuilder;
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestManager;
+
+import java.util.HashSet;
+
+/**
+ * Loads the art of the next few rows past the edge of the forecast list, on the side it is
+ * scrolling towards, into Glide's memory cache, so the rows show it as soon as they bind.
+ *
+ * Glide only finds a preloaded image when it is asked for the same size and transformation,
+ * so both are taken from rows already on screen, and the request itself comes from
+ * {@link ForecastAdapter#loadArt}.
+ */
+class ForecastPreloader extends RecyclerView.OnScrollListener {
+
+    private final ForecastAdapter mAdapter;
+    private final RequestManager mGlide;
+    private final int mMaxPreload;
+
+    // Reused round robin, so at most mMaxPreload preloaded images are held at a time.
+    // Clearing a target hands its image over to the memory cache.
+    private final PreloadTarget[] mTargets;
+    private int mNextTarget;
+
+    // Icon size and scale type of each view type, 0 until a row of that type is laid out
+    private final int[] mIconWidths = new int[ForecastAdapter.VIEW_TYPE_COUNT];
+    private final int[] mIconHeights = new int[ForecastAdapter.VIEW_TYPE_COUNT];
+    private final ImageView.ScaleType[] mIconScaleTypes =
+            new ImageView.ScaleType[ForecastAdapter.VIEW_TYPE_COUNT];
+
+    // What has been preloaded for mModel, by view type and url
+    private ForecastModel mModel;
+    private final HashSet<String> mPreloaded = new HashSet<String>();
+
+    ForecastPreloader(ForecastAdapter adapter, RequestManager glide, int maxPreload) {
+        mAdapter = adapter;
+        mGlide = glide;
+        mMaxPreload = maxPreload;
+        mTargets = new PreloadTarget[maxPreload];
+        for (int i = 0; i < maxPreload; i++) {
+            mTargets[i] = new PreloadTarget();
+        }
+    }
+
+    // Also called after every layout with dy == 0, which preloads below the first screen.
+    @Override
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+        LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+        int first = layoutManager.findFirstVisibleItemPosition();
+        int last = layoutManager.findLastVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION) return;
+
+        ForecastModel model = mAdapter.getModel();
+        if (model != mModel) {
+            mModel = model;
+            mPreloaded.clear();
+        }
+        measureIcons(recyclerView, first, last);
+
+        if (dy >= 0) {
+            int end = Math.min(last + mMaxPreload, model.count - 1);
+            for (int position = last + 1; position <= end; position++) {
+                preload(model, position);
+            }
+        } else {
+            int end = Math.max(first - mMaxPreload, 0);
+            for (int position = first - 1; position >= end; position--) {
+                preload(model, position);
+            }
+        }
+    }
+
+    private void measureIcons(RecyclerView recyclerView, int first, int last) {
+        for (int position = first; position <= last; position++) {
+            RecyclerView.ViewHolder holder =
+                    recyclerView.findViewHolderForAdapterPosition(position);
+            if (!(holder instanceof ForecastAdapter.ForecastAdapterViewHolder)) continue;
+            ImageView icon = ((ForecastAdapter.ForecastAdapterViewHolder) holder).mIconView;
+            int viewType = holder.getItemViewType();
+            if (icon.getWidth() > 0 && icon.getHeight() > 0) {
+                mIconWidths[viewType] = icon.getWidth();
+                mIconHeights[viewType] = icon.getHeight();
+                mIconScaleTypes[viewType] = icon.getScaleType();
+            }
+        }
+    }
+
+    private void preload(ForecastModel model, int position) {
+        String artUrl = model.artUrls[position];
+        if (null == artUrl) return;
+        int viewType = mAdapter.getItemViewType(position);
+        // Nothing to match until a row of this type has been on screen
+        if (0 == mIconWidths[viewType]) return;
+        if (!mPreloaded.add(viewType + artUrl)) return;
+
+        DrawableRequestBuilder<String> request = ForecastAdapter.loadArt(mGlide, artUrl,
+                mAdapter.getDefaultImageResId(position));
+        PreloadTarget.matchScaleType(request, mIconScaleTypes[viewType]);
+        request.into(nextTarget(mIconWidths[viewType], mIconHeights[viewType]));
+    }
+
+    private PreloadTarget nextTarget(int width, int height) {
+        PreloadTarget target = mTargets[mNextTarget];
+        mNextTarget = (mNextTarget + 1) % mTargets.length;
+        Glide.clear(target);
+        target.mWidth = width;
+        target.mHeight = height;
+        return target;
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.example.android.sunshine.shared.WeatherConditions;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.Locale;
+
+/**
+ * The last forecast list, display strings included, saved to a small binary file so that a
+ * cold start can show it in its first frame, before the database is even opened.  The
+ * ForecastLoader's result then replaces it through the usual diff.  The loader is also the
+ * only writer: it saves every list it loads, including the reload that follows a sync.
+ *
+ * The strings depend on the settings, the locale and on which day today is, so a snapshot
+ * written under different ones is ignored rather than shown wrong.  Resource ids can change
+ * between builds and are worked out again from the condition ids on read.
+ */
+class ForecastSnapshot {
+
+    private static final String LOG_TAG = ForecastSnapshot.class.getSimpleName();
+
+    private static final String FILE_NAME = "forecast_snapshot";
+    // "SUNS"
+    private static final int MAGIC = 0x53554e53;
+    private static final int FORMAT_VERSION = 1;
+
+    private ForecastSnapshot() {
+    }
+
+    /**
+     * Saves the model, replacing the previous snapshot in one rename.
+     */
+    static synchronized void write(Context context, ForecastModel model) {
+        File file = getFile(context);
+        File tmpFile = new File(file.getPath() + ".tmp");
+        SettingsSnapshot settings = SettingsSnapshot.get(context);
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(BuildConfig.VERSION_CODE);
+            writeKey(out, settings);
+
+            out.writeInt(model.count);
+            writeString(out, model.coordLat);
+            writeString(out, model.coordLong);
+            writeString(out, model.firstDayLongLabel);
+            for (int i = 0; i < model.count; i++) {
+                out.writeLong(model.ids[i]);
+                out.writeLong(model.dates[i]);
+                out.writeInt(model.weatherIds[i]);
+                out.writeDouble(model.highs[i]);
+                out.writeDouble(model.lows[i]);
+                out.writeUTF(model.dayLabels[i]);
+                out.writeUTF(model.descriptions[i]);
+                out.writeUTF(model.descriptionA11y[i]);
+                out.writeUTF(model.highLabels[i]);
+                out.writeUTF(model.highA11y[i]);
+                out.writeUTF(model.lowLabels[i]);
+                out.writeUTF(model.lowA11y[i]);
+            }
+            out.close();
+            out = null;
+            if (!tmpFile.renameTo(file)) {
+                Log.w(LOG_TAG, "Couldn't replace " + file);
+            }
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Couldn't write " + tmpFile, e);
+        } finally {
+            if (null != out) {
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the saved forecast list, or null if there is none or it no longer matches the
+     * settings, locale or day.
+     */
+    static ForecastModel read(Context context) {
+        SettingsSnapshot settings = SettingsSnapshot.get(context);
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(getFile(context))));
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION
+                    || in.readInt() != BuildConfig.VERSION_CODE
+                    || !readKeyMatches(in, settings)) {
+                return null;
+            }
+
+            int count = in.readInt();
+            // Arguments are evaluated left to right, in the order they were written
+            ForecastModel model = new ForecastModel(count, readString(in), readString(in),
+                    readString(in));
+            for (int i = 0; i < count; i++) {
+                int weatherId;
+                model.ids[i] = in.readLong();
+                model.dates[i] = in.readLong();
+                model.weatherIds[i] = weatherId = in.readInt();
+                model.highs[i] = in.readDouble();
+                model.lows[i] = in.readDouble();
+                model.dayLabels[i] = in.readUTF();
+                model.descriptions[i] = in.readUTF();
+                model.descriptionA11y[i] = in.readUTF();
+                model.highLabels[i] = in.readUTF();
+                model.highA11y[i] = in.readUTF();
+                model.lowLabels[i] = in.readUTF();
+                model.lowA11y[i] = in.readUTF();
+                model.iconResIds[i] = Utility.getIconResourceForWeatherCondition(weatherId);
+                model.artResIds[i] = Utility.getArtResourceForWeatherCondition(weatherId);
+                model.artUrls[i] = settings.localGraphics
+                        ? null : WeatherConditions.getArtUrl(settings.artPackUrlFormat, weatherId);
+            }
+            return count == 0 ? ForecastModel.EMPTY : model;
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Couldn't read the forecast snapshot", e);
+            return null;
+        } finally {
+            if (null != in) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private static File getFile(Context context) {
+        return new File(context.getCacheDir(), FILE_NAME);
+    }
+
+    // Everything the display strings were built with
+    private static void writeKey(DataOutputStream out, SettingsSnapshot settings)
+            throws IOException {
+        out.writeUTF(settings.location);
+        out.writeBoolean(settings.metric);
+        out.writeUTF(Locale.getDefault().toString());
+        out.writeLong(getStartOfToday());
+    }
+
+    private static boolean readKeyMatches(DataInputStream in, SettingsSnapshot settings)
+            throws IOException {
+        return in.readUTF().equals(settings.location)
+                && in.readBoolean() == settings.metric
+                && in.readUTF().equals(Locale.getDefault().toString())
+                && in.readLong() == getStartOfToday();
+    }
+
+    private static long getStartOfToday() {
+        Calendar today = Calendar.getInstance();
+        today.set(Calendar.HOUR_OF_DAY, 0);
+        today.set(Calendar.MINUTE, 0);
+        today.set(Calendar.SECOND, 0);
+        today.set(Calendar.MILLISECOND, 0);
+        return today.getTimeInMillis();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(null != value);
+        if (null != value) out.writeUTF(value);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.support.v7.widget.RecyclerView;
+import android.util.SparseIntArray;
+
+/**
+ * The view pool of MainActivity's forecast list.  It counts the holders it has of each view
+ * type, which RecyclerView.RecycledViewPool keeps to itself, so that ForecastFragment can
+ * inflate rows into it ahead of time up to what the list is expected to need.
+ *
+ * It lives as long as the activity.  Rows are inflated for one configuration, so they must
+ * not outlive it.
+ */
+class ForecastViewPool extends RecyclerView.RecycledViewPool {
+
+    // RecycledViewPool's own limit per view type
+    static final int DEFAULT_MAX_SCRAP = 5;
+
+    private final SparseIntArray mCounts = new SparseIntArray();
+    private final SparseIntArray mMaxScrap = new SparseIntArray();
+
+    @Override
+    public RecyclerView.ViewHolder getRecycledView(int viewType) {
+        RecyclerView.ViewHolder holder = super.getRecycledView(viewType);
+        if (null != holder) {
+            mCounts.put(viewType, mCounts.get(viewType) - 1);
+        }
+        return holder;
+    }
+
+    @Override
+    public void putRecycledView(RecyclerView.ViewHolder scrap) {
+        int viewType = scrap.getItemViewType();
+        // Dropped when the type is full
+        if (mCounts.get(viewType) < getMaxRecycledViews(viewType)) {
+            mCounts.put(viewType, mCounts.get(viewType) + 1);
+        }
+        super.putRecycledView(scrap);
+    }
+
+    @Override
+    public void setMaxRecycledViews(int viewType, int max) {
+        mMaxScrap.put(viewType, max);
+        if (mCounts.get(viewType) > max) {
+            mCounts.put(viewType, max);
+        }
+        super.setMaxRecycledViews(viewType, max);
+    }
+
+    @Override
+    public void clear() {
+        mCounts.clear();
+        super.clear();
+    }
+
+    int getRecycledViewCount(int viewType) {
+        return mCounts.get(viewType);
+    }
+
+    int getMaxRecycledViews(int viewType) {
+        return mMaxScrap.get(viewType, DEFAULT_MAX_SCRAP);
+    }
+}
@@ -28,21 +28,59 @@ import android.widget.AbsListView;
 import android.widget.Checkable;
 
 /**
- * The ItemChoiceManager class keeps track of which positions have been selected.  Note that it
- * doesn't take advantage of new adapter features to track changes in the underlying data.
+ * The ItemChoiceManager class keeps track of which items have been selected.  With stable ids
+ * the selection is kept by id and follows its items as the adapter's data changes: after each
+ * change an index from id to position is rebuilt once, and each checked id is looked up in it,
+ * however far its item moved.
  */
 public class ItemChoiceManager {
     private final String LOG_TAG = MainActivity.class.getSimpleName();
     private final String SELECTED_ITEMS_KEY = "SIK";
     private int mChoiceMode;
 
+    /**
+     * Told when a CHOICE_MODE_MULTIPLE_MODAL selection starts, changes and ends, so that the
+     * host can show a contextual action mode for it.
+     */
+    public interface MultiChoiceModeListener {
+        void onMultiChoiceStarted();
+
+        void onItemCheckedStateChanged(int position, long id, boolean checked);
+
+        void onMultiChoiceFinished();
+    }
+
     private RecyclerView.Adapter mAdapter;
+    private MultiChoiceModeListener mMultiChoiceModeListener;
+    // True while a CHOICE_MODE_MULTIPLE_MODAL selection is going on
+    private boolean mInModalChoice;
+
+    // Any change can move ids around, the positions are worked out again before they are next
+    // needed.  Several notifications for one change, as in a diff, only cost one rebuild.
     private RecyclerView.AdapterDataObserver mAdapterDataObserver = new RecyclerView.AdapterDataObserver() {
         @Override
         public void onChanged() {
-            super.onChanged();
-            if (mAdapter != null && mAdapter.hasStableIds())
-                confirmCheckedPositionsById(mAdapter.getItemCount());
+            mPositionsStale = true;
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount) {
+            mPositionsStale = true;
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            mPositionsStale = true;
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            mPositionsStale = true;
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            mPositionsStale = true;
         }
     };
 
@@ -51,17 +89,14 @@ public class ItemChoiceManager {
 
     ;
 
+    /**
+     * Registers an observer on the adapter, so stable ids have to be set up before this.
+     */
     public ItemChoiceManager(RecyclerView.Adapter adapter) {
         mAdapter = adapter;
+        mAdapter.registerAdapterDataObserver(mAdapterDataObserver);
     }
 
-    /**
-     * How many positions in either direction we will search to try to
-     * find a checked item with a stable ID that moved position across
-     * a data set change. If the item isn't found it will be unselected.
-     */
-    private static final int CHECK_POSITION_SEARCH_DISTANCE = 20;
-
     /**
      * Running state of which positions are currently checked
      */
@@ -74,11 +109,18 @@ public class ItemChoiceManager {
      */
     LongSparseArray<Integer> mCheckedIdStates = new LongSparseArray<Integer>();
 
+    /**
+     * Position of every id in the adapter, as of the last rebuild.
+     */
+    private final LongSparseArray<Integer> mPositionsById = new LongSparseArray<Integer>();
+
+    // Set when the adapter's data changed since mPositionsById and mCheckStates were built
+    private boolean mPositionsStale;
+
     public void onClick(RecyclerView.ViewHolder vh) {
         if (mChoiceMode == AbsListView.CHOICE_MODE_NONE)
             return;
 
-        int checkedItemCount = mCheckStates.size();
         int position = vh.getAdapterPosition();
 
         if (position == RecyclerView.NO_POSITION) {
@@ -90,44 +132,57 @@ public class ItemChoiceManager {
             case AbsListView.CHOICE_MODE_NONE:
                 break;
             case AbsListView.CHOICE_MODE_SINGLE: {
-                boolean checked = mCheckStates.get(position, false);
-                if (!checked) {
-                    for (int i = 0; i < checkedItemCount; i++) {
-                        mAdapter.notifyItemChanged(mCheckStates.keyAt(i));
-                    }
-                    mCheckStates.clear();
-                    mCheckStates.put(position, true);
-                    mCheckedIdStates.clear();
-                    mCheckedIdStates.put(mAdapter.getItemId(position), position);
+                if (!isItemChecked(position)) {
+                    setItemChecked(position, true);
                 }
-                // We directly call onBindViewHolder here because notifying that an item has
-                // changed on an item that has the focus causes it to lose focus, which makes
-                // keyboard navigation a bit annoying
-                mAdapter.onBindViewHolder(vh, position);
                 break;
             }
             case AbsListView.CHOICE_MODE_MULTIPLE: {
-                boolean checked = mCheckStates.get(position, false);
-                mCheckStates.put(position, !checked);
-                // We directly call onBindViewHolder here because notifying that an item has
-                // changed on an item that has the focus causes it to lose focus, which makes
-                // keyboard navigation a bit annoying
-                mAdapter.onBindViewHolder(vh, position);
+                setItemChecked(position, !isItemChecked(position));
                 break;
             }
             case AbsListView.CHOICE_MODE_MULTIPLE_MODAL: {
-                throw new RuntimeException("Multiple Modal not implemented in ItemChoiceManager.");
+                // Until a long click starts the selection, a click is only a click
+                if (mInModalChoice) {
+                    setItemChecked(position, !isItemChecked(position));
+                }
+                break;
             }
         }
+        // We directly call onBindViewHolder here because notifying that an item has
+        // changed on an item that has the focus causes it to lose focus, which makes
+        // keyboard navigation a bit annoying
+        mAdapter.onBindViewHolder(vh, position);
+    }
+
+    /**
+     * In CHOICE_MODE_MULTIPLE_MODAL, starts the selection with the long clicked item.
+     *
+     * @return true if the long click was used.
+     */
+    public boolean onLongClick(RecyclerView.ViewHolder vh) {
+        if (mChoiceMode != AbsListView.CHOICE_MODE_MULTIPLE_MODAL || mInModalChoice)
+            return false;
+
+        int position = vh.getAdapterPosition();
+        if (position == RecyclerView.NO_POSITION) return false;
+
+        setItemChecked(position, true);
+        mAdapter.onBindViewHolder(vh, position);
+        return true;
     }
 
     /**
      * Defines the choice behavior for the RecyclerView. By default, RecyclerViewChoiceMode does
      * not have any choice behavior (AbsListView.CHOICE_MODE_NONE). By setting the choiceMode to
      * AbsListView.CHOICE_MODE_SINGLE, the RecyclerView allows up to one item to  be in a
-     * chosen state.
+     * chosen state.  AbsListView.CHOICE_MODE_MULTIPLE lets any number of items be chosen, and
+     * AbsListView.CHOICE_MODE_MULTIPLE_MODAL does the same once a long click has started the
+     * selection, see {@link #setMultiChoiceModeListener}.
      *
-     * @param choiceMode One of AbsListView.CHOICE_MODE_NONE, AbsListView.CHOICE_MODE_SINGLE
+     * @param choiceMode One of AbsListView.CHOICE_MODE_NONE, AbsListView.CHOICE_MODE_SINGLE,
+     *                   AbsListView.CHOICE_MODE_MULTIPLE or
+     *                   AbsListView.CHOICE_MODE_MULTIPLE_MODAL
      */
     public void setChoiceMode(int choiceMode) {
         if (mChoiceMode != choiceMode) {
@@ -136,56 +191,156 @@ public class ItemChoiceManager {
         }
     }
 
+    public int getChoiceMode() {
+        return mChoiceMode;
+    }
+
+    public void setMultiChoiceModeListener(MultiChoiceModeListener listener) {
+        mMultiChoiceModeListener = listener;
+    }
+
+    /**
+     * @return whether a CHOICE_MODE_MULTIPLE_MODAL selection is going on, in which case clicks
+     * check and uncheck items.
+     */
+    public boolean isInModalChoice() {
+        return mInModalChoice;
+    }
+
     /**
      * Returns the checked state of the specified position. The result is only
-     * valid if the choice mode has been set to AbsListView.CHOICE_MODE_SINGLE,
-     * but the code does not check this.
+     * valid if the choice mode has been set to something other than
+     * AbsListView.CHOICE_MODE_NONE, but the code does not check this.
      *
      * @param position The item whose checked state to return
      * @return The item's checked state
      * @see #setChoiceMode(int)
      */
     public boolean isItemChecked(int position) {
+        confirmCheckedPositionsById();
         return mCheckStates.get(position);
     }
 
+    /**
+     * Checks or unchecks an item, following the choice mode: in CHOICE_MODE_SINGLE checking an
+     * item unchecks the others.  Rebinds the items that changed, except the one passed in.
+     */
+    public void setItemChecked(int position, boolean checked) {
+        if (mChoiceMode == AbsListView.CHOICE_MODE_NONE) return;
+        confirmCheckedPositionsById();
+        if (checked == mCheckStates.get(position)) return;
+
+        boolean stableIds = mAdapter.hasStableIds();
+        long id = stableIds ? mAdapter.getItemId(position) : RecyclerView.NO_ID;
+
+        if (mChoiceMode == AbsListView.CHOICE_MODE_SINGLE) {
+            for (int i = 0; i < mCheckStates.size(); i++) {
+                mAdapter.notifyItemChanged(mCheckStates.keyAt(i));
+            }
+            mCheckStates.clear();
+            mCheckedIdStates.clear();
+        }
+        if (checked) {
+            mCheckStates.put(position, true);
+            if (stableIds) mCheckedIdStates.put(id, position);
+        } else {
+            mCheckStates.delete(position);
+            if (stableIds) mCheckedIdStates.delete(id);
+        }
+        // Rebinding the old selection above doesn't change any ids
+        mPositionsStale = false;
+
+        if (mChoiceMode == AbsListView.CHOICE_MODE_MULTIPLE_MODAL) {
+            if (checked && !mInModalChoice) {
+                mInModalChoice = true;
+                if (null != mMultiChoiceModeListener) mMultiChoiceModeListener.onMultiChoiceStarted();
+            }
+            if (null != mMultiChoiceModeListener) {
+                mMultiChoiceModeListener.onItemCheckedStateChanged(position, id, checked);
+            }
+            if (mCheckStates.size() == 0) {
+                finishModalChoice();
+            }
+        }
+    }
+
+    /**
+     * @return how many items are checked.
+     */
+    public int getCheckedItemCount() {
+        confirmCheckedPositionsById();
+        return mCheckStates.size();
+    }
+
+    /**
+     * @return the ids of the checked items, only valid if the adapter has stable ids.
+     */
+    public long[] getCheckedItemIds() {
+        confirmCheckedPositionsById();
+        long[] ids = new long[mCheckedIdStates.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = mCheckedIdStates.keyAt(i);
+        }
+        return ids;
+    }
+
+    /**
+     * Ends a CHOICE_MODE_MULTIPLE_MODAL selection and unchecks everything, for instance when the
+     * host's action mode is closed.
+     */
+    public void finishModalChoice() {
+        if (!mInModalChoice) return;
+        mInModalChoice = false;
+        for (int i = 0; i < mCheckStates.size(); i++) {
+            mAdapter.notifyItemChanged(mCheckStates.keyAt(i));
+        }
+        clearSelections();
+        if (null != mMultiChoiceModeListener) mMultiChoiceModeListener.onMultiChoiceFinished();
+    }
+
     void clearSelections() {
         mCheckStates.clear();
         mCheckedIdStates.clear();
+        mPositionsStale = false;
     }
 
-    void confirmCheckedPositionsById(int oldItemCount) {
-        // Clear out the positional check states, we'll rebuild it below from IDs.
-        mCheckStates.clear();
+    /**
+     * Moves the checked positions to where their ids are now, once per data change, and
+     * unchecks the ids that are gone.
+     */
+    void confirmCheckedPositionsById() {
+        if (!mPositionsStale) return;
+        // Without stable ids the checked positions just stay where they are
+        if (!mAdapter.hasStableIds()) {
+            mPositionsStale = false;
+            return;
+        }
+        // No data yet, as after a restore, don't drop the restored selection
+        final int itemCount = mAdapter.getItemCount();
+        if (itemCount == 0) return;
+        mPositionsStale = false;
 
-        for (int checkedIndex = 0; checkedIndex < mCheckedIdStates.size(); checkedIndex++) {
-            final long id = mCheckedIdStates.keyAt(checkedIndex);
-            final int lastPos = mCheckedIdStates.valueAt(checkedIndex);
-
-            final long lastPosId = mAdapter.getItemId(lastPos);
-            if (id != lastPosId) {
-                // Look around to see if the ID is nearby. If not, uncheck it.
-                final int start = Math.max(0, lastPos - CHECK_POSITION_SEARCH_DISTANCE);
-                final int end = Math.min(lastPos + CHECK_POSITION_SEARCH_DISTANCE, oldItemCount);
-                boolean found = false;
-                for (int searchPos = start; searchPos < end; searchPos++) {
-                    final long searchId = mAdapter.getItemId(searchPos);
-                    if (id == searchId) {
-                        found = true;
-                        mCheckStates.put(searchPos, true);
-                        mCheckedIdStates.setValueAt(checkedIndex, searchPos);
-                        break;
-                    }
-                }
+        mPositionsById.clear();
+        for (int position = 0; position < itemCount; position++) {
+            mPositionsById.put(mAdapter.getItemId(position), position);
+        }
 
-                if (!found) {
-                    mCheckedIdStates.delete(id);
-                    checkedIndex--;
-                }
+        // Clear out the positional check states, we'll rebuild it below from IDs.
+        mCheckStates.clear();
+        for (int checkedIndex = mCheckedIdStates.size() - 1; checkedIndex >= 0; checkedIndex--) {
+            Integer position = mPositionsById.get(mCheckedIdStates.keyAt(checkedIndex));
+            if (null == position) {
+                mCheckedIdStates.removeAt(checkedIndex);
             } else {
-                mCheckStates.put(lastPos, true);
+                mCheckedIdStates.setValueAt(checkedIndex, position);
+                mCheckStates.put(position, true);
             }
         }
+
+        if (mInModalChoice && mCheckStates.size() == 0) {
+            mInModalChoice = false;
+            if (null != mMultiChoiceModeListener) mMultiChoiceModeListener.onMultiChoiceFinished();
+        }
     }
 
     public void onBindViewHolder(RecyclerView.ViewHolder vh, int position) {
@@ -210,6 +365,11 @@ public class ItemChoiceManager {
                 final int value = inParcel.readInt();
                 mCheckedIdStates.put(key, value);
             }
+            inParcel.recycle();
+            // The positions are checked against the ids once the data is back
+            mPositionsStale = true;
+            mInModalChoice = mChoiceMode == AbsListView.CHOICE_MODE_MULTIPLE_MODAL
+                    && mCheckStates.size() > 0;
         }
     }
 
@@ -228,6 +388,7 @@ public class ItemChoiceManager {
     }
 
     public int getSelectedItemPosition() {
+        confirmCheckedPositionsById();
         if ( mCheckStates.size() == 0 ) {
             return RecyclerView.NO_POSITION;
         } else {
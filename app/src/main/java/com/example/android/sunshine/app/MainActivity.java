@@ -15,6 +15,7 @@
  */
 package com.example.android.sunshine.app;
 
+import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.net.Uri;
@@ -31,9 +32,11 @@ import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
+import android.view.ViewTreeObserver;
 
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.gcm.RegistrationIntentService;
+import com.example.android.sunshine.app.metrics.StartupTracer;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.GoogleApiAvailability;
@@ -49,13 +52,24 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
     private final static int PLAY_SERVICES_RESOLUTION_REQUEST = 9000;
     public static final String SENT_TOKEN_TO_SERVER = "sentTokenToServer";
 
+    // The client of the activity that built one last, for the sync adapter; null until then
     public static GoogleApiClient mGoogleApiClient;
+    // This activity's client, built once the first frame is up, null until then
+    private GoogleApiClient mApiClient;
     private boolean mTwoPane;
+    private boolean mResumed;
     private String mLocation;
+    private StartupScheduler mStartup;
+    // Rows of the forecast list, kept by the activity so they can be inflated ahead of time
+    private final ForecastViewPool mForecastViewPool = new ForecastViewPool();
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        StartupTracer tracer = StartupTracer.getInstance();
+        tracer.start();
+        long begin = StartupTracer.beginStep();
         super.onCreate(savedInstanceState);
+        mStartup = new StartupScheduler(tracer);
         mLocation = Utility.getPreferredLocation(this);
         Uri contentUri = getIntent() != null ? getIntent().getData() : null;
 
@@ -88,22 +102,70 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
             getSupportActionBar().setElevation(0f);
         }
 
-        ForecastFragment forecastFragment =  ((ForecastFragment)getSupportFragmentManager()
+        final ForecastFragment forecastFragment =  ((ForecastFragment)getSupportFragmentManager()
                 .findFragmentById(R.id.fragment_forecast));
         forecastFragment.setUseTodayLayout(!mTwoPane);
+        forecastFragment.setRecycledViewPool(mForecastViewPool);
         if (contentUri != null) {
             forecastFragment.setInitialSelectedDate(
                     WeatherContract.WeatherEntry.getDateFromUri(contentUri));
         }
 
-        mGoogleApiClient = new GoogleApiClient.Builder(this)
-                .addApi(Wearable.API)
-                .addConnectionCallbacks(this)
-                .addOnConnectionFailedListener(this)
-                .build();
+        tracer.endStep("main_activity_create", begin);
 
-        SunshineSyncAdapter.initializeSyncAdapter(this);
+        // Nothing below is needed to show the forecast, so it waits for the first frame or
+        // runs off the main thread.
+        final Context appContext = getApplicationContext();
+        mStartup.runInBackground("sync_adapter_init", new Runnable() {
+            @Override
+            public void run() {
+                // AccountManager IPC, and on the first run the initial sync request
+                SunshineSyncAdapter.initializeSyncAdapter(appContext);
+            }
+        });
+        mStartup.runWhenIdle("google_api_client", new Runnable() {
+            @Override
+            public void run() {
+                mApiClient = new GoogleApiClient.Builder(MainActivity.this)
+                        .addApi(Wearable.API)
+                        .addConnectionCallbacks(MainActivity.this)
+                        .addOnConnectionFailedListener(MainActivity.this)
+                        .build();
+                mGoogleApiClient = mApiClient;
+                if (mResumed) {
+                    Log.d(LOG_TAG, "GoogleApi is trying to connect.");
+                    mApiClient.connect();
+                }
+            }
+        });
+        mStartup.runWhenIdle("gcm_registration", new Runnable() {
+            @Override
+            public void run() {
+                registerGcm();
+            }
+        });
+        // One row per idle slot, so that a scroll started meanwhile isn't held up
+        mStartup.runWhenIdle("forecast_row_prewarm", new Runnable() {
+            @Override
+            public void run() {
+                if (forecastFragment.prewarmViewHolder()) {
+                    mStartup.runWhenIdle("forecast_row_prewarm", this);
+                }
+            }
+        });
+        final View decorView = getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnPreDrawListener(
+                new ViewTreeObserver.OnPreDrawListener() {
+                    @Override
+                    public boolean onPreDraw() {
+                        decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                        mStartup.onFirstFrame();
+                        return true;
+                    }
+                });
+    }
 
+    private void registerGcm() {
         // If Google Play Services is up to date, we'll want to register GCM. If it is not, we'll
         // skip the registration and this device will not receive any downstream messages from
         // our fake server. Because weather alerts are not a core feature of the app, this should
@@ -122,6 +184,20 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
         }
     }
 
+    @Override
+    protected void onDestroy() {
+        mStartup.cancel();
+        // The client holds on to this activity for its callbacks
+        if (null != mApiClient) {
+            mApiClient.disconnect();
+            if (mGoogleApiClient == mApiClient) {
+                mGoogleApiClient = null;
+            }
+            mApiClient = null;
+        }
+        super.onDestroy();
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         // Inflate the menu; this adds items to the action bar if it is present.
@@ -161,8 +237,12 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
             }
             mLocation = location;
         }
-        Log.d(LOG_TAG, "GoogleApi is trying to connect.");
-        mGoogleApiClient.connect();
+        mResumed = true;
+        // Until the client has been built, it's connected once it is
+        if (null != mApiClient) {
+            Log.d(LOG_TAG, "GoogleApi is trying to connect.");
+            mApiClient.connect();
+        }
     }
 
     @Override
@@ -184,7 +264,10 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
     @Override
     protected void onPause() {
         super.onPause();
-        mGoogleApiClient.disconnect();
+        mResumed = false;
+        if (null != mApiClient) {
+            mApiClient.disconnect();
+        }
     }
 
     @Override
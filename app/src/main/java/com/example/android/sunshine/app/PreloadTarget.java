@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.widget.ImageView;
+
+import com.bumptech.glide.DrawableRequestBuilder;
+import com.bumptech.glide.load.resource.drawable.GlideDrawable;
+import com.bumptech.glide.request.animation.GlideAnimation;
+import com.bumptech.glide.request.target.BaseTarget;
+import com.bumptech.glide.request.target.SizeReadyCallback;
+
+/**
+ * A Glide target that only loads its image into the memory cache, at a given size.  Once the
+ * target is cleared with Glide.clear the image moves to the memory cache, so preloaders keep
+ * a few of these and reuse them round robin.
+ */
+final class PreloadTarget extends BaseTarget<GlideDrawable> {
+    int mWidth;
+    int mHeight;
+
+    /**
+     * Applies the transformation Glide picks for an ImageView with this scale type, so that a
+     * preload matches the view's own request.
+     */
+    static void matchScaleType(DrawableRequestBuilder<?> request, ImageView.ScaleType scaleType) {
+        switch (scaleType) {
+            case CENTER_CROP:
+                request.centerCrop();
+                break;
+            case FIT_CENTER:
+            case FIT_START:
+            case FIT_END:
+                request.fitCenter();
+                break;
+        }
+    }
+
+    @Override
+    public void onResourceReady(GlideDrawable resource,
+                                GlideAnimation<? super GlideDrawable> glideAnimation) {
+        // Only wanted in the cache
+    }
+
+    @Override
+    public void getSize(SizeReadyCallback cb) {
+        cb.onSizeReady(mWidth, mHeight);
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+/**
+ * The user's settings as plain fields.  Binding a row, building a widget row or running a sync
+ * step reads these instead of doing string-keyed SharedPreferences lookups.
+ *
+ * A snapshot never changes.  A single OnSharedPreferenceChangeListener replaces the current
+ * snapshot whenever one of the settings below changes, and gives the new one a higher
+ * {@link #version}, so caches of values derived from the settings can key on that.
+ * Safe to use from any thread.
+ *
+ * SharedPreferences calls its listeners in no particular order, so a listener that reads the
+ * settings after a change has to call {@link #refresh} first, or it may read the old values.
+ */
+public final class SettingsSnapshot {
+
+    /**
+     * Increases every time a setting in the snapshot changes.
+     */
+    public final int version;
+    public final String location;
+    public final boolean metric;
+    // The art pack's url, with a %s for the art name
+    public final String artPackUrlFormat;
+    public final boolean localGraphics;
+    public final boolean notificationsEnabled;
+
+    private static volatile SettingsSnapshot sCurrent;
+    // Held here, the preferences only keep a weak reference to their listeners.
+    private static SharedPreferences.OnSharedPreferenceChangeListener sListener;
+
+    private SettingsSnapshot(Context context, SharedPreferences prefs, int version) {
+        this.version = version;
+        location = prefs.getString(context.getString(R.string.pref_location_key),
+                context.getString(R.string.pref_location_default));
+        String metricUnits = context.getString(R.string.pref_units_metric);
+        metric = prefs.getString(context.getString(R.string.pref_units_key), metricUnits)
+                .equals(metricUnits);
+        String sunshineArtPack = context.getString(R.string.pref_art_pack_sunshine);
+        artPackUrlFormat = prefs.getString(context.getString(R.string.pref_art_pack_key),
+                sunshineArtPack);
+        localGraphics = artPackUrlFormat.equals(sunshineArtPack);
+        notificationsEnabled = prefs.getBoolean(
+                context.getString(R.string.pref_enable_notifications_key),
+                Boolean.parseBoolean(context.getString(R.string.pref_enable_notifications_default)));
+    }
+
+    /**
+     * @return the current settings, never null.
+     */
+    public static SettingsSnapshot get(Context context) {
+        SettingsSnapshot snapshot = sCurrent;
+        if (null == snapshot) {
+            snapshot = init(context.getApplicationContext());
+        }
+        return snapshot;
+    }
+
+    /**
+     * Brings the current snapshot up to date with the preferences, straight away.  A snapshot
+     * is only replaced, and the version only moved, if a setting really changed, so calling
+     * this as well as the snapshot's own listener doesn't count a change twice.
+     */
+    public static void refresh(Context context) {
+        context = context.getApplicationContext();
+        synchronized (SettingsSnapshot.class) {
+            if (null == sCurrent) {
+                init(context);
+                return;
+            }
+            SettingsSnapshot snapshot = new SettingsSnapshot(context,
+                    PreferenceManager.getDefaultSharedPreferences(context), sCurrent.version + 1);
+            if (!snapshot.hasSameSettings(sCurrent)) {
+                sCurrent = snapshot;
+            }
+        }
+    }
+
+    private boolean hasSameSettings(SettingsSnapshot other) {
+        return location.equals(other.location)
+                && metric == other.metric
+                && artPackUrlFormat.equals(other.artPackUrlFormat)
+                && notificationsEnabled == other.notificationsEnabled;
+    }
+
+    private static synchronized SettingsSnapshot init(final Context context) {
+        if (null != sCurrent) return sCurrent;
+
+        final SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        // The location status and the last notification time are sync state that changes on
+        // every sync, not settings, and must not invalidate anything.
+        final String[] keys = {
+                context.getString(R.string.pref_location_key),
+                context.getString(R.string.pref_units_key),
+                context.getString(R.string.pref_art_pack_key),
+                context.getString(R.string.pref_enable_notifications_key)
+        };
+        sListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+            @Override
+            public void onSharedPreferenceChanged(SharedPreferences sharedPreferences,
+                                                  String key) {
+                for (String settingKey : keys) {
+                    if (settingKey.equals(key)) {
+                        refresh(context);
+                        return;
+                    }
+                }
+            }
+        };
+        prefs.registerOnSharedPreferenceChangeListener(sListener);
+        sCurrent = new SettingsSnapshot(context, prefs, 1);
+        return sCurrent;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.os.Looper;
+import android.os.MessageQueue;
+
+import com.example.android.sunshine.app.metrics.StartupTracer;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps MainActivity's start up work that the first frame doesn't need from delaying it, by
+ * running it on a background thread, or on the main thread once it is idle after the first
+ * frame.  What the first frame does need runs right away in onCreate.  Every task is timed by
+ * the {@link StartupTracer}.
+ */
+class StartupScheduler {
+
+    // Start up work is a handful of short tasks, one thread is enough.
+    private static final Executor sBackgroundExecutor = Executors.newSingleThreadExecutor();
+
+    private final StartupTracer mTracer;
+
+    // Waiting for the first frame, then for idle time, in order
+    private final ArrayList<String> mIdleNames = new ArrayList<String>();
+    private final ArrayList<Runnable> mIdleTasks = new ArrayList<Runnable>();
+    private boolean mFirstFrameDrawn;
+    private boolean mIdleHandlerAdded;
+    private boolean mCancelled;
+
+    // Runs one task each time the main thread runs out of messages, so input and drawing
+    // still get in between them.
+    private final MessageQueue.IdleHandler mIdleHandler = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            if (!mCancelled && !mIdleTasks.isEmpty()) {
+                run(mIdleNames.remove(0), mIdleTasks.remove(0));
+            }
+            // A task may have queued another one
+            mIdleHandlerAdded = !mCancelled && !mIdleTasks.isEmpty();
+            return mIdleHandlerAdded;
+        }
+    };
+
+    StartupScheduler(StartupTracer tracer) {
+        mTracer = tracer;
+    }
+
+    /**
+     * For work that doesn't touch views, such as IPC to system services.
+     */
+    void runInBackground(final String name, final Runnable task) {
+        sBackgroundExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                StartupScheduler.this.run(name, task);
+            }
+        });
+    }
+
+    /**
+     * For main thread work the first frame doesn't need.  Must be called on the main thread,
+     * an idle task may queue more.
+     */
+    void runWhenIdle(String name, Runnable task) {
+        if (mCancelled) return;
+        mIdleNames.add(name);
+        mIdleTasks.add(task);
+        if (mFirstFrameDrawn) addIdleHandler();
+    }
+
+    /**
+     * Starts the idle stage.  Call from the first pre-draw, the idle time comes after the draw.
+     */
+    void onFirstFrame() {
+        if (mFirstFrameDrawn) return;
+        mFirstFrameDrawn = true;
+        mTracer.milestone(StartupTracer.FIRST_FRAME);
+        if (!mIdleTasks.isEmpty()) addIdleHandler();
+    }
+
+    private void addIdleHandler() {
+        if (mIdleHandlerAdded) return;
+        mIdleHandlerAdded = true;
+        Looper.myQueue().addIdleHandler(mIdleHandler);
+    }
+
+    /**
+     * Drops the idle tasks that haven't run, for when the activity is destroyed first.
+     */
+    void cancel() {
+        mCancelled = true;
+        mIdleNames.clear();
+        mIdleTasks.clear();
+        mIdleHandlerAdded = false;
+        Looper.myQueue().removeIdleHandler(mIdleHandler);
+    }
+
+    private void run(String name, Runnable task) {
+        long begin = StartupTracer.beginStep();
+        task.run();
+        mTracer.endStep(name, begin);
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.content.res.Resources;
+import android.support.v4.app.ActivityManagerCompat;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.GlideBuilder;
+import com.bumptech.glide.load.engine.bitmap_recycle.LruBitmapPool;
+import com.bumptech.glide.load.engine.cache.LruResourceCache;
+import com.bumptech.glide.load.engine.cache.MemorySizeCalculator;
+import com.bumptech.glide.module.GlideModule;
+import com.example.android.sunshine.shared.WeatherConditions;
+
+/**
+ * Sizes Glide's memory cache for Sunshine.  The only remote images are the art pack's, one per
+ * kind of weather, shown at the list icon size and the today icon size.  The cache is made big
+ * enough to keep all of them decoded.  On low RAM devices it keeps only that, instead of
+ * Glide's default of a couple of screens worth of bitmaps.
+ *
+ * Registered in AndroidManifest.xml.
+ */
+public class SunshineGlideModule implements GlideModule {
+
+    // Bytes per ARGB_8888 pixel, the art is transparent
+    private static final int BYTES_PER_PIXEL = 4;
+
+    @Override
+    public void applyOptions(Context context, GlideBuilder builder) {
+        MemorySizeCalculator calculator = new MemorySizeCalculator(context);
+        int memoryCacheSize = calculator.getMemoryCacheSize();
+        int bitmapPoolSize = calculator.getBitmapPoolSize();
+
+        Resources resources = context.getResources();
+        int listIcon = resources.getDimensionPixelSize(R.dimen.list_icon);
+        int todayIcon = resources.getDimensionPixelSize(R.dimen.today_icon);
+        int artSize = WeatherConditions.getArtworkCount() * BYTES_PER_PIXEL
+                * (listIcon * listIcon + todayIcon * todayIcon);
+
+        ActivityManager activityManager =
+                (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        if (ActivityManagerCompat.isLowRamDevice(activityManager)) {
+            memoryCacheSize = artSize;
+            bitmapPoolSize = Math.min(bitmapPoolSize, artSize);
+        } else {
+            memoryCacheSize = Math.max(memoryCacheSize, artSize);
+        }
+        builder.setMemoryCache(new LruResourceCache(memoryCacheSize));
+        builder.setBitmapPool(new LruBitmapPool(bitmapPoolSize));
+    }
+
+    @Override
+    public void registerComponents(Context context, Glide glide) {
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.os.Binder;
+import android.util.SparseArray;
+
+import com.example.android.sunshine.app.data.WeatherContract.DiagnosticsEntry;
+import com.example.android.sunshine.app.metrics.LatencyHistogram;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Collects per-route latency histograms, row counts and caller attribution for the
+ * {@link WeatherProvider}.  Everything is kept in memory and exposed through
+ * {@link DiagnosticsEntry#CONTENT_URI}.
+ */
+class ProviderStats {
+
+    // Anything slower than this gets its SQL and bind arguments logged.
+    static final long SLOW_STATEMENT_THRESHOLD_MS = 50;
+
+    static final int OP_QUERY = 0;
+    static final int OP_INSERT = 1;
+    static final int OP_BULK_INSERT = 2;
+    static final int OP_UPDATE = 3;
+    static final int OP_DELETE = 4;
+    private static final String[] OPERATION_NAMES =
+            {"query", "insert", "bulkInsert", "update", "delete"};
+
+    private static final String[] DIAGNOSTICS_COLUMNS = {
+            DiagnosticsEntry.COLUMN_ROUTE,
+            DiagnosticsEntry.COLUMN_OPERATION,
+            DiagnosticsEntry.COLUMN_CALLS,
+            DiagnosticsEntry.COLUMN_SLOW_CALLS,
+            DiagnosticsEntry.COLUMN_FAILED_CALLS,
+            DiagnosticsEntry.COLUMN_ROWS,
+            DiagnosticsEntry.COLUMN_MEAN_MICROS,
+            DiagnosticsEntry.COLUMN_P50_MICROS,
+            DiagnosticsEntry.COLUMN_P99_MICROS,
+            DiagnosticsEntry.COLUMN_MAX_MICROS,
+            DiagnosticsEntry.COLUMN_CALLERS
+    };
+
+    private static class RouteStats {
+        final int route;
+        final int operation;
+        final LatencyHistogram histogram = new LatencyHistogram();
+        long rows;
+        long slowCalls;
+        long failedCalls;
+        final Map<String, Integer> callers = new HashMap<String, Integer>();
+
+        RouteStats(int route, int operation) {
+            this.route = route;
+            this.operation = operation;
+        }
+    }
+
+    private final PackageManager mPackageManager;
+    private final SparseArray<RouteStats> mStats = new SparseArray<RouteStats>();
+    private final SparseArray<String> mUidNames = new SparseArray<String>();
+
+    ProviderStats(Context context) {
+        mPackageManager = context.getPackageManager();
+    }
+
+    /**
+     * Records a completed provider operation.
+     *
+     * @param route the UriMatcher code the operation was dispatched on
+     * @param operation one of the OP_* constants
+     * @param startNanos the {@link System#nanoTime()} the operation started at
+     * @param rows number of rows returned or affected
+     * @return true if the operation was slower than {@link #SLOW_STATEMENT_THRESHOLD_MS}, in
+     * which case the caller is expected to log the statement.
+     */
+    boolean record(int route, int operation, long startNanos, int rows) {
+        return record(route, operation, startNanos, rows, false);
+    }
+
+    /**
+     * Records a provider operation that threw.  It counts in the same latency histogram as the
+     * calls that completed, so that the figures don't only show the successful ones.
+     *
+     * @see #record(int, int, long, int)
+     */
+    void recordFailure(int route, int operation, long startNanos) {
+        record(route, operation, startNanos, 0, true);
+    }
+
+    private boolean record(int route, int operation, long startNanos, int rows, boolean failed) {
+        long elapsedNanos = System.nanoTime() - startNanos;
+        boolean slow = elapsedNanos >= SLOW_STATEMENT_THRESHOLD_MS * 1000000L;
+        String caller = getCaller();
+        // Under the same lock as reset(), so that a sample always lands in one period
+        synchronized (mStats) {
+            int key = (route << 3) | operation;
+            RouteStats stats = mStats.get(key);
+            if (stats == null) {
+                stats = new RouteStats(route, operation);
+                mStats.put(key, stats);
+            }
+            stats.rows += rows;
+            if (slow) {
+                stats.slowCalls++;
+            }
+            if (failed) {
+                stats.failedCalls++;
+            }
+            Integer calls = stats.callers.get(caller);
+            stats.callers.put(caller, calls == null ? 1 : calls + 1);
+            stats.histogram.record(elapsedNanos);
+        }
+        return slow;
+    }
+
+    void reset() {
+        synchronized (mStats) {
+            mStats.clear();
+        }
+    }
+
+    /**
+     * @return one row per (route, operation) pair that has seen traffic, in the shape described
+     * by {@link DiagnosticsEntry}.
+     */
+    Cursor toCursor() {
+        MatrixCursor cursor = new MatrixCursor(DIAGNOSTICS_COLUMNS);
+        synchronized (mStats) {
+            for (int i = 0; i < mStats.size(); i++) {
+                RouteStats stats = mStats.valueAt(i);
+                LatencyHistogram histogram = stats.histogram;
+                cursor.addRow(new Object[]{
+                        WeatherProvider.getRouteName(stats.route),
+                        OPERATION_NAMES[stats.operation],
+                        histogram.getCount(),
+                        stats.slowCalls,
+                        stats.failedCalls,
+                        stats.rows,
+                        histogram.getMeanMicros(),
+                        histogram.getPercentileMicros(0.5),
+                        histogram.getPercentileMicros(0.99),
+                        histogram.getMaxMicros(),
+                        formatCallers(stats.callers)
+                });
+            }
+        }
+        return cursor;
+    }
+
+    static String getOperationName(int operation) {
+        return OPERATION_NAMES[operation];
+    }
+
+    /**
+     * Attributes a call to the calling package and thread.  Most traffic is in-process, where
+     * the uid is always our own, so the thread name (sync adapter, loader, widget service...)
+     * is what actually tells callers apart.
+     */
+    private String getCaller() {
+        int uid = Binder.getCallingUid();
+        String name;
+        synchronized (mUidNames) {
+            name = mUidNames.get(uid);
+            if (name == null) {
+                name = mPackageManager.getNameForUid(uid);
+                if (name == null) {
+                    name = Integer.toString(uid);
+                }
+                mUidNames.put(uid, name);
+            }
+        }
+        return name + "/" + Thread.currentThread().getName();
+    }
+
+    private static String formatCallers(Map<String, Integer> callers) {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, Integer> entry : callers.entrySet()) {
+            if (builder.length() > 0) {
+                builder.append("; ");
+            }
+            builder.append(entry.getKey()).append('=').append(entry.getValue());
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.support.v4.util.LruCache;
+
+import java.util.Arrays;
+
+/**
+ * Remembers the SQL the {@link WeatherProvider} built for a (route, projection, selection, sort
+ * order) combination.  Handing SQLite the identical string again lets it reuse the statement
+ * it already prepared on that connection, so a hot read skips both building the SQL and
+ * compiling it.  Bind arguments, including the LIMIT, stay out of the key.
+ */
+class QueryPlanCache {
+
+    // The app only uses a handful of projections per route, see ForecastFragment,
+    // DetailFragment, the widgets, Muzei and the sync adapter's notifications.
+    static final int MAX_PLANS = 32;
+
+    private static final class Key {
+        final int route;
+        final String[] projection;
+        final String selection;
+        final String sortOrder;
+        final boolean limited;
+        final int hashCode;
+
+        Key(int route, String[] projection, String selection, String sortOrder, boolean limited) {
+            this.route = route;
+            this.projection = projection;
+            this.selection = selection;
+            this.sortOrder = sortOrder;
+            this.limited = limited;
+            int hash = route;
+            hash = 31 * hash + Arrays.hashCode(projection);
+            hash = 31 * hash + (selection == null ? 0 : selection.hashCode());
+            hash = 31 * hash + (sortOrder == null ? 0 : sortOrder.hashCode());
+            hash = 31 * hash + (limited ? 1 : 0);
+            this.hashCode = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return route == other.route
+                    && limited == other.limited
+                    && hashCode == other.hashCode
+                    && Arrays.equals(projection, other.projection)
+                    && (selection == null ? other.selection == null : selection.equals(other.selection))
+                    && (sortOrder == null ? other.sortOrder == null : sortOrder.equals(other.sortOrder));
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    private final LruCache<Key, String> mPlans = new LruCache<Key, String>(MAX_PLANS);
+
+    /**
+     * @return the SQL cached for this combination, or null if it hasn't been built yet.
+     */
+    String get(int route, String[] projection, String selection, String sortOrder,
+               boolean limited) {
+        return mPlans.get(new Key(route, projection, selection, sortOrder, limited));
+    }
+
+    void put(int route, String[] projection, String selection, String sortOrder,
+             boolean limited, String sql) {
+        // Copy the projection, the caller is free to reuse its array.
+        String[] projectionCopy = projection == null ? null : projection.clone();
+        mPlans.put(new Key(route, projectionCopy, selection, sortOrder, limited), sql);
+    }
+
+    int hitCount() {
+        return mPlans.hitCount();
+    }
+
+    int missCount() {
+        return mPlans.missCount();
+    }
+}
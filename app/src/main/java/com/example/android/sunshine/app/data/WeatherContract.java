@@ -43,6 +43,8 @@ public class WeatherContract {
     // At least, let's hope not.  Don't be that dev, reader.  Don't be that dev.
     public static final String PATH_WEATHER = "weather";
     public static final String PATH_LOCATION = "location";
+    public static final String PATH_DIAGNOSTICS = "diagnostics";
+    public static final String PATH_DATA_VERSION = "data_version";
 
     // To make it easy to query for the exact date, we normalize all dates that go into
     // the database to the start of the the Julian day at UTC.
@@ -126,6 +128,13 @@ public class WeatherContract {
         // Degrees are meteorological degrees (e.g, 0 is north, 180 is south).  Stored as floats.
         public static final String COLUMN_DEGREES = "degrees";
 
+        // Query parameters.  PARAM_LIMIT is understood by the weather and weather/* routes, and
+        // without a sort order they return the first days.  The date range is only understood by
+        // weather/*: its start is passed as COLUMN_DATE, and PARAM_END_DATE is inclusive.  All of
+        // them are pushed down into the SQL, so callers only pay for the rows they render.
+        public static final String PARAM_END_DATE = "end_date";
+        public static final String PARAM_LIMIT = "limit";
+
         public static Uri buildWeatherUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
@@ -144,6 +153,25 @@ public class WeatherContract {
                     .appendQueryParameter(COLUMN_DATE, Long.toString(normalizedDate)).build();
         }
 
+        /**
+         * @return a uri for at most {@code limit} days starting at {@code startDate}, in date order.
+         */
+        public static Uri buildWeatherLocationWithStartDate(
+                String locationSetting, long startDate, int limit) {
+            return buildWeatherLocationWithStartDate(locationSetting, startDate).buildUpon()
+                    .appendQueryParameter(PARAM_LIMIT, Integer.toString(limit)).build();
+        }
+
+        /**
+         * @return a uri for the days from {@code startDate} up to and including {@code endDate}.
+         */
+        public static Uri buildWeatherLocationWithDateRange(
+                String locationSetting, long startDate, long endDate) {
+            return buildWeatherLocationWithStartDate(locationSetting, startDate).buildUpon()
+                    .appendQueryParameter(PARAM_END_DATE, Long.toString(normalizeDate(endDate)))
+                    .build();
+        }
+
         public static Uri buildWeatherLocationWithDate(String locationSetting, long date) {
             return CONTENT_URI.buildUpon().appendPath(locationSetting)
                     .appendPath(Long.toString(normalizeDate(date))).build();
@@ -164,5 +192,88 @@ public class WeatherContract {
             else
                 return 0;
         }
+
+        public static long getEndDateFromUri(Uri uri) {
+            String dateString = uri.getQueryParameter(PARAM_END_DATE);
+            if (null != dateString && dateString.length() > 0)
+                return Long.parseLong(dateString);
+            else
+                return 0;
+        }
+
+        /**
+         * @return the maximum number of rows asked for, or 0 if the uri isn't limited.
+         * @throws IllegalArgumentException if the limit isn't a number.
+         */
+        public static int getLimitFromUri(Uri uri) {
+            String limitString = uri.getQueryParameter(PARAM_LIMIT);
+            if (null == limitString || limitString.length() == 0)
+                return 0;
+            try {
+                return Integer.parseInt(limitString);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid limit in uri: " + uri, e);
+            }
+        }
+    }
+
+    /*
+        Inner class that describes the read-only diagnostics view of the provider.  Each row
+        summarises one (route, operation) pair since the provider was created or last reset.
+        Deleting from this uri resets the counters.
+     */
+    public static final class DiagnosticsEntry {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_DIAGNOSTICS).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_DIAGNOSTICS;
+
+        // UriMatcher pattern of the route, e.g. "weather/*"
+        public static final String COLUMN_ROUTE = "route";
+        // query, insert, bulkInsert, update or delete
+        public static final String COLUMN_OPERATION = "operation";
+        public static final String COLUMN_CALLS = "calls";
+        // Calls that took longer than the provider's slow statement threshold
+        public static final String COLUMN_SLOW_CALLS = "slow_calls";
+        // Calls that threw, e.g. on a bad selection.  They count in calls and the latencies too.
+        public static final String COLUMN_FAILED_CALLS = "failed_calls";
+        // Rows returned (for queries) or affected (for writes)
+        public static final String COLUMN_ROWS = "rows";
+
+        // Latency figures, all in microseconds.  Percentiles are histogram bucket upper bounds.
+        public static final String COLUMN_MEAN_MICROS = "mean_us";
+        public static final String COLUMN_P50_MICROS = "p50_us";
+        public static final String COLUMN_P99_MICROS = "p99_us";
+        public static final String COLUMN_MAX_MICROS = "max_us";
+
+        // "package/thread=calls" pairs, separated by "; "
+        public static final String COLUMN_CALLERS = "callers";
+    }
+
+    /*
+        Inner class that describes the data version of a location: a single row whose version
+        increases every time something shown with the location's forecast changes.  A sync that
+        writes the same forecast again leaves it alone, so callers can keep what they built from
+        the forecast until it moves.  Versions only compare within one run of the app's process.
+     */
+    public static final class DataVersionEntry {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_DATA_VERSION).build();
+
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_DATA_VERSION;
+
+        public static final String COLUMN_VERSION = "version";
+
+        public static Uri buildDataVersionUri(String locationSetting) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting).build();
+        }
+
+        public static String getLocationSettingFromUri(Uri uri) {
+            return uri.getPathSegments().get(1);
+        }
     }
 }
@@ -15,9 +15,13 @@
  */
 package com.example.android.sunshine.app.data;
 
+import android.content.ContentValues;
 import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
 
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
@@ -28,14 +32,80 @@ import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 public class WeatherDbHelper extends SQLiteOpenHelper {
 
     // If you change the database schema, you must increment the database version.
-    private static final int DATABASE_VERSION = 2;
+    private static final int DATABASE_VERSION = 4;
 
     static final String DATABASE_NAME = "weather.db";
 
+    // Temperatures, humidity, pressure and wind are stored as integers scaled by this factor,
+    // i.e. to two decimal places.  SQLite stores small integers in 1 to 4 bytes where a REAL
+    // always takes 8.  The provider scales them back on the way out, see WeatherProvider.
+    static final int FIXED_POINT_SCALE = 100;
+
+    static final String[] FIXED_POINT_COLUMNS = {
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES
+    };
+
+    // The short description only depends on the weather id, so rather than repeating it on
+    // every weather row it's kept once per weather id in this dictionary table.
+    static final String CONDITION_TABLE_NAME = "weather_condition";
+
+    // Forecast reads are a run of dates for one location.  A WITHOUT ROWID table keyed on
+    // (location_id, date) stores each location's days next to each other, where a rowid table
+    // spreads them out in insertion order, a day per sync.  WITHOUT ROWID needs SQLite 3.8.2,
+    // which Lollipop is the first release to ship; older devices keep the rowid table.
+    private static final int[] CLUSTERED_LAYOUT_MIN_SQLITE_VERSION = {3, 8, 2};
+
+    private volatile boolean mClustered;
+
     public WeatherDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
     }
 
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        mClustered = isClustered(db);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            // Leave room in each connection's prepared statement cache for every query plan the
+            // provider caches, plus the writes, so the plans don't evict each other.
+            db.setMaxSqlCacheSize(QueryPlanCache.MAX_PLANS + 16);
+        }
+    }
+
+    /**
+     * @return true if the weather table uses the clustered layout, see
+     * {@link #supportsClusteredLayout}.  Only valid once the database has been opened.
+     */
+    boolean isWeatherClustered() {
+        return mClustered;
+    }
+
+    /**
+     * @return true if the SQLite library behind {@code db} understands WITHOUT ROWID tables.
+     */
+    static boolean supportsClusteredLayout(SQLiteDatabase db) {
+        String[] version = DatabaseUtils.stringForQuery(db, "SELECT sqlite_version()", null)
+                .split("\\.");
+        for (int i = 0; i < CLUSTERED_LAYOUT_MIN_SQLITE_VERSION.length; i++) {
+            int part = i < version.length ? Integer.parseInt(version[i]) : 0;
+            if (part != CLUSTERED_LAYOUT_MIN_SQLITE_VERSION[i]) {
+                return part > CLUSTERED_LAYOUT_MIN_SQLITE_VERSION[i];
+            }
+        }
+        return true;
+    }
+
+    static boolean isClustered(SQLiteDatabase db) {
+        return DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM sqlite_master WHERE type = 'table'"
+                + " AND name = ? AND sql LIKE '%WITHOUT ROWID%'",
+                new String[]{WeatherEntry.TABLE_NAME}) > 0;
+    }
+
     @Override
     public void onCreate(SQLiteDatabase sqLiteDatabase) {
         // Create a table to hold locations.  A location consists of the string supplied in the
@@ -48,27 +118,48 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
                 LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL " +
                 " );";
 
-        final String SQL_CREATE_WEATHER_TABLE = "CREATE TABLE " + WeatherEntry.TABLE_NAME + " (" +
-                // Why AutoIncrement here, and not above?
-                // Unique keys will be auto-generated in either case.  But for weather
-                // forecasting, it's reasonable to assume the user will want information
-                // for a certain date and all dates *following*, so the forecast data
-                // should be sorted accordingly.
-                WeatherEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+        sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_TABLE);
+        createConditionTable(sqLiteDatabase);
+        sqLiteDatabase.execSQL(buildWeatherTableSql(supportsClusteredLayout(sqLiteDatabase)));
+    }
+
+    /**
+     * Package visible so the benchmarks can build the schema piece by piece.
+     */
+    static void createConditionTable(SQLiteDatabase sqLiteDatabase) {
+        final String SQL_CREATE_CONDITION_TABLE = "CREATE TABLE " + CONDITION_TABLE_NAME + " (" +
+                // the weather id as returned by the API
+                WeatherEntry._ID + " INTEGER PRIMARY KEY," +
+                WeatherEntry.COLUMN_SHORT_DESC + " TEXT NOT NULL " +
+                " );";
+        sqLiteDatabase.execSQL(SQL_CREATE_CONDITION_TABLE);
+    }
+
+    /**
+     * @param clustered true for the WITHOUT ROWID layout keyed on (location_id, date), false for
+     *                  a plain rowid table.  Package visible so the layouts can be benchmarked.
+     */
+    static String buildWeatherTableSql(boolean clustered) {
+        return "CREATE TABLE " + WeatherEntry.TABLE_NAME + " (" +
+                // No AUTOINCREMENT: the provider updates existing rows in place, so _ids are
+                // already stable, and AUTOINCREMENT costs a sqlite_sequence write per insert.
+                // Without a rowid, _id is an ordinary column that insertWeather fills in.
+                WeatherEntry._ID + (clustered ? " INTEGER NOT NULL UNIQUE," : " INTEGER PRIMARY KEY,") +
 
                 // the ID of the location entry associated with this weather data
                 WeatherEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
                 WeatherEntry.COLUMN_DATE + " INTEGER NOT NULL, " +
-                WeatherEntry.COLUMN_SHORT_DESC + " TEXT NOT NULL, " +
+                // also the key into the condition table for the short description
                 WeatherEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL," +
 
-                WeatherEntry.COLUMN_MIN_TEMP + " REAL NOT NULL, " +
-                WeatherEntry.COLUMN_MAX_TEMP + " REAL NOT NULL, " +
+                // scaled by FIXED_POINT_SCALE
+                WeatherEntry.COLUMN_MIN_TEMP + " INTEGER NOT NULL, " +
+                WeatherEntry.COLUMN_MAX_TEMP + " INTEGER NOT NULL, " +
 
-                WeatherEntry.COLUMN_HUMIDITY + " REAL NOT NULL, " +
-                WeatherEntry.COLUMN_PRESSURE + " REAL NOT NULL, " +
-                WeatherEntry.COLUMN_WIND_SPEED + " REAL NOT NULL, " +
-                WeatherEntry.COLUMN_DEGREES + " REAL NOT NULL, " +
+                WeatherEntry.COLUMN_HUMIDITY + " INTEGER NOT NULL, " +
+                WeatherEntry.COLUMN_PRESSURE + " INTEGER NOT NULL, " +
+                WeatherEntry.COLUMN_WIND_SPEED + " INTEGER NOT NULL, " +
+                WeatherEntry.COLUMN_DEGREES + " INTEGER NOT NULL, " +
 
                 // Set up the location column as a foreign key to location table.
                 " FOREIGN KEY (" + WeatherEntry.COLUMN_LOC_KEY + ") REFERENCES " +
@@ -76,15 +167,33 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
 
                 // To assure the application have just one weather entry per day
                 // per location, it's created a UNIQUE constraint with REPLACE strategy
-                " UNIQUE (" + WeatherEntry.COLUMN_DATE + ", " +
-                WeatherEntry.COLUMN_LOC_KEY + ") ON CONFLICT REPLACE);";
-
-        sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_TABLE);
-        sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+                (clustered
+                        ? " PRIMARY KEY (" + WeatherEntry.COLUMN_LOC_KEY + ", " +
+                                WeatherEntry.COLUMN_DATE + ") ON CONFLICT REPLACE) WITHOUT ROWID;"
+                        : " UNIQUE (" + WeatherEntry.COLUMN_DATE + ", " +
+                                WeatherEntry.COLUMN_LOC_KEY + ") ON CONFLICT REPLACE);");
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
+        if (oldVersion == 2) {
+            // Version 2 stored the same data with REAL columns and an inline description, so
+            // convert it rather than making the user wait for the next sync.
+            upgradeWeatherFromVersion2(sqLiteDatabase);
+            return;
+        }
+        if (oldVersion == 3) {
+            // Version 3 always used a rowid table; move to the clustered layout where we can.
+            if (supportsClusteredLayout(sqLiteDatabase)) {
+                String columns = WeatherEntry._ID + ", " + WeatherEntry.COLUMN_LOC_KEY + ", " +
+                        WeatherEntry.COLUMN_DATE + ", " + WeatherEntry.COLUMN_WEATHER_ID;
+                for (String column : FIXED_POINT_COLUMNS) {
+                    columns += ", " + column;
+                }
+                rebuildWeatherTable(sqLiteDatabase, columns, columns);
+            }
+            return;
+        }
         // This database is only a cache for online data, so its upgrade policy is
         // to simply to discard the data and start over
         // Note that this only fires if you change the version number for your database.
@@ -93,6 +202,135 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
         // should be your top priority before modifying this method.
         sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
         sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + CONDITION_TABLE_NAME);
         onCreate(sqLiteDatabase);
     }
+
+    private static void upgradeWeatherFromVersion2(SQLiteDatabase sqLiteDatabase) {
+        // If the API ever gave one weather id several descriptions, the last one wins, just as
+        // it does for new rows.
+        createConditionTable(sqLiteDatabase);
+        sqLiteDatabase.execSQL("INSERT OR REPLACE INTO " + CONDITION_TABLE_NAME + " (" +
+                WeatherEntry._ID + ", " + WeatherEntry.COLUMN_SHORT_DESC + ") SELECT " +
+                WeatherEntry.COLUMN_WEATHER_ID + ", " + WeatherEntry.COLUMN_SHORT_DESC +
+                " FROM " + WeatherEntry.TABLE_NAME + " ORDER BY " + WeatherEntry._ID);
+
+        StringBuilder columns = new StringBuilder(WeatherEntry._ID + ", " +
+                WeatherEntry.COLUMN_LOC_KEY + ", " + WeatherEntry.COLUMN_DATE + ", " +
+                WeatherEntry.COLUMN_WEATHER_ID);
+        StringBuilder values = new StringBuilder(columns);
+        for (String column : FIXED_POINT_COLUMNS) {
+            columns.append(", ").append(column);
+            values.append(", CAST(ROUND(").append(column).append(" * ")
+                    .append(FIXED_POINT_SCALE).append(") AS INTEGER)");
+        }
+        rebuildWeatherTable(sqLiteDatabase, columns.toString(), values.toString());
+
+        // The old table was the only AUTOINCREMENT one, so its counter is all that's left here.
+        sqLiteDatabase.execSQL("DELETE FROM sqlite_sequence");
+    }
+
+    /**
+     * Recreates the weather table in the current layout, copying the old rows across.
+     *
+     * @param columns the columns of the new table to fill
+     * @param values  the matching expressions over the old table's columns
+     */
+    private static void rebuildWeatherTable(SQLiteDatabase sqLiteDatabase, String columns,
+                                            String values) {
+        final String oldTable = WeatherEntry.TABLE_NAME + "_old";
+        sqLiteDatabase.execSQL("ALTER TABLE " + WeatherEntry.TABLE_NAME + " RENAME TO " + oldTable);
+        sqLiteDatabase.execSQL(buildWeatherTableSql(supportsClusteredLayout(sqLiteDatabase)));
+        sqLiteDatabase.execSQL("INSERT INTO " + WeatherEntry.TABLE_NAME + " (" + columns +
+                ") SELECT " + values + " FROM " + oldTable);
+        sqLiteDatabase.execSQL("DROP TABLE " + oldTable);
+    }
+
+    /**
+     * Inserts a row that has already been through {@link #encodeWeather}.  In the clustered
+     * layout _id is an ordinary column, so a row without one gets the next free id, which is
+     * also written back into {@code row}.
+     * <p>
+     * A rejected row leaves the caller's transaction, if there is one, free to commit the
+     * others.
+     *
+     * @return the _id of the new row, or -1 on failure.
+     */
+    static long insertWeather(SQLiteDatabase db, ContentValues row, boolean clustered) {
+        if (!clustered) {
+            return db.insert(WeatherEntry.TABLE_NAME, null, row);
+        }
+        // Picking the id and inserting have to happen in one transaction, so that another
+        // writer can't take the same id in between.  A nested transaction that doesn't succeed
+        // rolls back the outer one too, so the caller's is used when there is one.
+        if (db.inTransaction()) {
+            return insertClusteredWeather(db, row);
+        }
+        db.beginTransaction();
+        try {
+            // Nothing was written when the insert fails, so there's nothing to roll back
+            long _id = insertClusteredWeather(db, row);
+            db.setTransactionSuccessful();
+            return _id;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private static long insertClusteredWeather(SQLiteDatabase db, ContentValues row) {
+        long _id;
+        if (row.containsKey(WeatherEntry._ID)) {
+            _id = row.getAsLong(WeatherEntry._ID);
+        } else {
+            _id = DatabaseUtils.longForQuery(db, "SELECT IFNULL(MAX(" + WeatherEntry._ID +
+                    "), 0) + 1 FROM " + WeatherEntry.TABLE_NAME, null);
+            row.put(WeatherEntry._ID, _id);
+        }
+        return db.insert(WeatherEntry.TABLE_NAME, null, row) == -1 ? -1 : _id;
+    }
+
+    /**
+     * Converts weather values in the format described by {@link WeatherEntry} into a row of the
+     * weather table: the fixed point columns are scaled to integers and the short description,
+     * which lives in the condition table, is dropped.
+     *
+     * @return a new ContentValues; {@code values} is left untouched.
+     */
+    static ContentValues encodeWeather(ContentValues values) {
+        ContentValues encoded = new ContentValues(values);
+        encoded.remove(WeatherEntry.COLUMN_SHORT_DESC);
+        for (String column : FIXED_POINT_COLUMNS) {
+            Double value = values.getAsDouble(column);
+            if (value != null) {
+                encoded.put(column, Math.round(value * FIXED_POINT_SCALE));
+            }
+        }
+        return encoded;
+    }
+
+    /**
+     * @return the short description recorded for a weather id, or null if there is none.
+     */
+    static String getCondition(SQLiteDatabase db, int weatherId) {
+        Cursor cursor = db.query(CONDITION_TABLE_NAME,
+                new String[]{WeatherEntry.COLUMN_SHORT_DESC},
+                WeatherEntry._ID + " = ?", new String[]{Integer.toString(weatherId)},
+                null, null, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Records the short description for a weather id, replacing any previous one.
+     */
+    static void putCondition(SQLiteDatabase db, int weatherId, String description) {
+        ContentValues condition = new ContentValues();
+        condition.put(WeatherEntry._ID, weatherId);
+        condition.put(WeatherEntry.COLUMN_SHORT_DESC, description);
+        db.insertWithOnConflict(CONDITION_TABLE_NAME, null, condition,
+                SQLiteDatabase.CONFLICT_REPLACE);
+    }
 }
@@ -20,35 +20,99 @@ import android.content.ContentProvider;
 import android.content.ContentValues;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.MatrixCursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.util.Log;
+import android.util.SparseArray;
+
+import com.example.android.sunshine.app.BuildConfig;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
 
 public class WeatherProvider extends ContentProvider {
 
+    private static final String LOG_TAG = WeatherProvider.class.getSimpleName();
+
     // The URI Matcher used by this content provider.
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private WeatherDbHelper mOpenHelper;
+    private ProviderStats mStats;
+    private final QueryPlanCache mQueryPlans = new QueryPlanCache();
+
+    // The data versions, see WeatherContract.DataVersionEntry.  A change that can't be put down
+    // to one location moves mVersion, which is part of every location's version.
+    private static final long ALL_LOCATIONS = -1;
+    private final HashMap<Long, Long> mLocationVersions = new HashMap<Long, Long>();
+    private long mVersion;
 
     static final int WEATHER = 100;
     static final int WEATHER_WITH_LOCATION = 101;
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
     static final int LOCATION = 300;
+    static final int DIAGNOSTICS = 400;
+    static final int DATA_VERSION = 500;
+
+    //The weather table stores a compact encoding (see WeatherDbHelper), so the routes read it
+    //through a subquery that hands the columns back in the form WeatherContract describes:
+    //(SELECT weather._id AS _id, ..., weather.max / 100.0 AS max, ...,
+    //        weather_condition.short_desc AS short_desc
+    //   FROM weather LEFT JOIN weather_condition ON weather.weather_id = weather_condition._id)
+    //   AS weather
+    //Caller selections and sort orders name the same columns, and see the same values, as
+    //callers' projections.  SQLite flattens the subquery into the outer query, so conditions on
+    //location_id and date still use the table's keys.  Package visible for the benchmarks.
+    static final String sWeatherTables = buildDecodedWeatherTable();
+
+    //This is an inner join which looks like
+    //(decoded weather) AS weather INNER JOIN location ON weather.location_id = location._id
+    private static final String sWeatherByLocationSettingTables =
+            sWeatherTables + " INNER JOIN " +
+                    WeatherContract.LocationEntry.TABLE_NAME +
+                    " ON " + WeatherContract.WeatherEntry.TABLE_NAME +
+                    "." + WeatherContract.WeatherEntry.COLUMN_LOC_KEY +
+                    " = " + WeatherContract.LocationEntry.TABLE_NAME +
+                    "." + WeatherContract.LocationEntry._ID;
 
     private static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
 
     static{
         sWeatherByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
-        
-        //This is an inner join which looks like
-        //weather INNER JOIN location ON weather.location_id = location._id
-        sWeatherByLocationSettingQueryBuilder.setTables(
-                WeatherContract.WeatherEntry.TABLE_NAME + " INNER JOIN " +
-                        WeatherContract.LocationEntry.TABLE_NAME +
-                        " ON " + WeatherContract.WeatherEntry.TABLE_NAME +
-                        "." + WeatherContract.WeatherEntry.COLUMN_LOC_KEY +
-                        " = " + WeatherContract.LocationEntry.TABLE_NAME +
-                        "." + WeatherContract.LocationEntry._ID);
+        sWeatherByLocationSettingQueryBuilder.setTables(sWeatherByLocationSettingTables);
+    }
+
+    private static String buildDecodedWeatherTable() {
+        String weather = WeatherContract.WeatherEntry.TABLE_NAME + ".";
+        StringBuilder sql = new StringBuilder("(SELECT ");
+        appendColumn(sql, weather, WeatherContract.WeatherEntry._ID);
+        appendColumn(sql, weather, WeatherContract.WeatherEntry.COLUMN_LOC_KEY);
+        appendColumn(sql, weather, WeatherContract.WeatherEntry.COLUMN_DATE);
+        appendColumn(sql, weather, WeatherContract.WeatherEntry.COLUMN_WEATHER_ID);
+        for (String column : WeatherDbHelper.FIXED_POINT_COLUMNS) {
+            // weather.max / 100.0 AS max
+            sql.append(weather).append(column).append(" / ")
+                    .append(WeatherDbHelper.FIXED_POINT_SCALE).append(".0 AS ").append(column)
+                    .append(", ");
+        }
+        sql.append(WeatherDbHelper.CONDITION_TABLE_NAME).append(".")
+                .append(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC).append(" AS ")
+                .append(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC)
+                .append(" FROM ").append(WeatherContract.WeatherEntry.TABLE_NAME)
+                .append(" LEFT JOIN ").append(WeatherDbHelper.CONDITION_TABLE_NAME)
+                .append(" ON ").append(weather).append(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID)
+                .append(" = ").append(WeatherDbHelper.CONDITION_TABLE_NAME).append(".")
+                .append(WeatherContract.WeatherEntry._ID)
+                .append(") AS ").append(WeatherContract.WeatherEntry.TABLE_NAME);
+        return sql.toString();
+    }
+
+    private static void appendColumn(StringBuilder sql, String table, String column) {
+        sql.append(table).append(column).append(" AS ").append(column).append(", ");
     }
 
     //location.location_setting = ?
@@ -62,52 +126,127 @@ public class WeatherProvider extends ContentProvider {
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? ";
 
+    //location.location_setting = ? AND date <= ?
+    private static final String sLocationSettingWithEndDateSelection =
+            WeatherContract.LocationEntry.TABLE_NAME+
+                    "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " <= ? ";
+
+    //location.location_setting = ? AND date >= ? AND date <= ?
+    private static final String sLocationSettingWithDateRangeSelection =
+            WeatherContract.LocationEntry.TABLE_NAME+
+                    "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " <= ? ";
+
     //location.location_setting = ? AND date = ?
     private static final String sLocationSettingAndDaySelection =
             WeatherContract.LocationEntry.TABLE_NAME +
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
 
+    //date = ? AND location_id = ?
+    private static final String sDateAndLocationIdSelection =
+            WeatherContract.WeatherEntry.COLUMN_DATE + " = ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? ";
+
     private Cursor getWeatherByLocationSetting(Uri uri, String[] projection, String sortOrder) {
-        String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
-        long startDate = WeatherContract.WeatherEntry.getStartDateFromUri(uri);
+        return queryWeatherByLocationSetting(WEATHER_WITH_LOCATION,
+                projection,
+                getWeatherByLocationSettingSelection(uri),
+                getWeatherByLocationSettingArgs(uri),
+                sortOrder,
+                getLimit(uri)
+        );
+    }
 
-        String[] selectionArgs;
-        String selection;
+    private static String getWeatherByLocationSettingSelection(Uri uri) {
+        long startDate = WeatherContract.WeatherEntry.getStartDateFromUri(uri);
+        long endDate = WeatherContract.WeatherEntry.getEndDateFromUri(uri);
+        if (endDate == 0) {
+            return startDate == 0 ? sLocationSettingSelection : sLocationSettingWithStartDateSelection;
+        }
+        return startDate == 0 ? sLocationSettingWithEndDateSelection : sLocationSettingWithDateRangeSelection;
+    }
 
+    private static String[] getWeatherByLocationSettingArgs(Uri uri) {
+        String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
+        long startDate = WeatherContract.WeatherEntry.getStartDateFromUri(uri);
+        long endDate = WeatherContract.WeatherEntry.getEndDateFromUri(uri);
+        if (endDate == 0) {
+            if (startDate == 0) {
+                return new String[]{locationSetting};
+            }
+            return new String[]{locationSetting, Long.toString(startDate)};
+        }
         if (startDate == 0) {
-            selection = sLocationSettingSelection;
-            selectionArgs = new String[]{locationSetting};
-        } else {
-            selectionArgs = new String[]{locationSetting, Long.toString(startDate)};
-            selection = sLocationSettingWithStartDateSelection;
+            return new String[]{locationSetting, Long.toString(endDate)};
         }
+        return new String[]{locationSetting, Long.toString(startDate), Long.toString(endDate)};
+    }
 
-        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
-                projection,
-                selection,
-                selectionArgs,
-                null,
-                null,
-                sortOrder
-        );
+    /**
+     * @return whether the route honours {@link WeatherContract.WeatherEntry#PARAM_LIMIT}, the
+     * others ignore it.
+     */
+    private static boolean acceptsLimit(int match) {
+        return match == WEATHER || match == WEATHER_WITH_LOCATION;
+    }
+
+    /**
+     * @return the LIMIT clause asked for by the uri, or null for no limit.
+     */
+    private static String getLimit(Uri uri) {
+        int limit = WeatherContract.WeatherEntry.getLimitFromUri(uri);
+        if (limit < 0) {
+            throw new IllegalArgumentException("Invalid limit in uri: " + uri);
+        }
+        return limit == 0 ? null : Integer.toString(limit);
     }
 
     private Cursor getWeatherByLocationSettingAndDate(
             Uri uri, String[] projection, String sortOrder) {
-        String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
-        long date = WeatherContract.WeatherEntry.getDateFromUri(uri);
-
-        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+        return queryWeatherByLocationSetting(WEATHER_WITH_LOCATION_AND_DATE,
                 projection,
                 sLocationSettingAndDaySelection,
-                new String[]{locationSetting, Long.toString(date)},
-                null,
-                null,
-                sortOrder
+                getWeatherByLocationSettingAndDateArgs(uri),
+                sortOrder,
+                null
         );
     }
 
+    /**
+     * Runs a query against the weather/location join, reusing the SQL built for an earlier call
+     * with the same route, projection, selection and sort order.  The limit is bound as an
+     * argument so that it doesn't make the SQL differ.
+     */
+    private Cursor queryWeatherByLocationSetting(int route, String[] projection, String selection,
+                                                 String[] selectionArgs, String sortOrder,
+                                                 String limit) {
+        boolean limited = limit != null;
+        String sql = mQueryPlans.get(route, projection, selection, sortOrder, limited);
+        if (sql == null) {
+            // The seven argument buildQuery is the one available before API 11; the selection
+            // arguments it takes are ignored.
+            @SuppressWarnings("deprecation")
+            String built = sWeatherByLocationSettingQueryBuilder.buildQuery(
+                    projection, selection, null, null, null, sortOrder, null);
+            sql = limited ? built + " LIMIT ?" : built;
+            mQueryPlans.put(route, projection, selection, sortOrder, limited, sql);
+        }
+        if (limited) {
+            selectionArgs = Arrays.copyOf(selectionArgs, selectionArgs.length + 1);
+            selectionArgs[selectionArgs.length - 1] = limit;
+        }
+        return mOpenHelper.getReadableDatabase().rawQuery(sql, selectionArgs);
+    }
+
+    private static String[] getWeatherByLocationSettingAndDateArgs(Uri uri) {
+        String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
+        long date = WeatherContract.WeatherEntry.getDateFromUri(uri);
+        return new String[]{locationSetting, Long.toString(date)};
+    }
+
     /*
         Students: Here is where you need to create the UriMatcher. This UriMatcher will
         match each URI to the WEATHER, WEATHER_WITH_LOCATION, WEATHER_WITH_LOCATION_AND_DATE,
@@ -130,9 +269,34 @@ public class WeatherProvider extends ContentProvider {
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*/#", WEATHER_WITH_LOCATION_AND_DATE);
 
         matcher.addURI(authority, WeatherContract.PATH_LOCATION, LOCATION);
+
+        matcher.addURI(authority, WeatherContract.PATH_DIAGNOSTICS, DIAGNOSTICS);
+        matcher.addURI(authority, WeatherContract.PATH_DATA_VERSION + "/*", DATA_VERSION);
         return matcher;
     }
 
+    /**
+     * @return the UriMatcher pattern behind a route code, for diagnostics and logging.
+     */
+    static String getRouteName(int route) {
+        switch (route) {
+            case WEATHER:
+                return WeatherContract.PATH_WEATHER;
+            case WEATHER_WITH_LOCATION:
+                return WeatherContract.PATH_WEATHER + "/*";
+            case WEATHER_WITH_LOCATION_AND_DATE:
+                return WeatherContract.PATH_WEATHER + "/*/#";
+            case LOCATION:
+                return WeatherContract.PATH_LOCATION;
+            case DIAGNOSTICS:
+                return WeatherContract.PATH_DIAGNOSTICS;
+            case DATA_VERSION:
+                return WeatherContract.PATH_DATA_VERSION + "/*";
+            default:
+                return Integer.toString(route);
+        }
+    }
+
     /*
         Students: We've coded this for you.  We just create a new WeatherDbHelper for later use
         here.
@@ -140,6 +304,7 @@ public class WeatherProvider extends ContentProvider {
     @Override
     public boolean onCreate() {
         mOpenHelper = new WeatherDbHelper(getContext());
+        mStats = new ProviderStats(getContext());
         return true;
     }
 
@@ -164,6 +329,10 @@ public class WeatherProvider extends ContentProvider {
                 return WeatherContract.WeatherEntry.CONTENT_TYPE;
             case LOCATION:
                 return WeatherContract.LocationEntry.CONTENT_TYPE;
+            case DIAGNOSTICS:
+                return WeatherContract.DiagnosticsEntry.CONTENT_TYPE;
+            case DATA_VERSION:
+                return WeatherContract.DataVersionEntry.CONTENT_ITEM_TYPE;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -174,51 +343,211 @@ public class WeatherProvider extends ContentProvider {
                         String sortOrder) {
         // Here's the switch statement that, given a URI, will determine what kind of request it is,
         // and query the database accordingly.
-        Cursor retCursor;
-        switch (sUriMatcher.match(uri)) {
-            // "weather/*/*"
-            case WEATHER_WITH_LOCATION_AND_DATE:
-            {
-                retCursor = getWeatherByLocationSettingAndDate(uri, projection, sortOrder);
-                break;
+        final int match = sUriMatcher.match(uri);
+        if (match == DIAGNOSTICS) {
+            // Not recorded, so that reading the diagnostics doesn't skew them.
+            return mStats.toCursor();
+        }
+        final long startNanos = System.nanoTime();
+        boolean recorded = false;
+        try {
+            if (sortOrder == null && acceptsLimit(match) && getLimit(uri) != null) {
+                // A limit only makes sense with a stable order, and every caller wants the first
+                // days.
+                sortOrder = WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
             }
-            // "weather/*"
-            case WEATHER_WITH_LOCATION: {
-                retCursor = getWeatherByLocationSetting(uri, projection, sortOrder);
-                break;
+            Cursor retCursor;
+            switch (match) {
+                // "weather/*/*"
+                case WEATHER_WITH_LOCATION_AND_DATE:
+                {
+                    retCursor = getWeatherByLocationSettingAndDate(uri, projection, sortOrder);
+                    break;
+                }
+                // "weather/*"
+                case WEATHER_WITH_LOCATION: {
+                    retCursor = getWeatherByLocationSetting(uri, projection, sortOrder);
+                    break;
+                }
+                // "weather"
+                case WEATHER: {
+                    retCursor = mOpenHelper.getReadableDatabase().query(
+                            sWeatherTables,
+                            projection,
+                            selection,
+                            selectionArgs,
+                            null,
+                            null,
+                            sortOrder,
+                            getLimit(uri)
+                    );
+                    break;
+                }
+                // "location"
+                case LOCATION: {
+                    retCursor = mOpenHelper.getReadableDatabase().query(
+                            WeatherContract.LocationEntry.TABLE_NAME,
+                            projection,
+                            selection,
+                            selectionArgs,
+                            null,
+                            null,
+                            sortOrder
+                    );
+                    break;
+                }
+                // "data_version/*"
+                case DATA_VERSION: {
+                    retCursor = getDataVersion(uri);
+                    break;
+                }
+
+                default:
+                    throw new UnsupportedOperationException("Unknown uri: " + uri);
             }
-            // "weather"
-            case WEATHER: {
-                retCursor = mOpenHelper.getReadableDatabase().query(
-                        WeatherContract.WeatherEntry.TABLE_NAME,
-                        projection,
-                        selection,
-                        selectionArgs,
-                        null,
-                        null,
-                        sortOrder
-                );
-                break;
+            retCursor.setNotificationUri(getContext().getContentResolver(), uri);
+
+            // getCount() fills the first window, so the recorded latency covers running the
+            // statement rather than just preparing it.  Every caller does this straight away
+            // anyway.
+            int rows = retCursor.getCount();
+            recorded = true;
+            if (mStats.record(match, ProviderStats.OP_QUERY, startNanos, rows)) {
+                logSlowQuery(match, uri, projection, selection, selectionArgs, sortOrder,
+                        startNanos);
             }
-            // "location"
-            case LOCATION: {
-                retCursor = mOpenHelper.getReadableDatabase().query(
-                        WeatherContract.LocationEntry.TABLE_NAME,
-                        projection,
-                        selection,
-                        selectionArgs,
-                        null,
-                        null,
-                        sortOrder
-                );
-                break;
+            return retCursor;
+        } finally {
+            if (!recorded) {
+                mStats.recordFailure(match, ProviderStats.OP_QUERY, startNanos);
             }
+        }
+    }
 
+    private void logSlowQuery(int match, Uri uri, String[] projection, String selection,
+                              String[] selectionArgs, String sortOrder, long startNanos) {
+        String tables;
+        switch (match) {
+            case WEATHER_WITH_LOCATION:
+                tables = sWeatherByLocationSettingTables;
+                selection = getWeatherByLocationSettingSelection(uri);
+                selectionArgs = getWeatherByLocationSettingArgs(uri);
+                break;
+            case WEATHER_WITH_LOCATION_AND_DATE:
+                tables = sWeatherByLocationSettingTables;
+                selection = sLocationSettingAndDaySelection;
+                selectionArgs = getWeatherByLocationSettingAndDateArgs(uri);
+                break;
+            case LOCATION:
+            case DATA_VERSION:
+                tables = WeatherContract.LocationEntry.TABLE_NAME;
+                break;
             default:
-                throw new UnsupportedOperationException("Unknown uri: " + uri);
+                tables = sWeatherTables;
         }
-        retCursor.setNotificationUri(getContext().getContentResolver(), uri);
-        return retCursor;
+        String sql = SQLiteQueryBuilder.buildQueryString(
+                false, tables, projection, selection, null, null, sortOrder,
+                acceptsLimit(match) ? getLimit(uri) : null);
+        logSlowStatement(ProviderStats.OP_QUERY, match, sql, selectionArgs, startNanos);
+    }
+
+    private void logSlowStatement(int operation, int match, String sql, Object[] args,
+                                  long startNanos) {
+        long elapsedMs = (System.nanoTime() - startNanos) / 1000000L;
+        // The arguments hold the user's location, only debug builds log them
+        String argsText = null == args ? "none" : BuildConfig.DEBUG
+                ? Arrays.toString(args) : "<" + args.length + " redacted>";
+        Log.w(LOG_TAG, "Slow " + ProviderStats.getOperationName(operation) + " on "
+                + getRouteName(match) + " (" + elapsedMs + "ms): " + sql
+                + " args=" + argsText);
+    }
+
+    /**
+     * Builds "INSERT INTO table (a, b) VALUES (?, ?)" for {@code values}, adding the values to
+     * {@code args} in the same order, for logging.
+     */
+    private static String buildInsertSql(String table, ContentValues values,
+                                         ArrayList<Object> args) {
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append(" (");
+        StringBuilder placeholders = new StringBuilder();
+        for (Map.Entry<String, Object> value : values.valueSet()) {
+            if (!args.isEmpty()) {
+                sql.append(", ");
+                placeholders.append(", ");
+            }
+            sql.append(value.getKey());
+            placeholders.append('?');
+            args.add(value.getValue());
+        }
+        return sql.append(") VALUES (").append(placeholders).append(')').toString();
+    }
+
+    /**
+     * Builds "UPDATE table SET a = ?, b = ? WHERE selection" for {@code values}, adding the
+     * values and then the selection arguments to {@code args}, for logging.
+     */
+    private static String buildUpdateSql(String table, ContentValues values, String selection,
+                                         String[] selectionArgs, ArrayList<Object> args) {
+        StringBuilder sql = new StringBuilder("UPDATE ").append(table).append(" SET ");
+        for (Map.Entry<String, Object> value : values.valueSet()) {
+            if (!args.isEmpty()) sql.append(", ");
+            sql.append(value.getKey()).append(" = ?");
+            args.add(value.getValue());
+        }
+        if (null != selectionArgs) {
+            args.addAll(Arrays.asList(selectionArgs));
+        }
+        return sql.append(" WHERE ").append(selection).toString();
+    }
+
+    // The weather table is written in its encoded form, log what was actually bound
+    private static ContentValues getWrittenValues(int match, ContentValues values) {
+        return match == LOCATION ? values : WeatherDbHelper.encodeWeather(values);
+    }
+
+    private Cursor getDataVersion(Uri uri) {
+        String locationSetting = WeatherContract.DataVersionEntry.getLocationSettingFromUri(uri);
+        long locationId = ALL_LOCATIONS;
+        Cursor location = mOpenHelper.getReadableDatabase().query(
+                WeatherContract.LocationEntry.TABLE_NAME,
+                new String[]{WeatherContract.LocationEntry._ID},
+                sLocationSettingSelection,
+                new String[]{locationSetting},
+                null, null, null);
+        try {
+            if (location.moveToFirst()) {
+                locationId = location.getLong(0);
+            }
+        } finally {
+            location.close();
+        }
+        MatrixCursor cursor = new MatrixCursor(
+                new String[]{WeatherContract.DataVersionEntry.COLUMN_VERSION}, 1);
+        cursor.addRow(new Object[]{getVersion(locationId)});
+        return cursor;
+    }
+
+    // An unknown location only has the shared part
+    private synchronized long getVersion(long locationId) {
+        Long locationVersion = mLocationVersions.get(locationId);
+        return mVersion + (locationVersion == null ? 0 : locationVersion);
+    }
+
+    // Only after the change is committed: whoever reads the new version must also read the
+    // new data.
+    private synchronized void bumpVersion(long locationId) {
+        if (locationId == ALL_LOCATIONS) {
+            mVersion++;
+        } else {
+            Long locationVersion = mLocationVersions.get(locationId);
+            mLocationVersions.put(locationId, locationVersion == null ? 1 : locationVersion + 1);
+        }
+    }
+
+    private static String getTableName(int match) {
+        return match == LOCATION
+                ? WeatherContract.LocationEntry.TABLE_NAME
+                : WeatherContract.WeatherEntry.TABLE_NAME;
     }
 
     /*
@@ -228,57 +557,193 @@ public class WeatherProvider extends ContentProvider {
     public Uri insert(Uri uri, ContentValues values) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
-        Uri returnUri;
-
-        switch (match) {
-            case WEATHER: {
-                normalizeDate(values);
-                long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values);
-                if ( _id > 0 )
-                    returnUri = WeatherContract.WeatherEntry.buildWeatherUri(_id);
-                else
-                    throw new android.database.SQLException("Failed to insert row into " + uri);
-                break;
+        final long startNanos = System.nanoTime();
+        boolean recorded = false;
+        try {
+            Uri returnUri;
+
+            switch (match) {
+                case WEATHER: {
+                    normalizeDate(values);
+                    HashSet<Long> changedLocations = new HashSet<Long>(1);
+                    long _id = upsertWeather(db, values, new SparseArray<String>(1),
+                            changedLocations);
+                    if ( _id > 0 )
+                        returnUri = WeatherContract.WeatherEntry.buildWeatherUri(_id);
+                    else
+                        throw new android.database.SQLException("Failed to insert row into " + uri);
+                    for (long locationId : changedLocations) {
+                        bumpVersion(locationId);
+                    }
+                    break;
+                }
+                case LOCATION: {
+                    long _id = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, values);
+                    if ( _id > 0 )
+                        returnUri = WeatherContract.LocationEntry.buildLocationUri(_id);
+                    else
+                        throw new android.database.SQLException("Failed to insert row into " + uri);
+                    bumpVersion(ALL_LOCATIONS);
+                    break;
+                }
+                default:
+                    throw new UnsupportedOperationException("Unknown uri: " + uri);
             }
-            case LOCATION: {
-                long _id = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, values);
-                if ( _id > 0 )
-                    returnUri = WeatherContract.LocationEntry.buildLocationUri(_id);
-                else
-                    throw new android.database.SQLException("Failed to insert row into " + uri);
-                break;
+            recorded = true;
+            if (mStats.record(match, ProviderStats.OP_INSERT, startNanos, 1)) {
+                ArrayList<Object> args = new ArrayList<Object>();
+                String sql = buildInsertSql(getTableName(match), getWrittenValues(match, values),
+                        args);
+                logSlowStatement(ProviderStats.OP_INSERT, match, sql, args.toArray(), startNanos);
+            }
+            getContext().getContentResolver().notifyChange(uri, null);
+            return returnUri;
+        } finally {
+            if (!recorded) {
+                mStats.recordFailure(match, ProviderStats.OP_INSERT, startNanos);
             }
-            default:
-                throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        getContext().getContentResolver().notifyChange(uri, null);
-        return returnUri;
     }
 
     @Override
     public int delete(Uri uri, String selection, String[] selectionArgs) {
-        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
-        int rowsDeleted;
-        // this makes delete all rows return the number of rows deleted
-        if ( null == selection ) selection = "1";
-        switch (match) {
-            case WEATHER:
-                rowsDeleted = db.delete(
-                        WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
-                break;
-            case LOCATION:
-                rowsDeleted = db.delete(
-                        WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
-                break;
-            default:
-                throw new UnsupportedOperationException("Unknown uri: " + uri);
+        if (match == DIAGNOSTICS) {
+            mStats.reset();
+            return 0;
         }
-        // Because a null deletes all rows
-        if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        final long startNanos = System.nanoTime();
+        boolean recorded = false;
+        try {
+            int rowsDeleted;
+            // this makes delete all rows return the number of rows deleted
+            if ( null == selection ) selection = "1";
+            switch (match) {
+                case WEATHER:
+                    rowsDeleted = db.delete(
+                            WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
+                    break;
+                case LOCATION:
+                    rowsDeleted = db.delete(
+                            WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
+                    break;
+                default:
+                    throw new UnsupportedOperationException("Unknown uri: " + uri);
+            }
+            recorded = true;
+            if (mStats.record(match, ProviderStats.OP_DELETE, startNanos, rowsDeleted)) {
+                logSlowStatement(ProviderStats.OP_DELETE, match,
+                        "DELETE FROM " + getTableName(match) + " WHERE " + selection,
+                        selectionArgs, startNanos);
+            }
+            // Because a null deletes all rows
+            if (rowsDeleted != 0) {
+                bumpVersion(ALL_LOCATIONS);
+                getContext().getContentResolver().notifyChange(uri, null);
+            }
+            return rowsDeleted;
+        } finally {
+            if (!recorded) {
+                mStats.recordFailure(match, ProviderStats.OP_DELETE, startNanos);
+            }
+        }
+    }
+
+    /**
+     * Inserts a weather row, or updates the existing row for the same location and date in
+     * place.  The table's ON CONFLICT REPLACE would delete the old row and insert a new one with
+     * a fresh _id; keeping the _id stable across syncs lets list and widget hosts reuse the views
+     * they've already bound.
+     *
+     * A row that already holds the same values isn't written again.  The locations whose data
+     * did change are added to {@code changedLocations}, or ALL_LOCATIONS for a change they all
+     * see, so that their data versions can be moved once the change is committed.
+     *
+     * @param conditions descriptions already written during this call, see {@link #putCondition}
+     * @return the _id of the row written, or -1 on failure, like {@link SQLiteDatabase#insert}.
+     */
+    private long upsertWeather(SQLiteDatabase db, ContentValues values,
+                               SparseArray<String> conditions, HashSet<Long> changedLocations) {
+        if (putCondition(db, values, conditions)) {
+            changedLocations.add(ALL_LOCATIONS);
+        }
+        values = WeatherDbHelper.encodeWeather(values);
+        Long date = values.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+        Long locationId = values.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY);
+        if (date != null && locationId != null) {
+            // The _id, then the columns being written
+            String[] columns = new String[values.size() + 1];
+            columns[0] = WeatherContract.WeatherEntry._ID;
+            int i = 1;
+            for (Map.Entry<String, Object> value : values.valueSet()) {
+                columns[i++] = value.getKey();
+            }
+            Cursor cursor = db.query(WeatherContract.WeatherEntry.TABLE_NAME,
+                    columns,
+                    sDateAndLocationIdSelection,
+                    new String[]{Long.toString(date), Long.toString(locationId)},
+                    null, null, null);
+            try {
+                if (cursor.moveToFirst()) {
+                    long _id = cursor.getLong(0);
+                    if (isSameRow(cursor, columns, values)) {
+                        return _id;
+                    }
+                    int rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values,
+                            WeatherContract.WeatherEntry._ID + " = ?",
+                            new String[]{Long.toString(_id)});
+                    if (rowsUpdated != 1) {
+                        return -1;
+                    }
+                    changedLocations.add(locationId);
+                    return _id;
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        long _id = WeatherDbHelper.insertWeather(db, values, mOpenHelper.isWeatherClustered());
+        if (_id != -1) {
+            changedLocations.add(locationId == null ? ALL_LOCATIONS : locationId);
         }
-        return rowsDeleted;
+        return _id;
+    }
+
+    // Whether the row under the cursor already holds the encoded values, compared as strings.
+    // The fixed point columns are integers by now, so nothing is lost to rounding.
+    private static boolean isSameRow(Cursor cursor, String[] columns, ContentValues values) {
+        for (int i = 1; i < columns.length; i++) {
+            Object value = values.get(columns[i]);
+            if (value == null ? !cursor.isNull(i)
+                    : !value.toString().equals(cursor.getString(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stores the short description of {@code values} in the condition table.  A forecast only
+     * has a handful of distinct conditions, so {@code conditions} remembers what this call has
+     * already written and a bulk insert only touches the dictionary once per weather id.
+     *
+     * @return true if the stored description changed, which every location's rows show.
+     */
+    private static boolean putCondition(SQLiteDatabase db, ContentValues values,
+                                        SparseArray<String> conditions) {
+        Integer weatherId = values.getAsInteger(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID);
+        String description = values.getAsString(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC);
+        if (weatherId == null || description == null
+                || description.equals(conditions.get(weatherId))) {
+            return false;
+        }
+        conditions.put(weatherId, description);
+        if (description.equals(WeatherDbHelper.getCondition(db, weatherId))) {
+            return false;
+        }
+        WeatherDbHelper.putCondition(db, weatherId, description);
+        return true;
     }
 
     private void normalizeDate(ContentValues values) {
@@ -294,25 +759,44 @@ public class WeatherProvider extends ContentProvider {
             Uri uri, ContentValues values, String selection, String[] selectionArgs) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
-        int rowsUpdated;
-
-        switch (match) {
-            case WEATHER:
-                normalizeDate(values);
-                rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values, selection,
-                        selectionArgs);
-                break;
-            case LOCATION:
-                rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values, selection,
-                        selectionArgs);
-                break;
-            default:
-                throw new UnsupportedOperationException("Unknown uri: " + uri);
-        }
-        if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+        final long startNanos = System.nanoTime();
+        boolean recorded = false;
+        try {
+            int rowsUpdated;
+
+            switch (match) {
+                case WEATHER:
+                    normalizeDate(values);
+                    if (putCondition(db, values, new SparseArray<String>(1))) {
+                        bumpVersion(ALL_LOCATIONS);
+                    }
+                    rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME,
+                            WeatherDbHelper.encodeWeather(values), selection, selectionArgs);
+                    break;
+                case LOCATION:
+                    rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values,
+                            selection, selectionArgs);
+                    break;
+                default:
+                    throw new UnsupportedOperationException("Unknown uri: " + uri);
+            }
+            recorded = true;
+            if (mStats.record(match, ProviderStats.OP_UPDATE, startNanos, rowsUpdated)) {
+                ArrayList<Object> args = new ArrayList<Object>();
+                String sql = buildUpdateSql(getTableName(match), getWrittenValues(match, values),
+                        selection, selectionArgs, args);
+                logSlowStatement(ProviderStats.OP_UPDATE, match, sql, args.toArray(), startNanos);
+            }
+            if (rowsUpdated != 0) {
+                bumpVersion(ALL_LOCATIONS);
+                getContext().getContentResolver().notifyChange(uri, null);
+            }
+            return rowsUpdated;
+        } finally {
+            if (!recorded) {
+                mStats.recordFailure(match, ProviderStats.OP_UPDATE, startNanos);
+            }
         }
-        return rowsUpdated;
     }
 
     @Override
@@ -321,19 +805,43 @@ public class WeatherProvider extends ContentProvider {
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case WEATHER:
-                db.beginTransaction();
+                final long startNanos = System.nanoTime();
                 int returnCount = 0;
+                HashSet<Long> changedLocations = new HashSet<Long>();
+                boolean recorded = false;
                 try {
-                    for (ContentValues value : values) {
-                        normalizeDate(value);
-                        long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
-                        if (_id != -1) {
-                            returnCount++;
+                    db.beginTransaction();
+                    try {
+                        SparseArray<String> conditions = new SparseArray<String>();
+                        for (ContentValues value : values) {
+                            normalizeDate(value);
+                            long _id = upsertWeather(db, value, conditions, changedLocations);
+                            if (_id != -1) {
+                                returnCount++;
+                            }
                         }
+                        db.setTransactionSuccessful();
+                    } finally {
+                        db.endTransaction();
+                    }
+                    for (long locationId : changedLocations) {
+                        bumpVersion(locationId);
+                    }
+                    recorded = true;
+                    if (mStats.record(match, ProviderStats.OP_BULK_INSERT, startNanos, returnCount)
+                            && values.length > 0) {
+                        // Every row is upserted with the same columns, the first row stands
+                        // for them
+                        ArrayList<Object> args = new ArrayList<Object>();
+                        String sql = buildInsertSql(getTableName(match),
+                                getWrittenValues(match, values[0]), args);
+                        logSlowStatement(ProviderStats.OP_BULK_INSERT, match,
+                                sql + " x " + values.length + " rows", args.toArray(), startNanos);
                     }
-                    db.setTransactionSuccessful();
                 } finally {
-                    db.endTransaction();
+                    if (!recorded) {
+                        mStats.recordFailure(match, ProviderStats.OP_BULK_INSERT, startNanos);
+                    }
                 }
                 getContext().getContentResolver().notifyChange(uri, null);
                 return returnCount;
@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.metrics;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.os.Build;
+import android.view.Choreographer;
+import android.view.WindowManager;
+
+/**
+ * Times the frames of the forecast list while it scrolls, from Choreographer frame callbacks,
+ * and blames each long frame on the main thread work done during it: the scroll listeners,
+ * creating and binding rows, or images that had to be decoded rather than taken from the
+ * memory cache.  Frames are only watched while a list scrolls, so an idle app isn't woken up
+ * on every vsync.  Needs Choreographer, on older releases nothing is recorded.
+ *
+ * The work is marked on the main thread with {@link #beginWork()} and {@link #endWork}, which
+ * don't allocate.  The histograms can be read with {@link #dump()} from any thread.
+ */
+public class FrameMonitor {
+
+    // Timed main thread work, also causes of long frames
+    public static final int WORK_SCROLL = 0;
+    public static final int WORK_BIND = 1;
+    private static final int WORK_COUNT = 2;
+    // Long frames where decoded images arrived but no timed work explains them
+    public static final int CAUSE_DECODE = 2;
+    // Long frames nothing above explains
+    public static final int CAUSE_OTHER = 3;
+    private static final String[] CAUSE_NAMES = {"scroll", "bind", "decode", "other"};
+
+    private static final long DEFAULT_FRAME_INTERVAL_NANOS = 1000000000L / 60;
+
+    private static FrameMonitor sInstance;
+
+    private final long mFrameIntervalNanos;
+
+    // Every frame while scrolling
+    private final LatencyHistogram mFrames = new LatencyHistogram();
+    // Time spent in each kind of work, per frame it was done in
+    private final LatencyHistogram[] mWork = new LatencyHistogram[WORK_COUNT];
+    // Long frames and the frames they dropped, by cause
+    private final long[] mLongFrames = new long[CAUSE_OTHER + 1];
+    private final long[] mDroppedFrames = new long[CAUSE_OTHER + 1];
+    private long mDecodes;
+
+    // The frame in progress, main thread only
+    private boolean mMonitoring;
+    private long mLastFrameNanos;
+    private final long[] mFrameWorkNanos = new long[WORK_COUNT];
+    private int mFrameDecodes;
+
+    // A FrameCallbackCompat, only created where Choreographer exists
+    private Object mFrameCallback;
+
+    public static synchronized FrameMonitor getInstance(Context context) {
+        if (null == sInstance) {
+            WindowManager windowManager =
+                    (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+            float refreshRate = windowManager.getDefaultDisplay().getRefreshRate();
+            sInstance = new FrameMonitor(refreshRate > 0
+                    ? (long) (1000000000L / refreshRate) : DEFAULT_FRAME_INTERVAL_NANOS);
+        }
+        return sInstance;
+    }
+
+    FrameMonitor(long frameIntervalNanos) {
+        mFrameIntervalNanos = frameIntervalNanos;
+        for (int i = 0; i < WORK_COUNT; i++) {
+            mWork[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Starts watching frames when a list starts scrolling, and stops once it is idle again.
+     * Main thread only.
+     */
+    public void setScrolling(boolean scrolling) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN || scrolling == mMonitoring) {
+            return;
+        }
+        if (scrolling) {
+            beginFrames();
+            if (null == mFrameCallback) mFrameCallback = new FrameCallbackCompat(this);
+            ((FrameCallbackCompat) mFrameCallback).post();
+        } else {
+            // The callback already posted sees this and doesn't post again
+            mMonitoring = false;
+        }
+    }
+
+    /**
+     * @return a time to pass to {@link #endWork} once the work is done.
+     */
+    public static long beginWork() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Adds main thread work of WORK_SCROLL or WORK_BIND to the frame in progress.
+     */
+    public void endWork(int kind, long beginNanos) {
+        if (!mMonitoring) return;
+        mFrameWorkNanos[kind] += System.nanoTime() - beginNanos;
+    }
+
+    /**
+     * Counts an image shown in the frame in progress that had to be decoded.  The decode is on
+     * Glide's threads, but the new bitmap still has to be drawn and uploaded on ours.
+     */
+    public void onImageDecoded() {
+        if (!mMonitoring) return;
+        mFrameDecodes++;
+    }
+
+    // Main thread work marked since the previous frame callback happened in the frame that
+    // ends at this one.
+    void doFrame(long frameTimeNanos) {
+        if (0 != mLastFrameNanos) {
+            recordFrame(frameTimeNanos - mLastFrameNanos);
+        }
+        mLastFrameNanos = frameTimeNanos;
+        for (int i = 0; i < WORK_COUNT; i++) {
+            mFrameWorkNanos[i] = 0;
+        }
+        mFrameDecodes = 0;
+    }
+
+    void beginFrames() {
+        mMonitoring = true;
+        mLastFrameNanos = 0;
+    }
+
+    private void recordFrame(long durationNanos) {
+        mFrames.record(durationNanos);
+        if (mFrameDecodes > 0) {
+            synchronized (this) {
+                mDecodes += mFrameDecodes;
+            }
+        }
+        int cause = -1;
+        long causeNanos = 0;
+        for (int i = 0; i < WORK_COUNT; i++) {
+            if (mFrameWorkNanos[i] > 0) mWork[i].record(mFrameWorkNanos[i]);
+            if (mFrameWorkNanos[i] > causeNanos) {
+                cause = i;
+                causeNanos = mFrameWorkNanos[i];
+            }
+        }
+
+        // A frame is long once it missed a vsync, allowing for jitter
+        if (durationNanos * 2 < mFrameIntervalNanos * 3) return;
+        if (causeNanos * 4 < durationNanos) {
+            // Nothing measured took a good part of the frame
+            cause = mFrameDecodes > 0 ? CAUSE_DECODE : CAUSE_OTHER;
+        }
+        long dropped = (durationNanos + mFrameIntervalNanos / 2) / mFrameIntervalNanos - 1;
+        synchronized (this) {
+            mLongFrames[cause]++;
+            mDroppedFrames[cause] += dropped;
+        }
+    }
+
+    /**
+     * @return the number of long frames blamed on a WORK_* or CAUSE_* cause.
+     */
+    public synchronized long getLongFrames(int cause) {
+        return mLongFrames[cause];
+    }
+
+    /**
+     * @return every frame seen while scrolling.
+     */
+    public LatencyHistogram getFrames() {
+        return mFrames;
+    }
+
+    /**
+     * @return the frame time histogram, then the long frames and the frames they dropped by
+     * cause, then the decoded images and the time of each kind of work per frame.
+     */
+    public synchronized String dump() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("frames ").append(mFrames).append('\n');
+        sb.append("long frames");
+        for (int i = 0; i <= CAUSE_OTHER; i++) {
+            sb.append(' ').append(CAUSE_NAMES[i]).append('=').append(mLongFrames[i])
+                    .append(" (").append(mDroppedFrames[i]).append(" dropped)");
+        }
+        sb.append('\n');
+        sb.append("decoded images ").append(mDecodes).append('\n');
+        for (int i = 0; i < WORK_COUNT; i++) {
+            sb.append(CAUSE_NAMES[i]).append(" work ").append(mWork[i]).append('\n');
+        }
+        return sb.toString();
+    }
+
+    public synchronized void reset() {
+        mFrames.reset();
+        for (int i = 0; i < WORK_COUNT; i++) {
+            mWork[i].reset();
+        }
+        for (int i = 0; i <= CAUSE_OTHER; i++) {
+            mLongFrames[i] = 0;
+            mDroppedFrames[i] = 0;
+        }
+        mDecodes = 0;
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static final class FrameCallbackCompat implements Choreographer.FrameCallback {
+        private final FrameMonitor mMonitor;
+        private boolean mPosted;
+
+        FrameCallbackCompat(FrameMonitor monitor) {
+            mMonitor = monitor;
+        }
+
+        void post() {
+            if (mPosted) return;
+            mPosted = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mPosted = false;
+            if (!mMonitor.mMonitoring) return;
+            mMonitor.doFrame(frameTimeNanos);
+            post();
+        }
+    }
+}
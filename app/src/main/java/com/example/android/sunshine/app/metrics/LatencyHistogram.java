@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.metrics;
+
+/**
+ * A fixed-size, log2-bucketed latency histogram.
+ *
+ * Bucket 0 holds samples under one microsecond and bucket i holds samples in
+ * [2^(i-1), 2^i) microseconds, so 32 buckets cover everything up to ~35 minutes. Recording a
+ * sample never allocates, which makes this cheap enough to leave on in production builds.
+ */
+public class LatencyHistogram {
+    public static final int BUCKET_COUNT = 32;
+
+    private final long[] mBuckets = new long[BUCKET_COUNT];
+    private long mCount;
+    private long mTotalMicros;
+    private long mMaxMicros;
+
+    public synchronized void record(long elapsedNanos) {
+        long micros = elapsedNanos / 1000;
+        mBuckets[bucketFor(micros)]++;
+        mCount++;
+        mTotalMicros += micros;
+        if (micros > mMaxMicros) {
+            mMaxMicros = micros;
+        }
+    }
+
+    /**
+     * Adds all of {@code other}'s samples to this histogram, e.g. to combine per-thread
+     * histograms once the threads are done.
+     */
+    public void add(LatencyHistogram other) {
+        long[] buckets;
+        long count;
+        long totalMicros;
+        long maxMicros;
+        synchronized (other) {
+            buckets = other.mBuckets.clone();
+            count = other.mCount;
+            totalMicros = other.mTotalMicros;
+            maxMicros = other.mMaxMicros;
+        }
+        synchronized (this) {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                mBuckets[i] += buckets[i];
+            }
+            mCount += count;
+            mTotalMicros += totalMicros;
+            if (maxMicros > mMaxMicros) {
+                mMaxMicros = maxMicros;
+            }
+        }
+    }
+
+    public synchronized long getCount() {
+        return mCount;
+    }
+
+    public synchronized long getTotalMicros() {
+        return mTotalMicros;
+    }
+
+    public synchronized long getMaxMicros() {
+        return mMaxMicros;
+    }
+
+    public synchronized long getMeanMicros() {
+        return mCount == 0 ? 0 : mTotalMicros / mCount;
+    }
+
+    /**
+     * Returns an upper bound for the given percentile, i.e. the top of the first bucket at which
+     * the cumulative count reaches {@code percentile} of all samples.  The value is clamped to
+     * the largest sample seen, so a histogram with a single sample reports that sample exactly.
+     *
+     * @param percentile a value between 0 and 1, e.g. 0.99 for p99
+     * @return the percentile in microseconds, or 0 if nothing has been recorded
+     */
+    public synchronized long getPercentileMicros(double percentile) {
+        if (mCount == 0) {
+            return 0;
+        }
+        long threshold = (long) Math.ceil(mCount * percentile);
+        long cumulative = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            cumulative += mBuckets[i];
+            if (cumulative >= threshold && cumulative > 0) {
+                return Math.min(upperBoundMicros(i), mMaxMicros);
+            }
+        }
+        return mMaxMicros;
+    }
+
+    /**
+     * @return a copy of the raw bucket counts, see {@link #upperBoundMicros(int)} for the range
+     * each bucket covers.
+     */
+    public synchronized long[] getBuckets() {
+        return mBuckets.clone();
+    }
+
+    public synchronized void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mBuckets[i] = 0;
+        }
+        mCount = 0;
+        mTotalMicros = 0;
+        mMaxMicros = 0;
+    }
+
+    /**
+     * @return the exclusive upper bound, in microseconds, of the given bucket.
+     */
+    public static long upperBoundMicros(int bucket) {
+        return 1L << bucket;
+    }
+
+    static int bucketFor(long micros) {
+        if (micros <= 0) {
+            return 0;
+        }
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        return Math.min(bucket, BUCKET_COUNT - 1);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "count=" + mCount
+                + " mean=" + getMeanMicros() + "us"
+                + " p50=" + getPercentileMicros(0.5) + "us"
+                + " p99=" + getPercentileMicros(0.99) + "us"
+                + " max=" + mMaxMicros + "us";
+    }
+}
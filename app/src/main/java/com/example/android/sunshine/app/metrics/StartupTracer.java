@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.metrics;
+
+import java.util.ArrayList;
+
+/**
+ * Timings of the steps of a cold start, such as inflating the main layout or setting up the
+ * sync account, and of milestones such as the first frame and the first frame that shows a
+ * forecast.  Everything is relative to {@link #start()}, which MainActivity calls first thing
+ * in the process.
+ *
+ * A step is recorded when it ends, from any thread.  A milestone is only recorded the first
+ * time it is reached.
+ */
+public class StartupTracer {
+
+    public static final String FIRST_FRAME = "first_frame";
+    public static final String FIRST_FORECAST = "first_forecast";
+    // The first frame showing a forecast read from the database, rather than a snapshot
+    public static final String FIRST_LOADED_FORECAST = "first_loaded_forecast";
+
+    private static final StartupTracer sInstance = new StartupTracer();
+
+    private static final class Entry {
+        final String name;
+        final String thread;
+        // From start(), in microseconds
+        final long startMicros;
+        // -1 for milestones
+        final long durationMicros;
+
+        Entry(String name, String thread, long startMicros, long durationMicros) {
+            this.name = name;
+            this.thread = thread;
+            this.startMicros = startMicros;
+            this.durationMicros = durationMicros;
+        }
+    }
+
+    private long mStartNanos;
+    private boolean mStarted;
+    private final ArrayList<Entry> mEntries = new ArrayList<Entry>();
+
+    public static StartupTracer getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Starts the clock, only the first call in the process counts.
+     *
+     * @return whether this call started it, i.e. this is a cold start.
+     */
+    public synchronized boolean start() {
+        if (mStarted) return false;
+        mStarted = true;
+        mStartNanos = System.nanoTime();
+        return true;
+    }
+
+    /**
+     * @return a time to pass to {@link #endStep} once the step is done.
+     */
+    public static long beginStep() {
+        return System.nanoTime();
+    }
+
+    public synchronized void endStep(String name, long beginNanos) {
+        if (!mStarted) return;
+        long endNanos = System.nanoTime();
+        mEntries.add(new Entry(name, Thread.currentThread().getName(),
+                (beginNanos - mStartNanos) / 1000, (endNanos - beginNanos) / 1000));
+    }
+
+    /**
+     * Records that the start up got this far, unless it already had.
+     */
+    public synchronized void milestone(String name) {
+        if (!mStarted || getMilestoneMicros(name) >= 0) return;
+        mEntries.add(new Entry(name, Thread.currentThread().getName(),
+                (System.nanoTime() - mStartNanos) / 1000, -1));
+    }
+
+    /**
+     * @return microseconds from start() to the milestone, or -1 if it wasn't reached yet.
+     */
+    public synchronized long getMilestoneMicros(String name) {
+        for (int i = 0; i < mEntries.size(); i++) {
+            Entry entry = mEntries.get(i);
+            if (entry.durationMicros < 0 && entry.name.equals(name)) {
+                return entry.startMicros;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return microseconds the step took, or -1 if it didn't run yet.
+     */
+    public synchronized long getStepMicros(String name) {
+        for (int i = 0; i < mEntries.size(); i++) {
+            Entry entry = mEntries.get(i);
+            if (entry.durationMicros >= 0 && entry.name.equals(name)) {
+                return entry.durationMicros;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return one line per step and milestone, in the order they were recorded.
+     */
+    public synchronized String dump() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < mEntries.size(); i++) {
+            Entry entry = mEntries.get(i);
+            sb.append('+').append(entry.startMicros / 1000).append("ms ").append(entry.name);
+            if (entry.durationMicros >= 0) {
+                sb.append(' ').append(entry.durationMicros / 1000).append("ms");
+            }
+            sb.append(" [").append(entry.thread).append("]\n");
+        }
+        return sb.toString();
+    }
+}
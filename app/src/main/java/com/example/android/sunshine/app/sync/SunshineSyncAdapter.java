@@ -30,12 +30,16 @@ import android.text.format.Time;
 import android.util.Log;
 
 import com.bumptech.glide.Glide;
+import com.example.android.sunshine.app.ArtPreloader;
 import com.example.android.sunshine.app.BuildConfig;
+import com.example.android.sunshine.app.DisplayFormatter;
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.SettingsSnapshot;
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.muzei.WeatherMuzeiSource;
+import com.example.android.sunshine.shared.WeatherConditions;
 import com.google.android.gms.common.api.ResultCallback;
 import com.google.android.gms.wearable.DataApi;
 import com.google.android.gms.wearable.PutDataMapRequest;
@@ -349,6 +353,8 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                         WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
                         new String[] {Long.toString(dayTime.setJulianDay(julianStartDay-1))});
 
+                ArtPreloader.preloadForecastArt(getContext(),
+                        SettingsSnapshot.get(getContext()).artPackUrlFormat);
                 updateWidgets();
                 updateMuzei();
                 notifyWeather();
@@ -406,6 +412,12 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
             dataMap.getDataMap().putLong(WEATHER_DATA_ID, weatherId);
             PutDataRequest request = dataMap.asPutDataRequest();
 
+            // MainActivity builds the client once it is on screen, there is none before that
+            if (null == MainActivity.mGoogleApiClient) {
+                Log.d(LOG_TAG, "No GoogleApiClient yet, not sending to android wear");
+                cursor.close();
+                return;
+            }
             Log.d(LOG_TAG, "GoogleApiClient " + MainActivity.mGoogleApiClient.isConnected());
 
             Wearable.DataApi.putDataItem(MainActivity.mGoogleApiClient, request)
@@ -428,18 +440,16 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
         Context context = getContext();
         //checking the last update and notify if it' the first of the day
         SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-        String displayNotificationsKey = context.getString(R.string.pref_enable_notifications_key);
-        boolean displayNotifications = prefs.getBoolean(displayNotificationsKey,
-                Boolean.parseBoolean(context.getString(R.string.pref_enable_notifications_default)));
+        SettingsSnapshot settings = SettingsSnapshot.get(context);
 
-        if ( displayNotifications ) {
+        if ( settings.notificationsEnabled ) {
 
             String lastNotificationKey = context.getString(R.string.pref_last_notification);
             long lastSync = prefs.getLong(lastNotificationKey, 0);
 
             if (System.currentTimeMillis() - lastSync >= DAY_IN_MILLIS) {
                 // Last sync was more than 1 day ago, let's send a notification with the weather.
-                String locationQuery = Utility.getPreferredLocation(context);
+                String locationQuery = settings.location;
 
                 Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
 
@@ -455,7 +465,8 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                     int iconId = Utility.getIconResourceForWeatherCondition(weatherId);
                     Resources resources = context.getResources();
                     int artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
-                    String artUrl = Utility.getArtUrlForWeatherCondition(context, weatherId);
+                    String artUrl = WeatherConditions.getArtUrl(settings.artPackUrlFormat,
+                            weatherId);
 
                     // On Honeycomb and higher devices, we can retrieve the size of the large icon
                     // Prior to that, we use a fixed size
@@ -484,10 +495,11 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                     String title = context.getString(R.string.app_name);
 
                     // Define the text of the forecast.
+                    DisplayFormatter formatter = DisplayFormatter.getInstance(context);
                     String contentText = String.format(context.getString(R.string.format_notification),
                             desc,
-                            Utility.formatTemperature(context, high),
-                            Utility.formatTemperature(context, low));
+                            formatter.formatTemperature(high),
+                            formatter.formatTemperature(low));
 
                     // NotificationCompatBuilder is a very convenient way to build backward-compatible
                     // notifications.  Just throw in some data.
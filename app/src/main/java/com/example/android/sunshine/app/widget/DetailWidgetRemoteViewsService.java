@@ -3,22 +3,19 @@ package com.example.android.sunshine.app.widget;
 import android.annotation.TargetApi;
 import android.content.Intent;
 import android.database.Cursor;
-import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Binder;
 import android.os.Build;
-import android.util.Log;
 import android.widget.AdapterView;
 import android.widget.RemoteViews;
 import android.widget.RemoteViewsService;
 
-import com.bumptech.glide.Glide;
-import com.bumptech.glide.request.target.Target;
+import com.example.android.sunshine.app.DisplayFormatter;
 import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.SettingsSnapshot;
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
-
-import java.util.concurrent.ExecutionException;
+import com.example.android.sunshine.shared.WeatherConditions;
 
 /**
  * RemoteViewsService controlling the data being shown in the scrollable weather detail widget
@@ -45,7 +42,15 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
     @Override
     public RemoteViewsFactory onGetViewFactory(Intent intent) {
         return new RemoteViewsFactory() {
-            private Cursor data = null;
+            // The rows as last read and built, and what they were read for.  The launcher asks
+            // for the data again on every widget update, and most follow syncs that didn't change
+            // the forecast, so the query only runs again once the provider's data version for
+            // the location moves, or the settings or the day do.
+            private Row[] rows = new Row[0];
+            private String location = null;
+            private long dataVersion = -1;
+            private int settingsVersion = -1;
+            private long today = -1;
 
             @Override
             public void onCreate() {
@@ -54,74 +59,132 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
 
             @Override
             public void onDataSetChanged() {
-                if (data != null) {
-                    data.close();
-                }
                 // This method is called by the app hosting the widget (e.g., the launcher)
                 // However, our ContentProvider is not exported so it doesn't have access to the
                 // data. Therefore we need to clear (and finally restore) the calling identity so
                 // that calls use our process and permission
                 final long identityToken = Binder.clearCallingIdentity();
-                String location = Utility.getPreferredLocation(DetailWidgetRemoteViewsService.this);
+                try {
+                    refresh();
+                } finally {
+                    Binder.restoreCallingIdentity(identityToken);
+                }
+            }
+
+            private void refresh() {
+                SettingsSnapshot settings =
+                        SettingsSnapshot.get(DetailWidgetRemoteViewsService.this);
+                long now = System.currentTimeMillis();
+                long day = WeatherContract.normalizeDate(now);
+                // Read before the rows, so that a change made in between is seen next time
+                long version = queryDataVersion(settings.location);
+                boolean rebuild = settings.version != settingsVersion || day != today;
+                if (!rebuild && version != -1 && version == dataVersion) {
+                    return;
+                }
+
                 Uri weatherForLocationUri = WeatherContract.WeatherEntry
-                        .buildWeatherLocationWithStartDate(location, System.currentTimeMillis());
-                data = getContentResolver().query(weatherForLocationUri,
+                        .buildWeatherLocationWithStartDate(settings.location, now);
+                Cursor data = getContentResolver().query(weatherForLocationUri,
                         FORECAST_COLUMNS,
                         null,
                         null,
                         WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
-                Binder.restoreCallingIdentity(identityToken);
+                if (data == null) {
+                    return;
+                }
+                Row[] newRows;
+                try {
+                    newRows = new Row[data.getCount()];
+                    for (int i = 0; data.moveToNext(); i++) {
+                        newRows[i] = new Row(data);
+                    }
+                } finally {
+                    data.close();
+                }
+                if (!rebuild) {
+                    // Unchanged rows keep the views already built for them
+                    for (Row newRow : newRows) {
+                        for (Row row : rows) {
+                            if (newRow.hasSameData(row)) {
+                                newRow.views = row.views;
+                                break;
+                            }
+                        }
+                    }
+                }
+                rows = newRows;
+                location = settings.location;
+                dataVersion = version;
+                settingsVersion = settings.version;
+                today = day;
+            }
+
+            // Returns -1 when the provider can't say, and then the rows are always read again
+            private long queryDataVersion(String locationSetting) {
+                Cursor cursor = getContentResolver().query(
+                        WeatherContract.DataVersionEntry.buildDataVersionUri(locationSetting),
+                        null, null, null, null);
+                if (cursor == null) {
+                    return -1;
+                }
+                try {
+                    return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+                } finally {
+                    cursor.close();
+                }
             }
 
             @Override
             public void onDestroy() {
-                if (data != null) {
-                    data.close();
-                    data = null;
-                }
+                rows = new Row[0];
             }
 
             @Override
             public int getCount() {
-                return data == null ? 0 : data.getCount();
+                return rows.length;
             }
 
             @Override
             public RemoteViews getViewAt(int position) {
-                if (position == AdapterView.INVALID_POSITION ||
-                        data == null || !data.moveToPosition(position)) {
+                Row[] rows = this.rows;
+                if (position == AdapterView.INVALID_POSITION || position >= rows.length) {
                     return null;
                 }
+                Row row = rows[position];
+                if (null == row.views) {
+                    row.views = buildViews(row);
+                }
+                return row.views;
+            }
+
+            private RemoteViews buildViews(Row row) {
                 RemoteViews views = new RemoteViews(getPackageName(),
                         R.layout.widget_detail_list_item);
-                int weatherId = data.getInt(INDEX_WEATHER_CONDITION_ID);
+                int weatherId = row.weatherId;
                 int weatherArtResourceId = Utility.getIconResourceForWeatherCondition(weatherId);
-                Bitmap weatherArtImage = null;
-                if ( !Utility.usingLocalGraphics(DetailWidgetRemoteViewsService.this) ) {
-                    String weatherArtResourceUrl = Utility.getArtUrlForWeatherCondition(
-                            DetailWidgetRemoteViewsService.this, weatherId);
-                    try {
-                        weatherArtImage = Glide.with(DetailWidgetRemoteViewsService.this)
-                                .load(weatherArtResourceUrl)
-                                .asBitmap()
-                                .error(weatherArtResourceId)
-                                .into(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL).get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        Log.e(LOG_TAG, "Error retrieving large icon from " + weatherArtResourceUrl, e);
+                Uri weatherArtUri = null;
+                SettingsSnapshot settings =
+                        SettingsSnapshot.get(DetailWidgetRemoteViewsService.this);
+                if ( !settings.localGraphics ) {
+                    String weatherArtResourceUrl = WeatherConditions.getArtUrl(
+                            settings.artPackUrlFormat, weatherId);
+                    if (null != weatherArtResourceUrl) {
+                        // Shared with the other rows of this condition, the launcher reads it
+                        weatherArtUri = WidgetArtCache.getInstance(
+                                DetailWidgetRemoteViewsService.this)
+                                .getArtUri(weatherArtResourceUrl);
                     }
                 }
-                String description = data.getString(INDEX_WEATHER_DESC);
-                long dateInMillis = data.getLong(INDEX_WEATHER_DATE);
-                String formattedDate = Utility.getFriendlyDayString(
-                        DetailWidgetRemoteViewsService.this, dateInMillis, false);
-                double maxTemp = data.getDouble(INDEX_WEATHER_MAX_TEMP);
-                double minTemp = data.getDouble(INDEX_WEATHER_MIN_TEMP);
-                String formattedMaxTemperature =
-                        Utility.formatTemperature(DetailWidgetRemoteViewsService.this, maxTemp);
-                String formattedMinTemperature =
-                        Utility.formatTemperature(DetailWidgetRemoteViewsService.this, minTemp);
-                if (weatherArtImage != null) {
-                    views.setImageViewBitmap(R.id.widget_icon, weatherArtImage);
+                String description = row.description;
+                long dateInMillis = row.date;
+                DisplayFormatter formatter =
+                        DisplayFormatter.getInstance(DetailWidgetRemoteViewsService.this);
+                String formattedDate = formatter.getFriendlyDayString(dateInMillis, false);
+                String formattedMaxTemperature = formatter.formatTemperature(row.maxTemp);
+                String formattedMinTemperature = formatter.formatTemperature(row.minTemp);
+                if (weatherArtUri != null) {
+                    views.setImageViewUri(R.id.widget_icon, weatherArtUri);
                 } else {
                     views.setImageViewResource(R.id.widget_icon, weatherArtResourceId);
                 }
@@ -134,10 +197,8 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                 views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
 
                 final Intent fillInIntent = new Intent();
-                String locationSetting =
-                        Utility.getPreferredLocation(DetailWidgetRemoteViewsService.this);
                 Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
-                        locationSetting,
+                        location,
                         dateInMillis);
                 fillInIntent.setData(weatherUri);
                 views.setOnClickFillInIntent(R.id.widget_list_item, fillInIntent);
@@ -161,8 +222,9 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
 
             @Override
             public long getItemId(int position) {
-                if (data.moveToPosition(position))
-                    return data.getLong(INDEX_WEATHER_ID);
+                Row[] rows = this.rows;
+                if (position >= 0 && position < rows.length)
+                    return rows[position].id;
                 return position;
             }
 
@@ -172,4 +234,33 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
             }
         };
     }
+
+    /**
+     * A forecast row copied out of the cursor, and its views once they're built.
+     */
+    private static final class Row {
+        final long id;
+        final long date;
+        final int weatherId;
+        final String description;
+        final double maxTemp;
+        final double minTemp;
+        RemoteViews views;
+
+        Row(Cursor data) {
+            id = data.getLong(INDEX_WEATHER_ID);
+            date = data.getLong(INDEX_WEATHER_DATE);
+            weatherId = data.getInt(INDEX_WEATHER_CONDITION_ID);
+            description = data.getString(INDEX_WEATHER_DESC);
+            maxTemp = data.getDouble(INDEX_WEATHER_MAX_TEMP);
+            minTemp = data.getDouble(INDEX_WEATHER_MIN_TEMP);
+        }
+
+        boolean hasSameData(Row other) {
+            return id == other.id && date == other.date && weatherId == other.weatherId
+                    && maxTemp == other.maxTemp && minTemp == other.minTemp
+                    && (description == null
+                            ? other.description == null : description.equals(other.description));
+        }
+    }
 }
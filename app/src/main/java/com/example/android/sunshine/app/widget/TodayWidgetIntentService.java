@@ -25,17 +25,29 @@ import android.database.Cursor;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.util.DisplayMetrics;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
 import android.util.TypedValue;
 import android.widget.RemoteViews;
 
+import com.example.android.sunshine.app.DisplayFormatter;
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
 
+import java.util.Arrays;
+import java.util.List;
+
 /**
  * IntentService which handles updating all Today widgets with the latest data
+ *
+ * Requests come in bursts, a sync followed by a settings change say, so a pass waits until
+ * there has been no new request for {@link #DEBOUNCE_MILLIS} and covers every request made
+ * before it read the data.  The RemoteViews are built once per layout, and a widget is only
+ * updated when what its layout would show differs from what it was last sent.
  */
 public class TodayWidgetIntentService extends IntentService {
     private static final String[] FORECAST_COLUMNS = {
@@ -50,12 +62,57 @@ public class TodayWidgetIntentService extends IntentService {
     private static final int INDEX_MAX_TEMP = 2;
     private static final int INDEX_MIN_TEMP = 3;
 
+    private static final long DEBOUNCE_MILLIS = 500;
+
+    /**
+     * Boolean extra, set when the widgets must be redrawn even if their content is the same,
+     * such as when the host asks for an update.
+     */
+    static final String EXTRA_FORCE_UPDATE = "force_update";
+    private static final String EXTRA_REQUESTED_AT = "requested_at";
+
+    // Guarded by the class, requests are recorded on the main thread
+    private static long sLastRequestMillis;
+    private static long sLastPassMillis;
+    private static boolean sForcePending;
+    // What each widget was last sent, by widget id: the layout and the values it shows.
+    // Worker thread only.
+    private static SparseArray<List<Object>> sContents = new SparseArray<List<Object>>();
+
     public TodayWidgetIntentService() {
         super("TodayWidgetIntentService");
     }
 
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        if (null != intent) {
+            synchronized (TodayWidgetIntentService.class) {
+                sLastRequestMillis = SystemClock.elapsedRealtime();
+                sForcePending |= intent.getBooleanExtra(EXTRA_FORCE_UPDATE, false);
+                intent.putExtra(EXTRA_REQUESTED_AT, sLastRequestMillis);
+            }
+        }
+        return super.onStartCommand(intent, flags, startId);
+    }
+
     @Override
     protected void onHandleIntent(Intent intent) {
+        boolean force;
+        long passMillis;
+        synchronized (TodayWidgetIntentService.class) {
+            // A pass that started after this request read newer data than it asked for
+            if (intent.getLongExtra(EXTRA_REQUESTED_AT, 0) < sLastPassMillis) return;
+        }
+        long wait;
+        while ((wait = getDebounceWait()) > 0) {
+            SystemClock.sleep(wait);
+        }
+        synchronized (TodayWidgetIntentService.class) {
+            passMillis = sLastPassMillis = SystemClock.elapsedRealtime();
+            // Only cleared once the views are pushed, a pass that finds no data leaves it
+            force = sForcePending;
+        }
+
         // Retrieve all of the Today widget ids: these are the widgets we need to update
         AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(this);
         int[] appWidgetIds = appWidgetManager.getAppWidgetIds(new ComponentName(this,
@@ -64,7 +121,7 @@ public class TodayWidgetIntentService extends IntentService {
         // Get today's data from the ContentProvider
         String location = Utility.getPreferredLocation(this);
         Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
-                location, System.currentTimeMillis());
+                location, System.currentTimeMillis(), 1);
         Cursor data = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
                 null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
         if (data == null) {
@@ -81,16 +138,20 @@ public class TodayWidgetIntentService extends IntentService {
         String description = data.getString(INDEX_SHORT_DESC);
         double maxTemp = data.getDouble(INDEX_MAX_TEMP);
         double minTemp = data.getDouble(INDEX_MIN_TEMP);
-        String formattedMaxTemperature = Utility.formatTemperature(this, maxTemp);
-        String formattedMinTemperature = Utility.formatTemperature(this, minTemp);
+        DisplayFormatter formatter = DisplayFormatter.getInstance(this);
+        String formattedMaxTemperature = formatter.formatTemperature(maxTemp);
+        String formattedMinTemperature = formatter.formatTemperature(minTemp);
         data.close();
 
-        // Perform this loop procedure for each Today widget
+        // Sort the widgets by the layout their width calls for
+        int defaultWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
+        int largeWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_large_width);
+        SparseArray<int[]> idsByLayout = new SparseArray<int[]>();
+        SparseIntArray countsByLayout = new SparseIntArray();
+        SparseArray<List<Object>> contents = new SparseArray<List<Object>>();
         for (int appWidgetId : appWidgetIds) {
             // Find the correct layout based on the widget's width
             int widgetWidth = getWidgetWidth(appWidgetManager, appWidgetId);
-            int defaultWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
-            int largeWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_large_width);
             int layoutId;
             if (widgetWidth >= largeWidth) {
                 layoutId = R.layout.widget_today_large;
@@ -99,6 +160,29 @@ public class TodayWidgetIntentService extends IntentService {
             } else {
                 layoutId = R.layout.widget_today_small;
             }
+
+            List<Object> content = Arrays.<Object>asList(layoutId, weatherArtResourceId,
+                    description, formattedMaxTemperature, formattedMinTemperature);
+            contents.put(appWidgetId, content);
+            // Unchanged widgets keep what they show, unless they must be redrawn
+            if (!force && content.equals(sContents.get(appWidgetId))) {
+                continue;
+            }
+            int[] ids = idsByLayout.get(layoutId);
+            if (null == ids) {
+                ids = new int[appWidgetIds.length];
+                idsByLayout.put(layoutId, ids);
+            }
+            int count = countsByLayout.get(layoutId);
+            ids[count] = appWidgetId;
+            countsByLayout.put(layoutId, count + 1);
+        }
+        // Widgets that were removed are dropped here
+        sContents = contents;
+
+        // One RemoteViews per layout, shared by all the widgets that use it
+        for (int i = 0; i < idsByLayout.size(); i++) {
+            int layoutId = idsByLayout.keyAt(i);
             RemoteViews views = new RemoteViews(getPackageName(), layoutId);
 
             // Add the data to the RemoteViews
@@ -116,11 +200,24 @@ public class TodayWidgetIntentService extends IntentService {
             PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, launchIntent, 0);
             views.setOnClickPendingIntent(R.id.widget, pendingIntent);
 
-            // Tell the AppWidgetManager to perform an update on the current app widget
-            appWidgetManager.updateAppWidget(appWidgetId, views);
+            // Tell the AppWidgetManager to perform an update on these app widgets
+            appWidgetManager.updateAppWidget(
+                    Arrays.copyOf(idsByLayout.valueAt(i), countsByLayout.get(layoutId)), views);
+        }
+
+        synchronized (TodayWidgetIntentService.class) {
+            // A force asked for during this pass waits for the pass its request starts
+            if (force && sLastRequestMillis < passMillis) {
+                sForcePending = false;
+            }
         }
     }
 
+    // How long until DEBOUNCE_MILLIS have passed without a new request
+    private static synchronized long getDebounceWait() {
+        return sLastRequestMillis + DEBOUNCE_MILLIS - SystemClock.elapsedRealtime();
+    }
+
     private int getWidgetWidth(AppWidgetManager appWidgetManager, int appWidgetId) {
         // Prior to Jelly Bean, widgets were always their default size
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
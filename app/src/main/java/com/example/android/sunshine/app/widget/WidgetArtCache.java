@@ -0,0 +1,148 @@
+package com.example.android.sunshine.app.widget;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.request.FutureTarget;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.shared.WeatherConditions;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Art for the widgets, rendered once per image at the widget icon's size into a PNG in the
+ * app's cache directory, and handed to the launcher as a {@link WidgetArtProvider} uri.  Rows
+ * only carry the uri, the launcher reads and decodes the file itself when it draws them.
+ * Rows with the same condition share one file, so a data set change only renders art it
+ * hasn't seen yet.
+ */
+class WidgetArtCache {
+    private static final String LOG_TAG = WidgetArtCache.class.getSimpleName();
+
+    static final String DIRECTORY = "widget_art";
+
+    private static WidgetArtCache sInstance;
+
+    private final Context mContext;
+    private final int mIconSize;
+    private final File mDirectory;
+    // Enough for the art of two packs, past that the oldest files go
+    private final int mMaxFiles;
+
+    static synchronized WidgetArtCache getInstance(Context context) {
+        if (null == sInstance) {
+            sInstance = new WidgetArtCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private WidgetArtCache(Context context) {
+        mContext = context;
+        mIconSize = context.getResources().getDimensionPixelSize(R.dimen.list_icon);
+        mDirectory = new File(context.getCacheDir(), DIRECTORY);
+        mMaxFiles = 2 * WeatherConditions.getArtworkCount();
+    }
+
+    /**
+     * @return a uri the launcher can read the art at the widget icon's size from, or null if
+     * it can't be loaded.  Blocks on the download and decode the first time, don't call it on
+     * the main thread.
+     */
+    Uri getArtUri(String artUrl) {
+        String name = getFileName(artUrl, mIconSize);
+        File file = new File(mDirectory, name);
+        if (!file.exists() && !render(artUrl, file)) return null;
+        return WidgetArtProvider.buildArtUri(mContext, name);
+    }
+
+    /**
+     * Names the file after a SHA-1 of the url, so two images can't end up sharing a file the
+     * way they could with a 32 bit hash.  The icon size is part of the name too, it changes
+     * with the density.
+     */
+    static String getFileName(String artUrl, int iconSize) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android release has SHA-1
+            throw new IllegalStateException(e);
+        }
+        byte[] hash = digest.digest(artUrl.getBytes(Charset.forName("UTF-8")));
+        StringBuilder name = new StringBuilder(2 * hash.length + 12);
+        for (byte b : hash) {
+            name.append(Character.forDigit((b >> 4) & 0xf, 16))
+                    .append(Character.forDigit(b & 0xf, 16));
+        }
+        return name.append('_').append(iconSize).append(".png").toString();
+    }
+
+    private synchronized boolean render(String artUrl, File file) {
+        // Another row may have just rendered it
+        if (file.exists()) return true;
+
+        Bitmap art = null;
+        // Read from the original ArtPreloader downloaded, when it did
+        FutureTarget<Bitmap> future = Glide.with(mContext)
+                .load(artUrl)
+                .asBitmap()
+                .diskCacheStrategy(DiskCacheStrategy.ALL)
+                .fitCenter()
+                .into(mIconSize, mIconSize);
+        try {
+            art = future.get();
+            if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+                Log.e(LOG_TAG, "Can't create " + mDirectory);
+                return false;
+            }
+            // Written aside and renamed, the launcher may be reading the name
+            File temp = new File(mDirectory, file.getName() + ".tmp");
+            FileOutputStream out = new FileOutputStream(temp);
+            try {
+                art.compress(Bitmap.CompressFormat.PNG, 100, out);
+            } finally {
+                out.close();
+            }
+            if (!temp.renameTo(file)) {
+                temp.delete();
+                return false;
+            }
+        } catch (InterruptedException | ExecutionException | IOException e) {
+            Log.e(LOG_TAG, "Error rendering widget art from " + artUrl, e);
+            return false;
+        } finally {
+            Glide.clear(future);
+        }
+        trim();
+        return true;
+    }
+
+    // Deletes the least recently written files past mMaxFiles, left by old packs and densities
+    private void trim() {
+        File[] files = mDirectory.listFiles();
+        if (null == files || files.length <= mMaxFiles) return;
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long l = lhs.lastModified();
+                long r = rhs.lastModified();
+                return l < r ? -1 : (l == r ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < files.length - mMaxFiles; i++) {
+            files[i].delete();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.android.sunshine.app.widget;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+
+import com.example.android.sunshine.app.R;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+
+/**
+ * Serves the PNGs {@link WidgetArtCache} renders, read only, so that widget rows can point the
+ * launcher at their art instead of sending it the bitmap.  Exported because the launcher reads
+ * them from its own process.  It only opens files that are already in the cache directory, it
+ * never loads art on a caller's behalf.
+ */
+public class WidgetArtProvider extends ContentProvider {
+
+    private static final String MIME_TYPE = "image/png";
+
+    private File mDirectory;
+
+    static Uri buildArtUri(Context context, String name) {
+        return new Uri.Builder().scheme("content")
+                .authority(context.getString(R.string.widget_art_authority))
+                .appendPath(name).build();
+    }
+
+    @Override
+    public boolean onCreate() {
+        mDirectory = new File(getContext().getCacheDir(), WidgetArtCache.DIRECTORY);
+        return true;
+    }
+
+    @Override
+    public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+        if (!"r".equals(mode)) {
+            throw new SecurityException("Widget art is read only: " + uri);
+        }
+        // Only plain names directly in the directory
+        String name = uri.getLastPathSegment();
+        if (uri.getPathSegments().size() != 1 || null == name || name.startsWith(".")
+                || name.indexOf('/') >= 0 || !name.endsWith(".png")) {
+            throw new FileNotFoundException("No widget art at " + uri);
+        }
+        return ParcelFileDescriptor.open(new File(mDirectory, name),
+                ParcelFileDescriptor.MODE_READ_ONLY);
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        return MIME_TYPE;
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                        String sortOrder) {
+        return null;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        throw new UnsupportedOperationException("Widget art is read only: " + uri);
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Widget art is read only: " + uri);
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Widget art is read only: " + uri);
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+
+/*
+    Reads a table's b-tree straight out of a closed SQLite database file and records the page
+    every row is stored on, so benchmarks can count the pages a query really touches rather
+    than guess them.  Android's SQLite has no dbstat table and no way to count page reads.
+
+    Only what the weather table needs is read, see https://www.sqlite.org/fileformat2.html:
+    rowid tables are keyed by rowid, WITHOUT ROWID tables by an integer column of their
+    records.  Records are short enough that the columns read never spill to overflow pages.
+ */
+class BtreePages {
+    private static final int TABLE_INTERIOR = 5;
+    private static final int TABLE_LEAF = 13;
+    private static final int INDEX_INTERIOR = 2;
+    private static final int INDEX_LEAF = 10;
+
+    private final RandomAccessFile mFile;
+    private final int mPageSize;
+    private final byte[] mPage;
+    private int mPos;
+
+    private final HashMap<Long, Integer> mPages = new HashMap<Long, Integer>();
+    private int mInteriorPages;
+    private int mDepth;
+
+    private BtreePages(File file) throws IOException {
+        mFile = new RandomAccessFile(file, "r");
+        byte[] header = new byte[100];
+        mFile.readFully(header);
+        int pageSize = ((header[16] & 0xff) << 8) | (header[17] & 0xff);
+        mPageSize = pageSize == 1 ? 65536 : pageSize;
+        mPage = new byte[mPageSize];
+    }
+
+    /**
+     * @param rootPage  the table's root page, from sqlite_master
+     * @param keyColumn for a WITHOUT ROWID table, the position in its records of the integer
+     *                  column to key rows by, i.e. after the primary key columns.  -1 for a
+     *                  rowid table, whose rows are keyed by rowid.
+     */
+    static BtreePages read(File file, int rootPage, int keyColumn) throws IOException {
+        BtreePages pages = new BtreePages(file);
+        try {
+            pages.readPage(rootPage, keyColumn, 1);
+        } finally {
+            pages.mFile.close();
+        }
+        return pages;
+    }
+
+    /**
+     * @return the page the row with {@code key} is stored on, or -1 if there's no such row.
+     */
+    int getPage(long key) {
+        Integer page = mPages.get(key);
+        return null == page ? -1 : page;
+    }
+
+    int getRowCount() {
+        return mPages.size();
+    }
+
+    int getInteriorPages() {
+        return mInteriorPages;
+    }
+
+    /**
+     * @return the number of pages from the root to a leaf, both included.
+     */
+    int getDepth() {
+        return mDepth;
+    }
+
+    private void readPage(int page, int keyColumn, int depth) throws IOException {
+        mFile.seek((long) (page - 1) * mPageSize);
+        mFile.readFully(mPage);
+        // The first page starts with the file header
+        int header = page == 1 ? 100 : 0;
+        int type = mPage[header] & 0xff;
+        int cells = readShort(header + 3);
+        boolean interior = type == TABLE_INTERIOR || type == INDEX_INTERIOR;
+        if (!interior && type != TABLE_LEAF && type != INDEX_LEAF) {
+            throw new IOException("Page " + page + " isn't a b-tree page: " + type);
+        }
+        mDepth = Math.max(mDepth, depth);
+        if (interior) {
+            mInteriorPages++;
+        }
+
+        int[] children = new int[interior ? cells + 1 : 0];
+        for (int i = 0; i < cells; i++) {
+            mPos = readShort(header + (interior ? 12 : 8) + 2 * i);
+            if (interior) {
+                children[i] = readInt(mPos);
+                mPos += 4;
+            }
+            if (type == TABLE_LEAF) {
+                readVarint(); // payload size
+                mPages.put(readVarint(), page);
+            } else if (type == INDEX_LEAF || type == INDEX_INTERIOR) {
+                // Index b-trees keep whole records on interior pages too
+                readVarint(); // payload size
+                mPages.put(readRecordInteger(keyColumn), page);
+            }
+        }
+        if (interior) {
+            children[cells] = readInt(header + 8);
+            // mPage is overwritten by each child, so the children were collected first
+            for (int child : children) {
+                readPage(child, keyColumn, depth + 1);
+            }
+        }
+    }
+
+    private long readRecordInteger(int column) throws IOException {
+        int recordStart = mPos;
+        long headerSize = readVarint();
+        long offset = recordStart + headerSize;
+        long serialType = 0;
+        for (int i = 0; i <= column; i++) {
+            if (i > 0) {
+                offset += getContentSize(serialType);
+            }
+            serialType = readVarint();
+        }
+        int size = (int) getContentSize(serialType);
+        if (serialType == 8 || serialType == 9) {
+            return serialType - 8;
+        }
+        if (serialType < 1 || serialType > 6) {
+            throw new IOException("Column " + column + " isn't an integer: " + serialType);
+        }
+        long value = mPage[(int) offset]; // sign extended
+        for (int i = 1; i < size; i++) {
+            value = (value << 8) | (mPage[(int) offset + i] & 0xff);
+        }
+        return value;
+    }
+
+    private static long getContentSize(long serialType) {
+        switch ((int) Math.min(serialType, 12)) {
+            case 0: case 8: case 9: return 0;
+            case 1: return 1;
+            case 2: return 2;
+            case 3: return 3;
+            case 4: return 4;
+            case 5: return 6;
+            case 6: case 7: return 8;
+            default: return (serialType - 12) / 2; // blobs and strings
+        }
+    }
+
+    private long readVarint() {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            int b = mPage[mPos++] & 0xff;
+            value = (value << 7) | (b & 0x7f);
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        return (value << 8) | (mPage[mPos++] & 0xff);
+    }
+
+    private int readShort(int offset) {
+        return ((mPage[offset] & 0xff) << 8) | (mPage[offset + 1] & 0xff);
+    }
+
+    private int readInt(int offset) {
+        return (readShort(offset) << 16) | readShort(offset + 2);
+    }
+}
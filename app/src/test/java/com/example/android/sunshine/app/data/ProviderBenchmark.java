@@ -0,0 +1,360 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.text.format.DateUtils;
+
+import com.example.android.sunshine.app.BuildConfig;
+import com.example.android.sunshine.app.data.WeatherContract.DiagnosticsEntry;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.app.metrics.LatencyHistogram;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/*
+    Stress and throughput benchmark for the WeatherProvider.  Each test preloads LOCATIONS x DAYS
+    rows of synthetic weather, then drives READERS concurrent reader threads through one
+    UriMatcher route while a writer thread keeps running bulkInsert/delete against the same
+    tables.  Throughput, p50/p99 latency and bytes allocated per call are printed for the
+    readers and for the writer.
+
+    This runs on the JVM under Robolectric, so no device is needed:
+
+        ./gradlew :app:testDebugUnitTest --tests '*ProviderBenchmark*' -Psunshine.benchmark.run=true -i
+
+    Without sunshine.benchmark.run it is skipped, so ordinary unit test runs stay fast.
+    Sizes can be overridden with -Psunshine.benchmark.locations=5000 and friends, see
+    app/build.gradle.  Robolectric's SQLite runs natively, but it funnels every connection
+    through one thread, so treat the numbers as a relative baseline between changes rather than
+    what a device would do.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class ProviderBenchmark {
+
+    private static final int LOCATIONS = Integer.getInteger("sunshine.benchmark.locations", 2000);
+    private static final int DAYS = Integer.getInteger("sunshine.benchmark.days", 14);
+    private static final int READERS = Integer.getInteger("sunshine.benchmark.readers", 4);
+    private static final long DURATION_MS = Long.getLong("sunshine.benchmark.durationMs", 3000L);
+
+    private static final long START_DATE = WeatherContract.normalizeDate(1419033600000L);
+
+    private WeatherProvider mProvider;
+    private long[] mLocationIds;
+    private String[] mLocationSettings;
+
+    /**
+     * One call against the provider.  Implementations pick their arguments from {@code random}
+     * so that every reader walks a different part of the data set.
+     */
+    private interface Operation {
+        int run(Random random);
+    }
+
+    /**
+     * Latency, allocation and row tally for one thread.
+     */
+    private static class ThreadResult {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        long allocatedBytes;
+        long rows;
+    }
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue("Benchmarks only run with -Psunshine.benchmark.run=true",
+                Boolean.getBoolean("sunshine.benchmark.run"));
+        mProvider = Robolectric.setupContentProvider(
+                WeatherProvider.class, WeatherContract.CONTENT_AUTHORITY);
+        mLocationIds = new long[LOCATIONS];
+        mLocationSettings = new String[LOCATIONS];
+
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < LOCATIONS; i++) {
+            mLocationSettings[i] = String.format("%05d", i);
+            ContentValues location = new ContentValues();
+            location.put(LocationEntry.COLUMN_LOCATION_SETTING, mLocationSettings[i]);
+            location.put(LocationEntry.COLUMN_CITY_NAME, "City " + i);
+            location.put(LocationEntry.COLUMN_COORD_LAT, (i % 180) - 90.0);
+            location.put(LocationEntry.COLUMN_COORD_LONG, (i % 360) - 180.0);
+            Uri uri = mProvider.insert(LocationEntry.CONTENT_URI, location);
+            mLocationIds[i] = ContentUris.parseId(uri);
+            mProvider.bulkInsert(WeatherEntry.CONTENT_URI, createWeatherValues(mLocationIds[i], 0));
+        }
+        System.out.println(String.format("ProviderBenchmark: preloaded %d locations x %d days in %dms",
+                LOCATIONS, DAYS, (System.nanoTime() - startNanos) / 1000000L));
+
+        // Only measure what the benchmark itself does from here on.
+        mProvider.delete(DiagnosticsEntry.CONTENT_URI, null, null);
+    }
+
+    @After
+    public void tearDown() {
+        // Not set up when the benchmark was skipped
+        if (null != mProvider) {
+            mProvider.shutdown();
+        }
+    }
+
+    @Test
+    public void benchmarkWeather() throws Exception {
+        run("weather", new Operation() {
+            @Override
+            public int run(Random random) {
+                int location = random.nextInt(LOCATIONS);
+                return query(WeatherEntry.CONTENT_URI,
+                        WeatherEntry.COLUMN_LOC_KEY + " = ?",
+                        new String[]{Long.toString(mLocationIds[location])});
+            }
+        });
+    }
+
+    @Test
+    public void benchmarkWeatherWithLocation() throws Exception {
+        run("weather/*", new Operation() {
+            @Override
+            public int run(Random random) {
+                int location = random.nextInt(LOCATIONS);
+                return query(WeatherEntry.buildWeatherLocationWithStartDate(
+                        mLocationSettings[location], START_DATE), null, null);
+            }
+        });
+    }
+
+    @Test
+    public void benchmarkWeatherWithLocationAndDate() throws Exception {
+        run("weather/*/#", new Operation() {
+            @Override
+            public int run(Random random) {
+                int location = random.nextInt(LOCATIONS);
+                return query(WeatherEntry.buildWeatherLocationWithDate(
+                        mLocationSettings[location], getDate(random.nextInt(DAYS))), null, null);
+            }
+        });
+    }
+
+    @Test
+    public void benchmarkLocation() throws Exception {
+        run("location", new Operation() {
+            @Override
+            public int run(Random random) {
+                int location = random.nextInt(LOCATIONS);
+                return query(LocationEntry.CONTENT_URI,
+                        LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                        new String[]{mLocationSettings[location]});
+            }
+        });
+    }
+
+    private int query(Uri uri, String selection, String[] selectionArgs) {
+        Cursor cursor = mProvider.query(uri, null, selection, selectionArgs, null);
+        try {
+            int rows = 0;
+            while (cursor.moveToNext()) {
+                rows++;
+            }
+            return rows;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * The writer mirrors what a sync does to one location: it bulk inserts a batch of days in the
+     * past and then deletes everything before today, so the table size stays stable for the
+     * readers.
+     */
+    private final Operation mWriter = new Operation() {
+        @Override
+        public int run(Random random) {
+            long locationId = mLocationIds[random.nextInt(LOCATIONS)];
+            int rows = mProvider.bulkInsert(WeatherEntry.CONTENT_URI,
+                    createWeatherValues(locationId, -DAYS));
+            rows += mProvider.delete(WeatherEntry.CONTENT_URI,
+                    WeatherEntry.COLUMN_LOC_KEY + " = ? AND " + WeatherEntry.COLUMN_DATE + " < ?",
+                    new String[]{Long.toString(locationId), Long.toString(START_DATE)});
+            return rows;
+        }
+    };
+
+    private void run(String route, Operation reader) throws Exception {
+        final List<ThreadResult> readerResults = new ArrayList<ThreadResult>();
+        final ThreadResult writerResult = new ThreadResult();
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<Thread>();
+
+        for (int i = 0; i < READERS; i++) {
+            ThreadResult result = new ThreadResult();
+            readerResults.add(result);
+            threads.add(newWorker("reader-" + i, i, reader, result, running, start, failure));
+        }
+        threads.add(newWorker("writer", READERS, mWriter, writerResult, running, start, failure));
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        long startNanos = System.nanoTime();
+        start.countDown();
+        Thread.sleep(DURATION_MS);
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsedMs = Math.max(1, (System.nanoTime() - startNanos) / 1000000L);
+
+        assertNull("Worker thread failed: " + failure.get(), failure.get());
+
+        LatencyHistogram readers = new LatencyHistogram();
+        long readerAllocated = 0;
+        long readerRows = 0;
+        for (ThreadResult result : readerResults) {
+            readers.add(result.histogram);
+            readerAllocated += result.allocatedBytes;
+            readerRows += result.rows;
+        }
+
+        report(route, "readers", readers, readerAllocated, readerRows, elapsedMs);
+        report(route, "writer", writerResult.histogram, writerResult.allocatedBytes,
+                writerResult.rows, elapsedMs);
+        dumpDiagnostics();
+
+        assertTrue("No reads completed on " + route, readers.getCount() > 0);
+        assertTrue("No writes completed on " + route, writerResult.histogram.getCount() > 0);
+
+        // The writer only ever touches past dates, so the preloaded window must be intact.
+        Cursor cursor = mProvider.query(WeatherEntry.CONTENT_URI, null, null, null, null);
+        assertEquals((long) LOCATIONS * DAYS, cursor.getCount());
+        cursor.close();
+    }
+
+    private Thread newWorker(String name, final long seed, final Operation operation,
+                             final ThreadResult result, final AtomicBoolean running,
+                             final CountDownLatch start,
+                             final AtomicReference<Throwable> failure) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Random random = new Random(seed);
+                long threadId = Thread.currentThread().getId();
+                try {
+                    start.await();
+                    long allocatedBefore = getAllocatedBytes(threadId);
+                    while (running.get()) {
+                        long startNanos = System.nanoTime();
+                        result.rows += operation.run(random);
+                        result.histogram.record(System.nanoTime() - startNanos);
+                    }
+                    result.allocatedBytes = getAllocatedBytes(threadId) - allocatedBefore;
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            }
+        }, "ProviderBenchmark-" + name);
+        return thread;
+    }
+
+    private static void report(String route, String role, LatencyHistogram histogram,
+                               long allocatedBytes, long rows, long elapsedMs) {
+        long calls = histogram.getCount();
+        System.out.println(String.format(
+                "ProviderBenchmark %-12s %-8s calls=%d ops/s=%d rows=%d p50=%dus p99=%dus max=%dus"
+                        + " alloc/call=%s",
+                route, role, calls, calls * 1000L / elapsedMs, rows,
+                histogram.getPercentileMicros(0.5), histogram.getPercentileMicros(0.99),
+                histogram.getMaxMicros(),
+                allocatedBytes < 0 || calls == 0 ? "n/a" : (allocatedBytes / calls) + "B"));
+    }
+
+    /**
+     * Prints the provider's own view of the run, which splits the writer's traffic into
+     * bulkInsert and delete and includes the time spent inside the provider only.
+     */
+    private void dumpDiagnostics() {
+        Cursor cursor = mProvider.query(DiagnosticsEntry.CONTENT_URI, null, null, null, null);
+        while (cursor.moveToNext()) {
+            System.out.println(String.format(
+                    "ProviderBenchmark   provider %-12s %-10s calls=%d p50=%dus p99=%dus",
+                    cursor.getString(cursor.getColumnIndex(DiagnosticsEntry.COLUMN_ROUTE)),
+                    cursor.getString(cursor.getColumnIndex(DiagnosticsEntry.COLUMN_OPERATION)),
+                    cursor.getLong(cursor.getColumnIndex(DiagnosticsEntry.COLUMN_CALLS)),
+                    cursor.getLong(cursor.getColumnIndex(DiagnosticsEntry.COLUMN_P50_MICROS)),
+                    cursor.getLong(cursor.getColumnIndex(DiagnosticsEntry.COLUMN_P99_MICROS))));
+        }
+        cursor.close();
+        mProvider.delete(DiagnosticsEntry.CONTENT_URI, null, null);
+    }
+
+    /**
+     * @return bytes allocated so far by the given thread, or -1 if the JVM can't tell us.
+     */
+    private static long getAllocatedBytes(long threadId) {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(threadId);
+        }
+        return -1;
+    }
+
+    private static long getDate(int day) {
+        return WeatherContract.normalizeDate(START_DATE + day * DateUtils.DAY_IN_MILLIS);
+    }
+
+    private static ContentValues[] createWeatherValues(long locationId, int firstDay) {
+        ContentValues[] values = new ContentValues[DAYS];
+        for (int i = 0; i < DAYS; i++) {
+            ContentValues weather = new ContentValues();
+            weather.put(WeatherEntry.COLUMN_LOC_KEY, locationId);
+            weather.put(WeatherEntry.COLUMN_DATE, getDate(firstDay + i));
+            weather.put(WeatherEntry.COLUMN_DEGREES, 1.1 + i);
+            weather.put(WeatherEntry.COLUMN_HUMIDITY, 40.0 + i);
+            weather.put(WeatherEntry.COLUMN_PRESSURE, 1000.0 + i);
+            weather.put(WeatherEntry.COLUMN_MAX_TEMP, 20.0 + i);
+            weather.put(WeatherEntry.COLUMN_MIN_TEMP, 10.0 + i);
+            weather.put(WeatherEntry.COLUMN_SHORT_DESC, "Clouds");
+            weather.put(WeatherEntry.COLUMN_WIND_SPEED, 5.5);
+            weather.put(WeatherEntry.COLUMN_WEATHER_ID, 800 + (i % 5));
+            values[i] = weather;
+        }
+        return values;
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.text.format.DateUtils;
+
+import com.example.android.sunshine.app.BuildConfig;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.app.metrics.LatencyHistogram;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+/*
+    Compares the version 2 weather table, with REAL columns and the description on every row,
+    against the compact encoding of WeatherDbHelper in its rowid and its clustered (WITHOUT
+    ROWID) layout, see WeatherDbHelper.buildWeatherTableSql.  The databases are filled the way
+    syncs fill them over time: one new day for every location per sync, so that in the rowid
+    tables a location's days end up LOCATIONS rows apart.  Then the same random forecast reads
+    are run against each, through the decoding WeatherProvider does for the compact ones.
+
+        ./gradlew :app:testDebugUnitTest --tests '*WeatherLayoutBenchmark*' -Psunshine.benchmark.run=true -i
+
+    For every layout it prints the file size, query latency and the number of distinct pages
+    holding the rows of a READ_DAYS read.  Those pages are read out of the database file with
+    BtreePages, as SQLite doesn't count page reads itself.  The page cache is kept small so
+    that latency reflects pages read, not just rows decoded.  The cursor window bytes follow
+    CursorWindow's layout: a 12 byte slot per field, plus the UTF-8 bytes of each string.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class WeatherLayoutBenchmark {
+
+    private static final int LOCATIONS = Integer.getInteger("sunshine.benchmark.locations", 2000);
+    private static final int SYNC_DAYS = Integer.getInteger("sunshine.benchmark.days", 60);
+    private static final int READ_DAYS = 14;
+    private static final int READS = 2000;
+    private static final int CACHE_PAGES = 16;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String VERSION_2 = "version2";
+    private static final String ROWID = "rowid";
+    private static final String CLUSTERED = "clustered";
+
+    // OpenWeatherMap's descriptions for 800 to 804
+    private static final String[] DESCRIPTIONS = {"clear sky", "few clouds", "scattered clouds",
+            "broken clouds", "overcast clouds"};
+
+    private static final long START_DATE = WeatherContract.normalizeDate(1419033600000L);
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void compareLayouts() throws Exception {
+        Assume.assumeTrue("Benchmarks only run with -Psunshine.benchmark.run=true",
+                Boolean.getBoolean("sunshine.benchmark.run"));
+        SQLiteDatabase probe = SQLiteDatabase.create(null);
+        Assume.assumeTrue("SQLite too old for WITHOUT ROWID",
+                WeatherDbHelper.supportsClusteredLayout(probe));
+        probe.close();
+
+        long version2Rows = run(VERSION_2);
+        long rowidRows = run(ROWID);
+        long clusteredRows = run(CLUSTERED);
+        assertEquals("All layouts should return the same rows", version2Rows, rowidRows);
+        assertEquals("All layouts should return the same rows", rowidRows, clusteredRows);
+    }
+
+    private SQLiteDatabase createDatabase(File file, String layout) {
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(file, null);
+        db.execSQL("CREATE TABLE " + LocationEntry.TABLE_NAME + " (" + LocationEntry._ID +
+                " INTEGER PRIMARY KEY, " + LocationEntry.COLUMN_LOCATION_SETTING + " TEXT)");
+        if (VERSION_2.equals(layout)) {
+            db.execSQL("CREATE TABLE weather (_id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    "location_id INTEGER NOT NULL, date INTEGER NOT NULL, short_desc TEXT NOT NULL, " +
+                    "weather_id INTEGER NOT NULL, min REAL NOT NULL, max REAL NOT NULL, " +
+                    "humidity REAL NOT NULL, pressure REAL NOT NULL, wind REAL NOT NULL, " +
+                    "degrees REAL NOT NULL, FOREIGN KEY (location_id) REFERENCES location (_id), " +
+                    "UNIQUE (date, location_id) ON CONFLICT REPLACE);");
+        } else {
+            WeatherDbHelper.createConditionTable(db);
+            db.execSQL(WeatherDbHelper.buildWeatherTableSql(CLUSTERED.equals(layout)));
+            for (int i = 0; i < DESCRIPTIONS.length; i++) {
+                WeatherDbHelper.putCondition(db, 800 + i, DESCRIPTIONS[i]);
+            }
+        }
+        return db;
+    }
+
+    private long run(String layout) throws Exception {
+        boolean compact = !VERSION_2.equals(layout);
+        boolean clustered = CLUSTERED.equals(layout);
+        File file = new File(mFolder.getRoot(), layout + ".db");
+        SQLiteDatabase db = createDatabase(file, layout);
+        long startNanos = System.nanoTime();
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < LOCATIONS; i++) {
+                ContentValues location = new ContentValues();
+                location.put(LocationEntry._ID, i + 1);
+                location.put(LocationEntry.COLUMN_LOCATION_SETTING, Integer.toString(i));
+                db.insert(LocationEntry.TABLE_NAME, null, location);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        for (int day = 0; day < SYNC_DAYS; day++) {
+            db.beginTransaction();
+            try {
+                for (int i = 0; i < LOCATIONS; i++) {
+                    ContentValues weather = createWeatherValues(i + 1, day);
+                    if (compact) {
+                        WeatherDbHelper.insertWeather(db,
+                                WeatherDbHelper.encodeWeather(weather), clustered);
+                    } else {
+                        db.insert(WeatherEntry.TABLE_NAME, null, weather);
+                    }
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+        long loadMs = (System.nanoTime() - startNanos) / 1000000L;
+
+        long pageCount = DatabaseUtils.longForQuery(db, "PRAGMA page_count", null);
+        long pageSize = db.getPageSize();
+        int rootPage = (int) DatabaseUtils.longForQuery(db, "SELECT rootpage FROM sqlite_master"
+                + " WHERE type = 'table' AND name = ?", new String[]{WeatherEntry.TABLE_NAME});
+        db.close();
+        // A WITHOUT ROWID record holds the primary key, (location_id, date), then the other
+        // columns in the order they're declared, so _id comes third.
+        BtreePages pages = BtreePages.read(file, rootPage, clustered ? 2 : -1);
+        assertEquals("Every row should be found in the file",
+                LOCATIONS * SYNC_DAYS, pages.getRowCount());
+
+        db = SQLiteDatabase.openDatabase(file.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+        db.execSQL("PRAGMA cache_size = " + CACHE_PAGES);
+
+        // Same shape as WeatherProvider's weather/* route with a date range, reading the
+        // columns the forecast list shows
+        String sql = "SELECT " + WeatherEntry._ID + ", " + WeatherEntry.COLUMN_DATE + ", " +
+                WeatherEntry.COLUMN_SHORT_DESC + ", " + WeatherEntry.COLUMN_MAX_TEMP + ", " +
+                WeatherEntry.COLUMN_MIN_TEMP + ", " + WeatherEntry.COLUMN_WEATHER_ID +
+                " FROM " + (compact ? WeatherProvider.sWeatherTables : WeatherEntry.TABLE_NAME) +
+                " WHERE " + WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                WeatherEntry.COLUMN_DATE + " >= ? AND " + WeatherEntry.COLUMN_DATE + " <= ?" +
+                " ORDER BY " + WeatherEntry.COLUMN_DATE + " ASC";
+
+        Random random = new Random(42);
+        LatencyHistogram histogram = new LatencyHistogram();
+        long totalRows = 0;
+        long totalPages = 0;
+        long windowBytes = 0;
+        Set<Integer> rowPages = new HashSet<Integer>();
+        for (int read = 0; read < READS; read++) {
+            int location = random.nextInt(LOCATIONS);
+            int firstDay = random.nextInt(SYNC_DAYS - READ_DAYS + 1);
+            String[] args = {Integer.toString(location + 1), Long.toString(getDate(firstDay)),
+                    Long.toString(getDate(firstDay + READ_DAYS - 1))};
+
+            long queryStartNanos = System.nanoTime();
+            Cursor cursor = db.rawQuery(sql, args);
+            rowPages.clear();
+            while (cursor.moveToNext()) {
+                rowPages.add(pages.getPage(cursor.getLong(0)));
+                windowBytes += getWindowBytes(cursor);
+                totalRows++;
+            }
+            cursor.close();
+            histogram.record(System.nanoTime() - queryStartNanos);
+            totalPages += rowPages.size();
+        }
+        db.close();
+
+        System.out.println(String.format("WeatherLayoutBenchmark %-9s rows=%d load=%dms size=%dKB"
+                        + " depth=%d interiorPages=%d rowPages/read=%.1f windowBytes/read=%d"
+                        + " read %s",
+                layout, LOCATIONS * SYNC_DAYS, loadMs, pageCount * pageSize / 1024,
+                pages.getDepth(), pages.getInteriorPages(), (double) totalPages / READS,
+                windowBytes / READS, histogram));
+        return totalRows;
+    }
+
+    private static long getWindowBytes(Cursor cursor) {
+        long bytes = 0;
+        for (int i = 0; i < cursor.getColumnCount(); i++) {
+            bytes += 12;
+            if (cursor.getType(i) == Cursor.FIELD_TYPE_STRING) {
+                bytes += cursor.getString(i).getBytes(UTF_8).length + 1;
+            }
+        }
+        return bytes;
+    }
+
+    private static long getDate(int day) {
+        return WeatherContract.normalizeDate(START_DATE + day * DateUtils.DAY_IN_MILLIS);
+    }
+
+    private static ContentValues createWeatherValues(long locationId, int day) {
+        ContentValues weather = new ContentValues();
+        weather.put(WeatherEntry.COLUMN_LOC_KEY, locationId);
+        weather.put(WeatherEntry.COLUMN_DATE, getDate(day));
+        weather.put(WeatherEntry.COLUMN_WEATHER_ID, 800 + (day % DESCRIPTIONS.length));
+        weather.put(WeatherEntry.COLUMN_SHORT_DESC, DESCRIPTIONS[day % DESCRIPTIONS.length]);
+        weather.put(WeatherEntry.COLUMN_MIN_TEMP, 10.0 + day % 10);
+        weather.put(WeatherEntry.COLUMN_MAX_TEMP, 20.0 + day % 10);
+        weather.put(WeatherEntry.COLUMN_HUMIDITY, 40.0 + day % 30);
+        weather.put(WeatherEntry.COLUMN_PRESSURE, 1000.0 + day % 30);
+        weather.put(WeatherEntry.COLUMN_WIND_SPEED, 5.5);
+        weather.put(WeatherEntry.COLUMN_DEGREES, 180.0);
+        return weather;
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.shared;
+
+import java.util.Locale;
+
+/**
+ * Everything Sunshine shows for an OpenWeatherMap condition id: the list icon, the art, the art
+ * pack slug, the description string and the Muzei image.  The mapping is worked out once into
+ * tables indexed by condition id, so a lookup is an array read instead of a chain of range
+ * checks, and the phone app and the watch face can't drift apart.
+ *
+ * Based on weather code data found at:
+ * http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+ */
+public final class WeatherConditions {
+
+    // OpenWeatherMap condition ids run from 200 to 962
+    private static final int MIN_ID = 200;
+    private static final int MAX_ID = 962;
+
+    // Conditions that share artwork
+    private static final int NONE = 0;
+    private static final int STORM = 1;
+    private static final int LIGHT_RAIN = 2;
+    private static final int RAIN = 3;
+    private static final int SNOW = 4;
+    private static final int FOG = 5;
+    private static final int CLEAR = 6;
+    private static final int LIGHT_CLOUDS = 7;
+    private static final int CLOUDS = 8;
+
+    private static final int[] ICONS = {
+            -1,
+            R.drawable.ic_storm,
+            R.drawable.ic_light_rain,
+            R.drawable.ic_rain,
+            R.drawable.ic_snow,
+            R.drawable.ic_fog,
+            R.drawable.ic_clear,
+            R.drawable.ic_light_clouds,
+            R.drawable.ic_cloudy
+    };
+
+    private static final int[] ART = {
+            -1,
+            R.drawable.art_storm,
+            R.drawable.art_light_rain,
+            R.drawable.art_rain,
+            R.drawable.art_snow,
+            R.drawable.art_fog,
+            R.drawable.art_clear,
+            R.drawable.art_light_clouds,
+            R.drawable.art_clouds
+    };
+
+    // Fills the %s of an art pack's url format
+    private static final String[] ART_SLUGS = {
+            null,
+            "storm",
+            "light_rain",
+            "rain",
+            "snow",
+            "fog",
+            "clear",
+            "light_clouds",
+            "clouds"
+    };
+
+    private static final String[] IMAGE_URLS = {
+            null,
+            "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG",
+            "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg"
+    };
+
+    // Tornadoes share the storm artwork but have their own picture, see getImageUrl
+    private static final String SEVERE_IMAGE_URL =
+            "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg";
+
+    // Indexed by condition id - MIN_ID
+    private static final byte[] sArtworkForId = new byte[MAX_ID - MIN_ID + 1];
+    private static final int[] sStringForId = new int[MAX_ID - MIN_ID + 1];
+
+    static {
+        fillArtwork(200, 232, STORM);
+        fillArtwork(300, 321, LIGHT_RAIN);
+        fillArtwork(500, 504, RAIN);
+        fillArtwork(511, 511, SNOW);
+        fillArtwork(520, 531, RAIN);
+        fillArtwork(600, 622, SNOW);
+        fillArtwork(701, 761, FOG);
+        fillArtwork(781, 781, STORM);
+        fillArtwork(800, 800, CLEAR);
+        fillArtwork(801, 801, LIGHT_CLOUDS);
+        fillArtwork(802, 804, CLOUDS);
+
+        for (int id = 200; id <= 232; id++) {
+            putString(id, R.string.condition_2xx);
+        }
+        for (int id = 300; id <= 321; id++) {
+            putString(id, R.string.condition_3xx);
+        }
+        putString(500, R.string.condition_500);
+        putString(501, R.string.condition_501);
+        putString(502, R.string.condition_502);
+        putString(503, R.string.condition_503);
+        putString(504, R.string.condition_504);
+        putString(511, R.string.condition_511);
+        putString(520, R.string.condition_520);
+        putString(531, R.string.condition_531);
+        putString(600, R.string.condition_600);
+        putString(601, R.string.condition_601);
+        putString(602, R.string.condition_602);
+        putString(611, R.string.condition_611);
+        putString(612, R.string.condition_612);
+        putString(615, R.string.condition_615);
+        putString(616, R.string.condition_616);
+        putString(620, R.string.condition_620);
+        putString(621, R.string.condition_621);
+        putString(622, R.string.condition_622);
+        putString(701, R.string.condition_701);
+        putString(711, R.string.condition_711);
+        putString(721, R.string.condition_721);
+        putString(731, R.string.condition_731);
+        putString(741, R.string.condition_741);
+        putString(751, R.string.condition_751);
+        putString(761, R.string.condition_761);
+        putString(762, R.string.condition_762);
+        putString(771, R.string.condition_771);
+        putString(781, R.string.condition_781);
+        putString(800, R.string.condition_800);
+        putString(801, R.string.condition_801);
+        putString(802, R.string.condition_802);
+        putString(803, R.string.condition_803);
+        putString(804, R.string.condition_804);
+        putString(900, R.string.condition_900);
+        putString(901, R.string.condition_901);
+        putString(902, R.string.condition_902);
+        putString(903, R.string.condition_903);
+        putString(904, R.string.condition_904);
+        putString(905, R.string.condition_905);
+        putString(906, R.string.condition_906);
+        putString(951, R.string.condition_951);
+        putString(952, R.string.condition_952);
+        putString(953, R.string.condition_953);
+        putString(954, R.string.condition_954);
+        putString(955, R.string.condition_955);
+        putString(956, R.string.condition_956);
+        putString(957, R.string.condition_957);
+        putString(958, R.string.condition_958);
+        putString(959, R.string.condition_959);
+        putString(960, R.string.condition_960);
+        putString(961, R.string.condition_961);
+        putString(962, R.string.condition_962);
+    }
+
+    private static void fillArtwork(int firstId, int lastId, int artwork) {
+        for (int id = firstId; id <= lastId; id++) {
+            sArtworkForId[id - MIN_ID] = (byte) artwork;
+        }
+    }
+
+    private static void putString(int id, int stringId) {
+        sStringForId[id - MIN_ID] = stringId;
+    }
+
+    /**
+     * The art urls of the last art pack asked for.  Replaced as a whole when the pack changes,
+     * so readers on other threads always see a matching format and set of urls.
+     */
+    private static final class ArtPack {
+        final String urlFormat;
+        final String[] urls = new String[ART_SLUGS.length];
+
+        ArtPack(String urlFormat) {
+            this.urlFormat = urlFormat;
+            for (int artwork = STORM; artwork < ART_SLUGS.length; artwork++) {
+                urls[artwork] = String.format(Locale.US, urlFormat, ART_SLUGS[artwork]);
+            }
+        }
+    }
+
+    private static volatile ArtPack sArtPack;
+
+    private WeatherConditions() {
+    }
+
+    private static int getArtwork(int weatherId) {
+        if (weatherId < MIN_ID || weatherId > MAX_ID) return NONE;
+        return sArtworkForId[weatherId - MIN_ID];
+    }
+
+    /**
+     * @return how many different pieces of art there are, many conditions share one.
+     */
+    public static int getArtworkCount() {
+        return ART.length - 1;
+    }
+
+    /**
+     * @return resource id for the list icon of this condition. -1 if no relation is found.
+     */
+    public static int getIconResource(int weatherId) {
+        return ICONS[getArtwork(weatherId)];
+    }
+
+    /**
+     * @return resource id for the art of this condition. -1 if no relation is found.
+     */
+    public static int getArtResource(int weatherId) {
+        return ART[getArtwork(weatherId)];
+    }
+
+    /**
+     * @return the name this condition's art has in art packs, or null if no relation is found.
+     */
+    public static String getArtSlug(int weatherId) {
+        return ART_SLUGS[getArtwork(weatherId)];
+    }
+
+    /**
+     * @param artUrlFormat the art pack's url, with a %s for the art slug
+     * @return url for the corresponding weather artwork. null if no relation is found.
+     */
+    public static String getArtUrl(String artUrlFormat, int weatherId) {
+        int artwork = getArtwork(weatherId);
+        if (artwork == NONE) return null;
+        ArtPack artPack = sArtPack;
+        if (null == artPack || !artPack.urlFormat.equals(artUrlFormat)) {
+            artPack = new ArtPack(artUrlFormat);
+            sArtPack = artPack;
+        }
+        return artPack.urls[artwork];
+    }
+
+    /**
+     * @return resource id for the description of this condition, 0 if there is none and
+     * R.string.condition_unknown should be used.
+     */
+    public static int getStringResource(int weatherId) {
+        if (weatherId < MIN_ID || weatherId > MAX_ID) return 0;
+        return sStringForId[weatherId - MIN_ID];
+    }
+
+    /**
+     * @return a URL to an appropriate image or null if no mapping is found
+     */
+    public static String getImageUrl(int weatherId) {
+        if (weatherId == 781) return SEVERE_IMAGE_URL;
+        return IMAGE_URLS[getArtwork(weatherId)];
+    }
+}
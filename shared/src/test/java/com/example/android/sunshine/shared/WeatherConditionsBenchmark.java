@@ -0,0 +1,295 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.shared;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/*
+    Checks WeatherConditions against the range-check chains it replaced in Utility and
+    SunshineWatchFace, then times both over a realistic mix of condition ids.
+
+        ./gradlew :shared:testDebugUnitTest --tests '*WeatherConditionsBenchmark*' -Psunshine.benchmark.run=true -i
+
+    Prints nanoseconds per lookup for the icon, art url and string lookups.  The timing only
+    runs with sunshine.benchmark.run, the check against the old branches always does.
+ */
+public class WeatherConditionsBenchmark {
+
+    private static final String ART_URL_FORMAT =
+            "https://raw.githubusercontent.com/udacity/sunshine_art/master/%s.png";
+
+    private static final int LOOKUPS = Integer.getInteger("sunshine.benchmark.lookups", 2000000);
+    private static final int ROUNDS = 5;
+
+    @Test
+    public void tableMatchesBranches() {
+        for (int id = -1; id <= 1000; id++) {
+            assertEquals("icon " + id, branchIcon(id), WeatherConditions.getIconResource(id));
+            assertEquals("art " + id, branchArt(id), WeatherConditions.getArtResource(id));
+            assertEquals("art url " + id, branchArtUrl(ART_URL_FORMAT, id),
+                    WeatherConditions.getArtUrl(ART_URL_FORMAT, id));
+            assertEquals("string " + id, branchString(id), WeatherConditions.getStringResource(id));
+            assertEquals("image " + id, branchImageUrl(id), WeatherConditions.getImageUrl(id));
+        }
+    }
+
+    @Test
+    public void compareLookups() {
+        Assume.assumeTrue("Benchmarks only run with -Psunshine.benchmark.run=true",
+                Boolean.getBoolean("sunshine.benchmark.run"));
+        // Mostly the common conditions, as a real forecast would be
+        int[] ids = new int[4096];
+        int[] common = {500, 501, 800, 801, 802, 803, 804, 600, 701, 211};
+        Random random = new Random(42);
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = random.nextInt(10) < 8
+                    ? common[random.nextInt(common.length)] : 200 + random.nextInt(763);
+        }
+
+        long sink = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            // Branches
+            long start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i++) {
+                sink += branchIcon(ids[i & 4095]);
+            }
+            long branchIconNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS / 100; i++) {
+                String url = branchArtUrl(ART_URL_FORMAT, ids[i & 4095]);
+                sink += null == url ? 0 : url.length();
+            }
+            long branchUrlNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i++) {
+                sink += branchString(ids[i & 4095]);
+            }
+            long branchStringNanos = System.nanoTime() - start;
+
+            // Tables
+            start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i++) {
+                sink += WeatherConditions.getIconResource(ids[i & 4095]);
+            }
+            long tableIconNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS / 100; i++) {
+                String url = WeatherConditions.getArtUrl(ART_URL_FORMAT, ids[i & 4095]);
+                sink += null == url ? 0 : url.length();
+            }
+            long tableUrlNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i++) {
+                sink += WeatherConditions.getStringResource(ids[i & 4095]);
+            }
+            long tableStringNanos = System.nanoTime() - start;
+
+            System.out.println(String.format(Locale.US,
+                    "WeatherConditionsBenchmark round %d ns/lookup: icon %.1f -> %.1f,"
+                            + " art url %.1f -> %.1f, string %.1f -> %.1f",
+                    round,
+                    (double) branchIconNanos / LOOKUPS, (double) tableIconNanos / LOOKUPS,
+                    (double) branchUrlNanos / (LOOKUPS / 100),
+                    (double) tableUrlNanos / (LOOKUPS / 100),
+                    (double) branchStringNanos / LOOKUPS, (double) tableStringNanos / LOOKUPS));
+        }
+        // Keeps the loops from being optimized away
+        System.out.println("WeatherConditionsBenchmark checksum " + sink);
+    }
+
+    // The lookups as they were written before WeatherConditions
+
+    private static int branchIcon(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return R.drawable.ic_storm;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return R.drawable.ic_light_rain;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return R.drawable.ic_rain;
+        } else if (weatherId == 511) {
+            return R.drawable.ic_snow;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return R.drawable.ic_rain;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return R.drawable.ic_snow;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return R.drawable.ic_fog;
+        } else if (weatherId == 761 || weatherId == 781) {
+            return R.drawable.ic_storm;
+        } else if (weatherId == 800) {
+            return R.drawable.ic_clear;
+        } else if (weatherId == 801) {
+            return R.drawable.ic_light_clouds;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return R.drawable.ic_cloudy;
+        }
+        return -1;
+    }
+
+    private static int branchArt(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return R.drawable.art_storm;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return R.drawable.art_light_rain;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return R.drawable.art_rain;
+        } else if (weatherId == 511) {
+            return R.drawable.art_snow;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return R.drawable.art_rain;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return R.drawable.art_snow;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return R.drawable.art_fog;
+        } else if (weatherId == 761 || weatherId == 781) {
+            return R.drawable.art_storm;
+        } else if (weatherId == 800) {
+            return R.drawable.art_clear;
+        } else if (weatherId == 801) {
+            return R.drawable.art_light_clouds;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return R.drawable.art_clouds;
+        }
+        return -1;
+    }
+
+    private static String branchArtUrl(String formatArtUrl, int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return String.format(Locale.US, formatArtUrl, "storm");
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return String.format(Locale.US, formatArtUrl, "light_rain");
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return String.format(Locale.US, formatArtUrl, "rain");
+        } else if (weatherId == 511) {
+            return String.format(Locale.US, formatArtUrl, "snow");
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return String.format(Locale.US, formatArtUrl, "rain");
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return String.format(Locale.US, formatArtUrl, "snow");
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return String.format(Locale.US, formatArtUrl, "fog");
+        } else if (weatherId == 761 || weatherId == 781) {
+            return String.format(Locale.US, formatArtUrl, "storm");
+        } else if (weatherId == 800) {
+            return String.format(Locale.US, formatArtUrl, "clear");
+        } else if (weatherId == 801) {
+            return String.format(Locale.US, formatArtUrl, "light_clouds");
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return String.format(Locale.US, formatArtUrl, "clouds");
+        }
+        return null;
+    }
+
+    private static int branchString(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return R.string.condition_2xx;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return R.string.condition_3xx;
+        }
+        switch (weatherId) {
+            case 500: return R.string.condition_500;
+            case 501: return R.string.condition_501;
+            case 502: return R.string.condition_502;
+            case 503: return R.string.condition_503;
+            case 504: return R.string.condition_504;
+            case 511: return R.string.condition_511;
+            case 520: return R.string.condition_520;
+            case 531: return R.string.condition_531;
+            case 600: return R.string.condition_600;
+            case 601: return R.string.condition_601;
+            case 602: return R.string.condition_602;
+            case 611: return R.string.condition_611;
+            case 612: return R.string.condition_612;
+            case 615: return R.string.condition_615;
+            case 616: return R.string.condition_616;
+            case 620: return R.string.condition_620;
+            case 621: return R.string.condition_621;
+            case 622: return R.string.condition_622;
+            case 701: return R.string.condition_701;
+            case 711: return R.string.condition_711;
+            case 721: return R.string.condition_721;
+            case 731: return R.string.condition_731;
+            case 741: return R.string.condition_741;
+            case 751: return R.string.condition_751;
+            case 761: return R.string.condition_761;
+            case 762: return R.string.condition_762;
+            case 771: return R.string.condition_771;
+            case 781: return R.string.condition_781;
+            case 800: return R.string.condition_800;
+            case 801: return R.string.condition_801;
+            case 802: return R.string.condition_802;
+            case 803: return R.string.condition_803;
+            case 804: return R.string.condition_804;
+            case 900: return R.string.condition_900;
+            case 901: return R.string.condition_901;
+            case 902: return R.string.condition_902;
+            case 903: return R.string.condition_903;
+            case 904: return R.string.condition_904;
+            case 905: return R.string.condition_905;
+            case 906: return R.string.condition_906;
+            case 951: return R.string.condition_951;
+            case 952: return R.string.condition_952;
+            case 953: return R.string.condition_953;
+            case 954: return R.string.condition_954;
+            case 955: return R.string.condition_955;
+            case 956: return R.string.condition_956;
+            case 957: return R.string.condition_957;
+            case 958: return R.string.condition_958;
+            case 959: return R.string.condition_959;
+            case 960: return R.string.condition_960;
+            case 961: return R.string.condition_961;
+            case 962: return R.string.condition_962;
+            default: return 0;
+        }
+    }
+
+    private static String branchImageUrl(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg";
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg";
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg";
+        } else if (weatherId == 511) {
+            return "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG";
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg";
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG";
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg";
+        } else if (weatherId == 761 || weatherId == 781) {
+            return "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg";
+        } else if (weatherId == 800) {
+            return "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg";
+        } else if (weatherId == 801) {
+            return "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg";
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg";
+        }
+        return null;
+    }
+}
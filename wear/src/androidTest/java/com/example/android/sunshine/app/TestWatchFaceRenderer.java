@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+
+import java.util.Locale;
+
+/*
+    Checks that WatchFaceRenderer draws steady state frames without allocating and only redraws
+    its static layer when something other than the time changes, and that frames drawn from
+    the static layer look the same as a fresh renderer's first frame.  Frames are drawn into a
+    bitmap a second apart, as the interactive timer draws them.  WatchFaceRendererBenchmark
+    times them.
+ */
+public class TestWatchFaceRenderer extends AndroidTestCase {
+    // December 20th, 2014, at the start of a minute
+    private static final long START_MILLIS = 1419033600000L;
+    private static final int SIZE = 320;
+
+    private Bitmap mBitmap;
+    private Canvas mCanvas;
+    private Rect mBounds;
+    private WatchFaceRenderer mRenderer;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mBitmap = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        mCanvas = new Canvas(mBitmap);
+        mBounds = new Rect(0, 0, SIZE, SIZE);
+        mRenderer = new WatchFaceRenderer(mContext.getResources());
+        mRenderer.setRound(true);
+        mRenderer.setWeather(800, "25/16");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mRenderer.release();
+        mBitmap.recycle();
+        super.tearDown();
+    }
+
+    public void testFormatTime() {
+        char[] text = new char[5];
+        assertEquals("0:00", new String(text, 0, WatchFaceRenderer.formatTime(0, 0, text)));
+        assertEquals("9:05", new String(text, 0, WatchFaceRenderer.formatTime(9, 5, text)));
+        assertEquals("23:59", new String(text, 0, WatchFaceRenderer.formatTime(23, 59, text)));
+    }
+
+    @SuppressWarnings("deprecation")
+    public void testSteadyStateFramesDontAllocate() {
+        // The first frame of the minute formats and measures
+        mRenderer.setTime(START_MILLIS);
+        mRenderer.draw(mCanvas, mBounds);
+
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocCount();
+        for (int second = 1; second < 60; second++) {
+            mRenderer.setTime(START_MILLIS + second * 1000L);
+            mRenderer.draw(mCanvas, mBounds);
+        }
+        int allocations = Debug.getThreadAllocCount();
+        Debug.stopAllocCounting();
+        assertEquals("Error: Frames within a minute should not allocate", 0, allocations);
+    }
+
+    public void testStaticLayerOnlyRedrawnOnChanges() {
+        // Two minutes of frames only change the time
+        for (int second = 0; second < 120; second++) {
+            mRenderer.setTime(START_MILLIS + second * 1000L);
+            mRenderer.draw(mCanvas, mBounds);
+        }
+        assertEquals(1, mRenderer.getStaticLayerDraws());
+
+        mRenderer.setWeather(500, "12/8");
+        mRenderer.draw(mCanvas, mBounds);
+        assertEquals("Error: New weather should redraw the static layer",
+                2, mRenderer.getStaticLayerDraws());
+
+        // The next day
+        mRenderer.setTime(START_MILLIS + 24 * 60 * 60 * 1000L);
+        mRenderer.draw(mCanvas, mBounds);
+        assertEquals("Error: A new date should redraw the static layer",
+                3, mRenderer.getStaticLayerDraws());
+
+        mRenderer.setAmbient(true, false);
+        mRenderer.draw(mCanvas, mBounds);
+        assertEquals("Error: Ambient frames don't use the static layer",
+                3, mRenderer.getStaticLayerDraws());
+        assertFalse("Error: The static layer should be freed in ambient mode",
+                mRenderer.hasStaticLayer());
+        mRenderer.setAmbient(false, false);
+        mRenderer.draw(mCanvas, mBounds);
+        assertEquals(4, mRenderer.getStaticLayerDraws());
+        assertTrue(mRenderer.hasStaticLayer());
+
+        mRenderer.setRound(false);
+        mRenderer.draw(mCanvas, mBounds);
+        assertEquals("Error: New insets should redraw the static layer",
+                5, mRenderer.getStaticLayerDraws());
+    }
+
+    public void testLocaleChangeRedrawsDate() {
+        mRenderer.setTime(START_MILLIS);
+        mRenderer.draw(mCanvas, mBounds);
+        Locale other = Locale.FRANCE.equals(Locale.getDefault()) ? Locale.US : Locale.FRANCE;
+        mRenderer.setLocale(other);
+        mRenderer.setTime(START_MILLIS + 1000L);
+        mRenderer.draw(mCanvas, mBounds);
+        assertEquals("Error: A new locale should redraw the static layer",
+                2, mRenderer.getStaticLayerDraws());
+        // The same locale again changes nothing
+        mRenderer.setLocale(other);
+        mRenderer.setTime(START_MILLIS + 2000L);
+        mRenderer.draw(mCanvas, mBounds);
+        assertEquals(2, mRenderer.getStaticLayerDraws());
+    }
+
+    public void testCachedFramesMatchFreshFrame() {
+        for (int second = 0; second < 90; second++) {
+            mRenderer.setTime(START_MILLIS + second * 1000L);
+            mRenderer.draw(mCanvas, mBounds);
+            if (second == 30) {
+                mRenderer.setWeather(500, "12/8");
+            } else if (second == 50) {
+                mRenderer.setAmbient(true, false);
+            } else if (second == 60) {
+                mRenderer.setAmbient(false, false);
+            }
+        }
+        assertFrameMatchesFreshRenderer(START_MILLIS + 89 * 1000L, 500, "12/8");
+    }
+
+    // Draws the last frame again with a new renderer, which has nothing cached yet
+    private void assertFrameMatchesFreshRenderer(long timeMillis, int weatherId, String weather) {
+        WatchFaceRenderer fresh = new WatchFaceRenderer(mContext.getResources());
+        Bitmap expected = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        try {
+            fresh.setRound(true);
+            fresh.setWeather(weatherId, weather);
+            fresh.setTime(timeMillis);
+            fresh.draw(new Canvas(expected), mBounds);
+            assertTrue("Error: A frame drawn from the static layer doesn't match a fresh one",
+                    expected.sameAs(mBitmap));
+        } finally {
+            fresh.release();
+            expected.recycle();
+        }
+    }
+}
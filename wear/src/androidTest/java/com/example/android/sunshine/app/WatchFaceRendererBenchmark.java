@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.test.AndroidTestCase;
+import android.text.format.Time;
+import android.util.Log;
+
+import com.example.android.sunshine.shared.WeatherConditions;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+
+/*
+    Times WatchFaceRenderer's frames against the drawing it replaced in SunshineWatchFace.
+    Frames are drawn into a bitmap a second apart, as the interactive timer draws them, and
+    the per frame times of each round and the best median of each face are logged.  Nothing is
+    asserted, the numbers depend too much on the device.  Run it with
+
+        ./gradlew :wear:connectedDebugAndroidTest -Psunshine.benchmark.run=true
+        adb logcat -s WatchFaceRendererBenchmark
+
+    Without sunshine.benchmark.run the test returns straight away, so ordinary test runs stay
+    fast.
+ */
+public class WatchFaceRendererBenchmark extends AndroidTestCase {
+    private static final String LOG_TAG = WatchFaceRendererBenchmark.class.getSimpleName();
+
+    // December 20th, 2014, at the start of a minute
+    private static final long START_MILLIS = 1419033600000L;
+    private static final int SIZE = 320;
+    // Ten minutes of interactive frames
+    private static final int FRAMES = 600;
+    private static final int ROUNDS = 5;
+
+    private Bitmap mBitmap;
+    private Canvas mCanvas;
+    private Rect mBounds;
+    private WatchFaceRenderer mRenderer;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mBitmap = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        mCanvas = new Canvas(mBitmap);
+        mBounds = new Rect(0, 0, SIZE, SIZE);
+        mRenderer = new WatchFaceRenderer(mContext.getResources());
+        mRenderer.setRound(true);
+        mRenderer.setWeather(800, "25/16");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mRenderer.release();
+        mBitmap.recycle();
+        super.tearDown();
+    }
+
+    public void testFrameTime() {
+        if (!BuildConfig.RUN_BENCHMARKS) {
+            Log.i(LOG_TAG, "Skipped, build with -Psunshine.benchmark.run=true to run");
+            return;
+        }
+
+        LegacyFace legacy = new LegacyFace(mContext.getResources());
+        long[] legacyNanos = new long[FRAMES];
+        long[] rendererNanos = new long[FRAMES];
+        // The best round of each, the first rounds also pay for warming up
+        long legacyP50 = Long.MAX_VALUE;
+        long rendererP50 = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int i = 0; i < FRAMES; i++) {
+                long start = System.nanoTime();
+                if (i % 60 == 0) legacy.onTimeTick();
+                legacy.onDraw(mCanvas, mBounds);
+                legacyNanos[i] = System.nanoTime() - start;
+            }
+            for (int i = 0; i < FRAMES; i++) {
+                long start = System.nanoTime();
+                mRenderer.setTime(START_MILLIS + i * 1000L);
+                mRenderer.draw(mCanvas, mBounds);
+                rendererNanos[i] = System.nanoTime() - start;
+            }
+            Log.i(LOG_TAG, String.format(Locale.US,
+                    "round %d us/frame: mean %.1f -> %.1f, p50 %.1f -> %.1f, p99 %.1f -> %.1f",
+                    round, mean(legacyNanos) / 1000, mean(rendererNanos) / 1000,
+                    percentile(legacyNanos, 50) / 1000.0, percentile(rendererNanos, 50) / 1000.0,
+                    percentile(legacyNanos, 99) / 1000.0, percentile(rendererNanos, 99) / 1000.0));
+            legacyP50 = Math.min(legacyP50, percentile(legacyNanos, 50));
+            rendererP50 = Math.min(rendererP50, percentile(rendererNanos, 50));
+        }
+        Log.i(LOG_TAG, String.format(Locale.US, "best p50 us/frame: %.1f -> %.1f",
+                legacyP50 / 1000.0, rendererP50 / 1000.0));
+    }
+
+    private static double mean(long[] nanos) {
+        long sum = 0;
+        for (long n : nanos) {
+            sum += n;
+        }
+        return (double) sum / nanos.length;
+    }
+
+    private static long percentile(long[] nanos, int percent) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return sorted[Math.min(sorted.length - 1, sorted.length * percent / 100)];
+    }
+
+    // The face as it was drawn before WatchFaceRenderer, measuring every frame and formatting
+    // with new objects every minute
+    private static class LegacyFace {
+        private final Paint mBackgroundPaint = new Paint();
+        private final Paint mTimePaint = new Paint();
+        private final Paint mDatePaint = new Paint();
+        private final Paint mIconPaint = new Paint();
+        private final Paint mTemperaturePaint = new Paint();
+        private final float mTimeYOffset;
+        private final Bitmap mBitmap;
+        private final Time mTime = new Time();
+        private String time = "";
+        private String date = "";
+        private final String mWeather = "25/16";
+
+        LegacyFace(Resources resources) {
+            Typeface typeface = Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
+            mBackgroundPaint.setColor(resources.getColor(R.color.background));
+            mTimeYOffset = resources.getDimension(R.dimen.digital_time_y_offset);
+            for (Paint paint : new Paint[]{mTimePaint, mDatePaint, mTemperaturePaint}) {
+                paint.setColor(resources.getColor(R.color.digital_text));
+                paint.setTypeface(typeface);
+                paint.setAntiAlias(true);
+            }
+            mTimePaint.setTextSize(resources.getDimension(R.dimen.digital_time_text_size_round));
+            mDatePaint.setTextSize(resources.getDimension(R.dimen.date_text_size_round));
+            mTemperaturePaint.setTextSize(
+                    resources.getDimension(R.dimen.temperature_text_size_round));
+            Bitmap icon = BitmapFactory.decodeResource(resources,
+                    WeatherConditions.getIconResource(800));
+            mBitmap = Bitmap.createScaledBitmap(icon, (int) (icon.getWidth() * 1.2f),
+                    (int) (icon.getHeight() * 1.2f), false);
+        }
+
+        void onTimeTick() {
+            mTime.setToNow();
+            time = String.format("%d:%02d", mTime.hour, mTime.minute);
+            DateFormat formatter = new SimpleDateFormat("EEE, MMM d, ''yy");
+            Date today = new Date();
+            date = formatter.format(today);
+        }
+
+        void onDraw(Canvas canvas, Rect bounds) {
+            canvas.drawRect(0, 0, bounds.width(), bounds.height(), mBackgroundPaint);
+            float xPosTime = canvas.getWidth() / 2 - mTimePaint.measureText(time, 0, time.length()) / 2;
+            canvas.drawText(time, xPosTime, mTimeYOffset, mTimePaint);
+            int padding = 16;
+            float yPosDate = mTimeYOffset + mDatePaint.getTextSize() + padding;
+            float xPosDate = canvas.getWidth() / 2 - mDatePaint.measureText(date, 0, date.length()) / 2;
+            canvas.drawText(date, xPosDate, yPosDate, mDatePaint);
+            float yPosIcon = yPosDate + padding;
+            float xPosIcon = canvas.getWidth() / 2 - mBitmap.getWidth();
+            canvas.drawBitmap(mBitmap, xPosIcon, yPosIcon, mIconPaint);
+            float yPosWeather = yPosDate + mTemperaturePaint.getTextSize() + mBitmap.getHeight() / 2;
+            float xPosWeather = canvas.getWidth() / 2;
+            canvas.drawText(mWeather, xPosWeather, yPosWeather, mTemperaturePaint);
+        }
+    }
+}
@@ -15,28 +15,19 @@
  */
 package com.example.android.sunshine.app;
 
-import android.annotation.SuppressLint;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.SharedPreferences;
-import android.content.res.Resources;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Paint;
 import android.graphics.Rect;
-import android.graphics.Typeface;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
 import android.support.annotation.Nullable;
 import android.support.wearable.watchface.CanvasWatchFaceService;
 import android.support.wearable.watchface.WatchFaceStyle;
-import android.text.format.Time;
-
 import android.util.Log;
 import android.view.SurfaceHolder;
 import android.view.WindowInsets;
@@ -51,9 +42,7 @@ import com.google.android.gms.wearable.DataMapItem;
 import com.google.android.gms.wearable.Wearable;
 
 import java.lang.ref.WeakReference;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.Locale;
 import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
 
@@ -65,8 +54,6 @@ import java.util.concurrent.TimeUnit;
  */
 public class SunshineWatchFace extends CanvasWatchFaceService {
     public static String LOG_TAG = SunshineWatchFace.class.getSimpleName();
-    private static final Typeface NORMAL_TYPEFACE =
-            Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
     /**
      * Update rate in milliseconds for interactive mode. We update once a second since seconds are
      * displayed in interactive mode.
@@ -119,8 +106,15 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
-                mTime.clear(intent.getStringExtra("time-zone"));
-                mTime.setToNow();
+                if (Intent.ACTION_LOCALE_CHANGED.equals(intent.getAction())) {
+                    mRenderer.setLocale(Locale.getDefault());
+                } else if (Intent.ACTION_TIME_CHANGED.equals(intent.getAction())) {
+                    // The clock was set, the texts are worked out again
+                    mRenderer.setTimeZone(TimeZone.getDefault().getID());
+                } else {
+                    mRenderer.setTimeZone(intent.getStringExtra("time-zone"));
+                }
+                invalidate();
             }
         };
         /**
@@ -129,23 +123,12 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
          */
         boolean mLowBitAmbient;
 
-        Paint mBackgroundPaint;
-
-        String time = "";
-        Time mTime;
-        float mTimeXOffset;
-        float mTimeYOffset;
-        Paint mTimePaint;
-
-        String date = "";
-        Paint mDatePaint;
-
-        @Nullable Bitmap mBitmap;
-        Paint mIconPaint;
-        Paint mTemperaturePaint;
+        WatchFaceRenderer mRenderer;
 
         @Nullable String mWeather;
         private int mWeatherId;
+        // Reused for the temperatures on every data change
+        private final StringBuilder mWeatherBuilder = new StringBuilder();
 
         private GoogleApiClient mGoogleApiClient;
 
@@ -156,7 +139,8 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             SharedPreferences preferences = getSharedPreferences(PREFERENCES, MODE_PRIVATE);
             mWeather = preferences.getString(KEY_WEATHER, "");
             mWeatherId = preferences.getInt(KEY_WEATHER_ID, 0);
-            loadIconForWeatherId();
+            mRenderer = new WatchFaceRenderer(getResources());
+            mRenderer.setWeather(mWeatherId, mWeather);
 
             mGoogleApiClient = new GoogleApiClient.Builder(SunshineWatchFace.this)
                     .addApi(Wearable.API)
@@ -168,34 +152,12 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
                     .setBackgroundVisibility(WatchFaceStyle.BACKGROUND_VISIBILITY_INTERRUPTIVE)
                     .setShowSystemUiTime(false)
                     .build());
-            Resources resources = SunshineWatchFace.this.getResources();
-
-            mBackgroundPaint = new Paint();
-            mBackgroundPaint.setColor(resources.getColor(R.color.background));
-
-            mTime = new Time();
-            mTimeYOffset = resources.getDimension(R.dimen.digital_time_y_offset);
-            mTimePaint = new Paint();
-            mTimePaint.setColor(resources.getColor(R.color.digital_text));
-            mTimePaint.setTypeface(NORMAL_TYPEFACE);
-            mTimePaint.setAntiAlias(true);
-
-            mDatePaint = new Paint();
-            mDatePaint.setColor(resources.getColor(R.color.digital_text));
-            mDatePaint.setTypeface(NORMAL_TYPEFACE);
-            mDatePaint.setAntiAlias(true);
-
-            mIconPaint = new Paint();
-
-            mTemperaturePaint = new Paint();
-            mTemperaturePaint.setColor(resources.getColor(R.color.digital_text));
-            mTemperaturePaint.setTypeface(NORMAL_TYPEFACE);
-            mTemperaturePaint.setAntiAlias(true);
         }
 
         @Override
         public void onDestroy() {
             mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            mRenderer.release();
             super.onDestroy();
         }
 
@@ -206,9 +168,9 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             if (visible) {
                 registerReceiver();
 
-                // Update time zone in case it changed while we weren't visible.
-                mTime.clear(TimeZone.getDefault().getID());
-                mTime.setToNow();
+                // Update time zone and locale in case they changed while we weren't visible.
+                mRenderer.setTimeZone(TimeZone.getDefault().getID());
+                mRenderer.setLocale(Locale.getDefault());
             } else {
                 unregisterReceiver();
             }
@@ -235,10 +197,13 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
                     double low = dataMap.getDouble(WEATHER_DATA_LOW);
                     long id = dataMap.getLong(WEATHER_DATA_ID);
 
-                    mWeather = (int) Math.round(high) + "/" +  (int) Math.round(low);
+                    mWeatherBuilder.setLength(0);
+                    mWeatherBuilder.append(Math.round(high)).append('/').append(Math.round(low));
+                    mWeather = mWeatherBuilder.toString();
                     mWeatherId = (int) id;
 
-                    loadIconForWeatherId();
+                    mRenderer.setWeather(mWeatherId, mWeather);
+                    invalidate();
 
                     SharedPreferences preferences = getSharedPreferences(PREFERENCES, MODE_PRIVATE);
                     SharedPreferences.Editor editor = preferences.edit();
@@ -260,6 +225,8 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             }
             mRegisteredTimeZoneReceiver = true;
             IntentFilter filter = new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED);
+            filter.addAction(Intent.ACTION_LOCALE_CHANGED);
+            filter.addAction(Intent.ACTION_TIME_CHANGED);
             SunshineWatchFace.this.registerReceiver(mTimeZoneReceiver, filter);
             mGoogleApiClient.connect();
         }
@@ -278,39 +245,19 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         public void onApplyWindowInsets(WindowInsets insets) {
             super.onApplyWindowInsets(insets);
             // Load resources that have alternate values for round watches.
-            Resources resources = SunshineWatchFace.this.getResources();
-            boolean isRound = insets.isRound();
-            mTimeXOffset = resources.getDimension(isRound
-                    ? R.dimen.digital_time_x_offset_round : R.dimen.digital_time_x_offset);
-            float timeTextSize = resources.getDimension(isRound
-                    ? R.dimen.digital_time_text_size_round : R.dimen.digital_time_text_size);
-            mTimePaint.setTextSize(timeTextSize);
-            float dateTextSize = resources.getDimension(isRound
-                    ? R.dimen.date_text_size_round : R.dimen.date_text_size);
-            mDatePaint.setTextSize(dateTextSize);
-            float temperatureTextSize = resources.getDimension(isRound
-                    ? R.dimen.temperature_text_size_round : R.dimen.temperature_text_size);
-            mTemperaturePaint.setTextSize(temperatureTextSize);
+            mRenderer.setRound(insets.isRound());
         }
 
         @Override
         public void onPropertiesChanged(Bundle properties) {
             super.onPropertiesChanged(properties);
             mLowBitAmbient = properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false);
+            mRenderer.setAmbient(mAmbient, mLowBitAmbient);
         }
 
-        @SuppressLint("DefaultLocale")
         @Override
         public void onTimeTick() {
             super.onTimeTick();
-            mTime.setToNow();
-            time = String.format("%d:%02d", mTime.hour, mTime.minute);
-
-            @SuppressLint("SimpleDateFormat")
-            DateFormat formatter = new SimpleDateFormat("EEE, MMM d, ''yy");
-            Date today = new Date();
-            date = formatter.format(today);
-
             invalidate();
         }
 
@@ -319,9 +266,7 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             super.onAmbientModeChanged(inAmbientMode);
             if (mAmbient != inAmbientMode) {
                 mAmbient = inAmbientMode;
-                if (mLowBitAmbient) {
-                    mTimePaint.setAntiAlias(!inAmbientMode);
-                }
+                mRenderer.setAmbient(mAmbient, mLowBitAmbient);
                 invalidate();
             }
             // Whether the timer should be running depends on whether we're visible (as well as
@@ -331,70 +276,8 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
 
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
-            // Draw the background
-            if (isInAmbientMode()) {
-                canvas.drawColor(Color.BLACK);
-            } else {
-                canvas.drawRect(0, 0, bounds.width(), bounds.height(), mBackgroundPaint);
-            }
-            // Current time
-            float xPosTime = canvas.getWidth() / 2 - mTimePaint.measureText(time, 0, time.length()) / 2;
-            canvas.drawText(time, xPosTime, mTimeYOffset, mTimePaint);
-            if (!isInAmbientMode()) {
-                // Current date
-                int padding = 16;
-                float yPosDate = mTimeYOffset + mDatePaint.getTextSize() + padding;
-                float xPosDate = canvas.getWidth() / 2 - mDatePaint.measureText(date, 0, date.length()) / 2;
-                canvas.drawText(date, xPosDate, yPosDate, mDatePaint);
-
-                if (mWeatherId != 0 && mBitmap != null) {
-                    // Weather Icon
-                    float yPosIcon = yPosDate + padding;
-                    float xPosIcon = canvas.getWidth() / 2 - mBitmap.getWidth();
-                    canvas.drawBitmap(mBitmap, xPosIcon, yPosIcon, mIconPaint);
-
-                    // Temperature
-                    float yPosWeather = yPosDate + mTemperaturePaint.getTextSize() + mBitmap.getHeight() / 2;
-                    float xPosWeather = canvas.getWidth() / 2;
-                    canvas.drawText(mWeather != null ? mWeather : "", xPosWeather, yPosWeather, mTemperaturePaint);
-                }
-            }
-        }
-
-        private void loadIconForWeatherId() {
-
-            int iconId = 0;
-            if (mWeatherId >= 200 && mWeatherId <= 232) {
-                iconId = R.drawable.ic_storm;
-            } else if (mWeatherId >= 300 && mWeatherId <= 321) {
-                iconId = R.drawable.ic_light_rain;
-            } else if (mWeatherId >= 500 && mWeatherId <= 504) {
-                iconId = R.drawable.ic_rain;
-            } else if (mWeatherId == 511) {
-                iconId = R.drawable.ic_snow;
-            } else if (mWeatherId >= 520 && mWeatherId <= 531) {
-                iconId = R.drawable.ic_rain;
-            } else if (mWeatherId >= 600 && mWeatherId <= 622) {
-                iconId = R.drawable.ic_snow;
-            } else if (mWeatherId >= 701 && mWeatherId <= 761) {
-                iconId = R.drawable.ic_fog;
-            } else if (mWeatherId == 761 || mWeatherId == 781) {
-                iconId = R.drawable.ic_storm;
-            } else if (mWeatherId == 800) {
-                iconId = R.drawable.ic_clear;
-            } else if (mWeatherId == 801) {
-                iconId = R.drawable.ic_light_clouds;
-            } else if (mWeatherId >= 802 && mWeatherId <= 804) {
-                iconId = R.drawable.ic_cloudy;
-            }
-
-            if (iconId != 0) {
-                float scale = 1.2f;
-                mBitmap = BitmapFactory.decodeResource(getResources(), iconId);
-                float sizeY = (float) mBitmap.getHeight() * scale;
-                float sizeX = (float) mBitmap.getWidth() * scale;
-                mBitmap = Bitmap.createScaledBitmap(mBitmap, (int) sizeX, (int) sizeY, false);
-            }
+            mRenderer.setTime(System.currentTimeMillis());
+            mRenderer.draw(canvas, bounds);
         }
 
         /**
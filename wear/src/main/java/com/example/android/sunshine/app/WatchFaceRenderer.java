@@ -0,0 +1,353 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.support.annotation.Nullable;
+import android.text.format.Time;
+
+import com.example.android.sunshine.shared.WeatherConditions;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Draws SunshineWatchFace: the time, and outside ambient mode the date, the weather icon and
+ * the temperatures.
+ *
+ * Everything a frame needs is worked out ahead of it.  The time is formatted into a char
+ * buffer once a minute, the date once a day with a formatter kept for the purpose and rebuilt
+ * when the locale changes, and the
+ * text widths and positions are measured only when the text, the round or square insets, the
+ * bounds or the ambient mode change.  A frame within the same minute allocates nothing.
+ *
+ * Only the time changes from one minute to the next, so the rest of the interactive face, the
+ * background, date, icon and temperatures, is drawn once into a bitmap the size of the screen
+ * and frames copy that and draw the time over it.  The bitmap is drawn again whenever the
+ * layout is worked out again.  Ambient frames are just the time on black and don't use it, so
+ * it is freed on entering ambient mode and drawn again on the first interactive frame.
+ */
+class WatchFaceRenderer {
+    private static final Typeface NORMAL_TYPEFACE =
+            Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
+
+    private static final long MINUTE_MILLIS = 60 * 1000;
+    private static final String DATE_PATTERN = "EEE, MMM d, ''yy";
+    // Between the time and the date, and the date and the icon
+    private static final int PADDING = 16;
+    private static final float ICON_SCALE = 1.2f;
+
+    private final Resources mResources;
+
+    private final Paint mBackgroundPaint;
+    private final Paint mTimePaint;
+    private final Paint mDatePaint;
+    private final Paint mIconPaint;
+    private final Paint mTemperaturePaint;
+    private final float mTimeYOffset;
+
+    // The time as "h:mm", rebuilt when a frame falls outside the minute it was built for
+    private final Time mTime = new Time();
+    private final char[] mTimeText = new char[5];
+    private int mTimeLength;
+    private long mMinuteStartMillis = Long.MAX_VALUE;
+    private int mHour = -1;
+    private int mMinute = -1;
+
+    // The date, only formatted again on another day or in another locale
+    private Locale mLocale;
+    private DateFormat mDateFormat;
+    private final Date mDateValue = new Date();
+    private String mDate = "";
+    private int mDay = -1;
+
+    private String mWeather = "";
+    private int mWeatherId;
+    private int mIconId = -1;
+    @Nullable private Bitmap mIcon;
+
+    private boolean mAmbient;
+    private boolean mLowBitAmbient;
+
+    // The layout, measured for the text, sizes and bounds below
+    private boolean mLayoutValid;
+    private boolean mTimeMeasured;
+    private int mWidth = -1;
+    private int mHeight = -1;
+    private float mTimeX;
+    private float mDateX;
+    private float mDateY;
+    private float mIconX;
+    private float mIconY;
+    private float mTemperatureX;
+    private float mTemperatureY;
+
+    // Everything but the time, valid as long as the layout is
+    @Nullable private Bitmap mStaticLayer;
+    private Canvas mStaticCanvas;
+    private boolean mStaticLayerValid;
+    private int mStaticLayerDraws;
+
+    WatchFaceRenderer(Resources resources) {
+        mResources = resources;
+
+        mBackgroundPaint = new Paint();
+        mBackgroundPaint.setColor(resources.getColor(R.color.background));
+
+        mTimeYOffset = resources.getDimension(R.dimen.digital_time_y_offset);
+        mTimePaint = new Paint();
+        mTimePaint.setColor(resources.getColor(R.color.digital_text));
+        mTimePaint.setTypeface(NORMAL_TYPEFACE);
+        mTimePaint.setAntiAlias(true);
+
+        mDatePaint = new Paint();
+        mDatePaint.setColor(resources.getColor(R.color.digital_text));
+        mDatePaint.setTypeface(NORMAL_TYPEFACE);
+        mDatePaint.setAntiAlias(true);
+
+        mIconPaint = new Paint();
+
+        mTemperaturePaint = new Paint();
+        mTemperaturePaint.setColor(resources.getColor(R.color.digital_text));
+        mTemperaturePaint.setTypeface(NORMAL_TYPEFACE);
+        mTemperaturePaint.setAntiAlias(true);
+
+        setLocale(Locale.getDefault());
+        setTimeZone(TimeZone.getDefault().getID());
+    }
+
+    /**
+     * Rebuilds the date formatter for {@code locale}, if it isn't the one in use.
+     */
+    void setLocale(Locale locale) {
+        if (locale.equals(mLocale)) return;
+        mLocale = locale;
+        mDateFormat = new SimpleDateFormat(DATE_PATTERN, locale);
+        mDateFormat.setTimeZone(TimeZone.getTimeZone(mTime.timezone));
+        // The date is formatted again on the next frame
+        mMinuteStartMillis = Long.MAX_VALUE;
+        mDay = -1;
+    }
+
+    /**
+     * Picks the text sizes for a round or a square screen.
+     */
+    void setRound(boolean isRound) {
+        mTimePaint.setTextSize(mResources.getDimension(isRound
+                ? R.dimen.digital_time_text_size_round : R.dimen.digital_time_text_size));
+        mDatePaint.setTextSize(mResources.getDimension(isRound
+                ? R.dimen.date_text_size_round : R.dimen.date_text_size));
+        mTemperaturePaint.setTextSize(mResources.getDimension(isRound
+                ? R.dimen.temperature_text_size_round : R.dimen.temperature_text_size));
+        mLayoutValid = false;
+    }
+
+    /**
+     * On devices with low-bit ambient mode, the time is drawn without anti-aliasing in ambient
+     * mode.
+     */
+    void setAmbient(boolean ambient, boolean lowBitAmbient) {
+        if (ambient == mAmbient && lowBitAmbient == mLowBitAmbient) return;
+        mAmbient = ambient;
+        mLowBitAmbient = lowBitAmbient;
+        mTimePaint.setAntiAlias(!(ambient && lowBitAmbient));
+        mLayoutValid = false;
+        if (ambient) {
+            // Not drawn until the face is interactive again, which may be a long while
+            release();
+        }
+    }
+
+    /**
+     * @param weather the temperatures, as shown
+     */
+    void setWeather(int weatherId, String weather) {
+        if (weatherId == mWeatherId && weather.equals(mWeather)) return;
+        mWeatherId = weatherId;
+        mWeather = weather;
+        int iconId = WeatherConditions.getIconResource(weatherId);
+        if (iconId != mIconId) {
+            mIconId = iconId;
+            mIcon = iconId == -1 ? null : loadIcon(iconId);
+        }
+        mLayoutValid = false;
+    }
+
+    private Bitmap loadIcon(int iconId) {
+        Bitmap icon = BitmapFactory.decodeResource(mResources, iconId);
+        return Bitmap.createScaledBitmap(icon, (int) (icon.getWidth() * ICON_SCALE),
+                (int) (icon.getHeight() * ICON_SCALE), false);
+    }
+
+    void setTimeZone(String timeZoneId) {
+        mTime.clear(timeZoneId);
+        mDateFormat.setTimeZone(TimeZone.getTimeZone(timeZoneId));
+        // Both texts are worked out again on the next frame
+        mMinuteStartMillis = Long.MAX_VALUE;
+        mHour = -1;
+        mDay = -1;
+    }
+
+    /**
+     * Brings the time and date text up to {@code nowMillis}.  Only does any work on the first
+     * frame of a minute.
+     */
+    void setTime(long nowMillis) {
+        if (nowMillis >= mMinuteStartMillis && nowMillis < mMinuteStartMillis + MINUTE_MILLIS) {
+            return;
+        }
+        // Zone offsets are whole minutes, so local minutes start with UTC ones
+        mMinuteStartMillis = nowMillis - nowMillis % MINUTE_MILLIS;
+        mTime.set(nowMillis);
+        if (mTime.hour != mHour || mTime.minute != mMinute) {
+            mHour = mTime.hour;
+            mMinute = mTime.minute;
+            mTimeLength = formatTime(mHour, mMinute, mTimeText);
+            mTimeMeasured = false;
+        }
+        int day = mTime.year * 1000 + mTime.yearDay;
+        if (day != mDay) {
+            mDay = day;
+            mDateValue.setTime(nowMillis);
+            mDate = mDateFormat.format(mDateValue);
+            mLayoutValid = false;
+        }
+    }
+
+    /**
+     * Writes "h:mm" into {@code text}.
+     *
+     * @return the number of chars written.
+     */
+    static int formatTime(int hour, int minute, char[] text) {
+        int length = 0;
+        if (hour >= 10) {
+            text[length++] = (char) ('0' + hour / 10);
+        }
+        text[length++] = (char) ('0' + hour % 10);
+        text[length++] = ':';
+        text[length++] = (char) ('0' + minute / 10);
+        text[length++] = (char) ('0' + minute % 10);
+        return length;
+    }
+
+    void draw(Canvas canvas, Rect bounds) {
+        if (bounds.width() != mWidth || bounds.height() != mHeight) {
+            mWidth = bounds.width();
+            mHeight = bounds.height();
+            mLayoutValid = false;
+        }
+        if (mWidth <= 0 || mHeight <= 0) return;
+        if (!mLayoutValid) {
+            layout();
+        } else if (!mTimeMeasured) {
+            // Only the time changed
+            measureTime();
+        }
+
+        if (mAmbient) {
+            canvas.drawColor(Color.BLACK);
+        } else {
+            if (!mStaticLayerValid) {
+                drawStaticLayer();
+            }
+            canvas.drawBitmap(mStaticLayer, 0, 0, null);
+        }
+        // Current time
+        canvas.drawText(mTimeText, 0, mTimeLength, mTimeX, mTimeYOffset, mTimePaint);
+    }
+
+    private void drawStaticLayer() {
+        if (null == mStaticLayer
+                || mStaticLayer.getWidth() != mWidth || mStaticLayer.getHeight() != mHeight) {
+            release();
+            mStaticLayer = Bitmap.createBitmap(mWidth, mHeight, Bitmap.Config.ARGB_8888);
+            // Lets the copy skip blending while the background is opaque
+            mStaticLayer.setHasAlpha(Color.alpha(mBackgroundPaint.getColor()) != 255);
+            mStaticCanvas = new Canvas(mStaticLayer);
+        }
+        Canvas canvas = mStaticCanvas;
+        // Draw the background
+        canvas.drawRect(0, 0, mWidth, mHeight, mBackgroundPaint);
+        // Current date
+        canvas.drawText(mDate, mDateX, mDateY, mDatePaint);
+
+        if (mWeatherId != 0 && mIcon != null) {
+            // Weather Icon
+            canvas.drawBitmap(mIcon, mIconX, mIconY, mIconPaint);
+            // Temperature
+            canvas.drawText(mWeather, mTemperatureX, mTemperatureY, mTemperaturePaint);
+        }
+        mStaticLayerValid = true;
+        mStaticLayerDraws++;
+    }
+
+    /**
+     * @return how many times the static layer has been drawn, for tests.
+     */
+    int getStaticLayerDraws() {
+        return mStaticLayerDraws;
+    }
+
+    /**
+     * @return whether the static layer is allocated, for tests.
+     */
+    boolean hasStaticLayer() {
+        return null != mStaticLayer;
+    }
+
+    /**
+     * Frees the static layer, the next interactive frame draws it again.
+     */
+    void release() {
+        if (null != mStaticLayer) {
+            mStaticLayer.recycle();
+            mStaticLayer = null;
+            mStaticCanvas = null;
+        }
+        mStaticLayerValid = false;
+    }
+
+    private void layout() {
+        float centerX = mWidth / 2;
+        measureTime();
+        mDateY = mTimeYOffset + mDatePaint.getTextSize() + PADDING;
+        mDateX = centerX - mDatePaint.measureText(mDate) / 2;
+        if (mIcon != null) {
+            mIconY = mDateY + PADDING;
+            mIconX = centerX - mIcon.getWidth();
+            mTemperatureY = mDateY + mTemperaturePaint.getTextSize() + mIcon.getHeight() / 2;
+            mTemperatureX = centerX;
+        }
+        mLayoutValid = true;
+        mStaticLayerValid = false;
+    }
+
+    private void measureTime() {
+        mTimeX = mWidth / 2 - mTimePaint.measureText(mTimeText, 0, mTimeLength) / 2;
+        mTimeMeasured = true;
+    }
+}